@@ -0,0 +1,56 @@
+package com.xceptance.neodymium.ai.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.xceptance.neodymium.ai.util.DomCleaner;
+
+/**
+ * The Jsoup cleaning of the page source behind <code>get_page_content</code>, on the recorded home and listing page of
+ * the posters shop. The budgets are the default of 20000 tokens and a small one that truncates early.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DomCleanerBenchmark
+{
+    @Param(
+    {
+      "posters-home", "posters-listing"
+    })
+    public String page;
+
+    @Param(
+    {
+      "20000", "80000"
+    })
+    public int maxChars;
+
+    private String html;
+
+    @Setup
+    public void setUp()
+    {
+        html = Fixtures.page(page);
+    }
+
+    @Benchmark
+    public String clean()
+    {
+        return DomCleaner.clean(html, maxChars);
+    }
+}
@@ -0,0 +1,85 @@
+package com.xceptance.neodymium.ai.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.xceptance.neodymium.ai.util.AiConfiguration;
+import com.xceptance.neodymium.ai.util.EncodedImage;
+import com.xceptance.neodymium.ai.util.PerceptionEncoder;
+
+/**
+ * Encoding a 1600x800 screenshot for the model with the options of {@link PerceptionEncoder}: format, JPEG quality and
+ * the size limit. <code>encodeScreenshot</code> starts from the PNG of the browser and may pass it through untouched,
+ * <code>encodeImage</code> starts from the already decoded image.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class EncodingBenchmark
+{
+    /** The format, for JPEG with the quality. */
+    @Param(
+    {
+      "JPEG:0.6", "JPEG:0.8", "JPEG:0.95", "PNG"
+    })
+    public String encoding;
+
+    /** The maximum width and height. */
+    @Param(
+    {
+      "768", "1024", "1600"
+    })
+    public int maxSize;
+
+    private byte[] png;
+
+    private BufferedImage image;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        String[] options = encoding.split(":");
+        AiConfiguration configuration = AiConfiguration.get();
+        configuration.setProperty("neodymium.ai.perception.format", options[0]);
+        if (options.length > 1)
+        {
+            configuration.setProperty("neodymium.ai.perception.jpegQuality", options[1]);
+        }
+        configuration.setProperty("neodymium.ai.perception.maxWidth", String.valueOf(maxSize));
+        configuration.setProperty("neodymium.ai.perception.maxHeight", String.valueOf(maxSize));
+
+        png = Fixtures.bytes(Fixtures.SCREENSHOT);
+        image = ImageIO.read(new ByteArrayInputStream(png));
+    }
+
+    @Benchmark
+    public EncodedImage encodeImage()
+    {
+        return PerceptionEncoder.encode(image);
+    }
+
+    @Benchmark
+    public EncodedImage encodeScreenshot() throws IOException
+    {
+        return PerceptionEncoder.encode(png, null);
+    }
+}
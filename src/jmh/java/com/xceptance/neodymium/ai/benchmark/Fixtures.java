@@ -0,0 +1,51 @@
+package com.xceptance.neodymium.ai.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The recorded pages and screenshots the benchmarks work on, checked in under <code>src/jmh/resources/benchmark</code>
+ * so no browser or network is needed.
+ */
+final class Fixtures
+{
+    /** A 1600x800 screenshot of the posters home page, the viewport size of the tests. */
+    static final String SCREENSHOT = "posters-home.png";
+
+    private Fixtures()
+    {
+    }
+
+    /**
+     * @param name
+     *            the file name of the fixture
+     * @return the content of the fixture
+     */
+    static byte[] bytes(String name)
+    {
+        try (InputStream in = Fixtures.class.getResourceAsStream("/benchmark/" + name))
+        {
+            if (in == null)
+            {
+                throw new IllegalStateException("Missing benchmark fixture " + name);
+            }
+            return in.readAllBytes();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Failed to read benchmark fixture " + name, e);
+        }
+    }
+
+    /**
+     * @param name
+     *            the name of the recorded page without extension, e.g. posters-listing
+     * @return the page source
+     */
+    static String page(String name)
+    {
+        return new String(bytes(name + ".html"), StandardCharsets.UTF_8);
+    }
+}
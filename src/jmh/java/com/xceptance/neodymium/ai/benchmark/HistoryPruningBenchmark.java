@@ -0,0 +1,138 @@
+package com.xceptance.neodymium.ai.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.genai.types.Content;
+import com.google.genai.types.Part;
+import com.xceptance.neodymium.ai.model.ConversationHistory;
+import com.xceptance.neodymium.ai.model.HistoryEvictionPolicy;
+import com.xceptance.neodymium.ai.model.ImageFirstEvictionPolicy;
+import com.xceptance.neodymium.ai.model.OldestTurnEvictionPolicy;
+import com.xceptance.neodymium.ai.model.TokenCounter;
+import com.xceptance.neodymium.ai.model.TokenEstimator;
+import com.xceptance.neodymium.ai.util.AiConfiguration;
+import com.xceptance.neodymium.ai.util.EncodedImage;
+import com.xceptance.neodymium.ai.util.PerceptionEncoder;
+
+/**
+ * Pruning of synthetic conversations of growing size down to half their tokens, the way the agent loop does it before
+ * every request via {@link ConversationHistory#prune}. Every step of a conversation is a model turn with thoughts and a
+ * function call followed by the function response with the screenshot as the model gets it. The exact counts come
+ * from the local estimate instead of the model.
+ * <p>
+ * Pruning changes the history, so a fresh one is built before every invocation. That is fine at the millisecond scale
+ * of the measured work.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class HistoryPruningBenchmark
+{
+    private static final String MODEL = "benchmark";
+
+    @Param(
+    {
+      "10", "50", "200"
+    })
+    public int steps;
+
+    @Param(
+    {
+      "IMAGE_FIRST", "OLDEST_TURN"
+    })
+    public AiConfiguration.HistoryEvictionType policy;
+
+    /**
+     * Counts tokens with the local estimate instead of asking the model.
+     */
+    private final TokenCounter counter = (model, contents) -> contents.stream().mapToLong(TokenEstimator::estimate).sum();
+
+    private EncodedImage screenshot;
+
+    private long tokenLimit;
+
+    private long remoteCountThreshold;
+
+    private ConversationHistory history;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(Fixtures.bytes(Fixtures.SCREENSHOT)));
+        screenshot = PerceptionEncoder.encode(image);
+
+        tokenLimit = conversation().estimatedTokens() / 2;
+        remoteCountThreshold = Math.round(tokenLimit * AiConfiguration.get().remoteTokenCountThreshold());
+    }
+
+    @Setup(Level.Invocation)
+    public void buildHistory()
+    {
+        history = conversation();
+    }
+
+    @Benchmark
+    public int prune()
+    {
+        return history.prune(evictionPolicy(), counter, MODEL, 0, tokenLimit, remoteCountThreshold);
+    }
+
+    /**
+     * Same as the default of the agent loop.
+     */
+    private HistoryEvictionPolicy evictionPolicy()
+    {
+        switch (policy)
+        {
+            case OLDEST_TURN:
+                return new OldestTurnEvictionPolicy();
+            case IMAGE_FIRST:
+            default:
+                return new ImageFirstEvictionPolicy(AiConfiguration.get().keepRecentImages(), AiConfiguration.get().downsampleImages());
+        }
+    }
+
+    private ConversationHistory conversation()
+    {
+        ConversationHistory conversation = new ConversationHistory();
+        conversation.add(Content.fromParts(Part.fromText("Open the posters shop, search for 'canyon' and add the first result to the cart."),
+                                           Part.fromBytes(screenshot.data(), screenshot.mimeType())));
+
+        for (int step = 0; step < steps; step++)
+        {
+            conversation.add(Content.builder()
+                                    .role("model")
+                                    .parts(List.of(Part.fromText("<thoughts>The search field is in the header, I click into it to enter the term of step "
+                                                                 + step + ".</thoughts>"),
+                                                   Part.fromFunctionCall("click_at", Map.of("x", 700, "y", 40, "description", "Click the search field"))))
+                                    .build());
+            conversation.add(Content.fromParts(Part.fromFunctionResponse("click_at", Map.of("url", "https://localhost:8443/posters/", "step", step)),
+                                               Part.fromBytes(screenshot.data(), screenshot.mimeType())));
+        }
+        return conversation;
+    }
+}
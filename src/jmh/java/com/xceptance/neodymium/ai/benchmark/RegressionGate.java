@@ -0,0 +1,118 @@
+package com.xceptance.neodymium.ai.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares the JSON results of a JMH run with a baseline and fails if a benchmark got slower than the tolerance allows.
+ * <p>
+ * Scores depend on the machine, so the baseline has to be recorded where the gate runs: copy the results of a run
+ * (<code>target/jmh-result.json</code>) to <code>src/jmh/jmh-baseline.json</code> and commit it, e.g. after an
+ * optimization made things faster. The gate never writes the baseline itself and fails without one. Benchmarks
+ * missing in the baseline are reported but never fail the gate.
+ * </p>
+ * <p>
+ * Arguments: the results of the current run, the baseline and the tolerated slowdown as fraction (default 0.15).
+ * </p>
+ */
+public final class RegressionGate
+{
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * The primary score of one benchmark and parameter combination.
+     *
+     * @param value
+     *            the score
+     * @param unit
+     *            the unit of the score
+     * @param higherIsBetter
+     *            <code>true</code> for throughput, <code>false</code> for times
+     */
+    private record Score(double value, String unit, boolean higherIsBetter)
+    {
+    }
+
+    private RegressionGate()
+    {
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        Path result = Path.of(args[0]);
+        Path baseline = Path.of(args[1]);
+        double tolerance = args.length > 2 ? Double.parseDouble(args[2]) : 0.15;
+
+        if (!Files.isRegularFile(result))
+        {
+            System.err.println("No benchmark results at " + result);
+            System.exit(1);
+        }
+        if (!Files.isRegularFile(baseline))
+        {
+            System.err.println("No benchmark baseline at " + baseline + ", nothing to compare " + result + " with. "
+                               + "Record a baseline: copy " + result + " of a run on this machine to " + baseline + " and commit it.");
+            System.exit(1);
+        }
+
+        Map<String, Score> reference = scores(baseline);
+        List<String> regressions = new ArrayList<>();
+        for (Map.Entry<String, Score> entry : scores(result).entrySet())
+        {
+            Score current = entry.getValue();
+            Score previous = reference.get(entry.getKey());
+            if (previous == null || previous.value() == 0 || !previous.unit().equals(current.unit()))
+            {
+                System.out.println(String.format("%-100s %12.3f %s (no baseline)", entry.getKey(), current.value(), current.unit()));
+                continue;
+            }
+
+            // positive means slower
+            double change = current.higherIsBetter() ? previous.value() / current.value() - 1 : current.value() / previous.value() - 1;
+            String line = String.format("%-100s %12.3f %s %+7.1f%%", entry.getKey(), current.value(), current.unit(), change * 100);
+            System.out.println(line);
+            if (change > tolerance)
+            {
+                regressions.add(line);
+            }
+        }
+
+        if (!regressions.isEmpty())
+        {
+            System.err.println(regressions.size() + " benchmarks regressed by more than " + Math.round(tolerance * 100) + "% against " + baseline + ":");
+            regressions.forEach(System.err::println);
+            System.exit(1);
+        }
+        System.out.println("No benchmark regressed by more than " + Math.round(tolerance * 100) + "%");
+    }
+
+    private static Map<String, Score> scores(Path file) throws IOException
+    {
+        Map<String, Score> scores = new LinkedHashMap<>();
+        for (JsonNode run : MAPPER.readTree(file.toFile()))
+        {
+            // the key is the benchmark with its parameters in a stable order
+            Map<String, String> params = new TreeMap<>();
+            for (Iterator<Map.Entry<String, JsonNode>> fields = run.path("params").fields(); fields.hasNext();)
+            {
+                Map.Entry<String, JsonNode> field = fields.next();
+                params.put(field.getKey(), field.getValue().asText());
+            }
+            String key = run.path("benchmark").asText() + (params.isEmpty() ? "" : params.toString());
+
+            JsonNode metric = run.path("primaryMetric");
+            scores.put(key, new Score(metric.path("score").asDouble(), metric.path("scoreUnit").asText(), "thrpt".equals(run.path("mode").asText())));
+        }
+        return scores;
+    }
+}
@@ -0,0 +1,64 @@
+package com.xceptance.neodymium.ai.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.xceptance.neodymium.ai.util.ScreenshotMarker;
+
+/**
+ * Decoding, marking and encoding of a 1600x800 screenshot as done by {@link ScreenshotMarker} for every coordinate
+ * action.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ScreenshotBenchmark
+{
+    private byte[] png;
+
+    private BufferedImage image;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        png = Fixtures.bytes(Fixtures.SCREENSHOT);
+        // a separate image, the one returned by decode is the reused buffer of the thread
+        image = ImageIO.read(new ByteArrayInputStream(png));
+    }
+
+    @Benchmark
+    public BufferedImage decode() throws IOException
+    {
+        return ScreenshotMarker.decode(png);
+    }
+
+    @Benchmark
+    public byte[] mark() throws IOException
+    {
+        return ScreenshotMarker.mark(png, 800, 400);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException
+    {
+        return ScreenshotMarker.encode(image, png.length);
+    }
+}
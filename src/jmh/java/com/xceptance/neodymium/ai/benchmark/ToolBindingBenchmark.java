@@ -0,0 +1,65 @@
+package com.xceptance.neodymium.ai.benchmark;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.xceptance.neodymium.ai.test.AbstractAiTest;
+import com.xceptance.neodymium.ai.tool.ToolRegistry;
+
+/**
+ * Looking up a tool and binding the arguments of a function call to its argument record, as done for every function
+ * call of the model. The arguments mix the number types JSON parsing delivers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ToolBindingBenchmark
+{
+    private final ToolRegistry registry = ToolRegistry.of(AbstractAiTest.class);
+
+    private final Map<String, Object> clickArgs = Map.of("x", 512, "y", 48);
+
+    private final Map<String, Object> typeTextArgs = Map.of("x", 700.0, "y", 40.0, "text", "canyon", "press_enter", true);
+
+    private final Map<String, Object> scrollArgs = Map.of("direction", "down", "magnitude", 1200L);
+
+    private final Map<String, Object> javaMethodArgs = Map.of("name", "validateCartTotal", "parameters", List.of("2", 37.98));
+
+    @Benchmark
+    public Object clickAt()
+    {
+        return registry.tool("click_at").bind(clickArgs);
+    }
+
+    @Benchmark
+    public Object typeTextAt()
+    {
+        return registry.tool("type_text_at").bind(typeTextArgs);
+    }
+
+    @Benchmark
+    public Object scrollDocument()
+    {
+        return registry.tool("scroll_document").bind(scrollArgs);
+    }
+
+    @Benchmark
+    public Object javaMethod()
+    {
+        return registry.tool("java_method").bind(javaMethodArgs);
+    }
+}
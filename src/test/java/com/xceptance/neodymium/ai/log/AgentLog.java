@@ -0,0 +1,414 @@
+package com.xceptance.neodymium.ai.log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xceptance.neodymium.ai.util.AiConfiguration;
+import com.xceptance.neodymium.ai.util.AiConfiguration.ConsoleOutput;
+import com.xceptance.neodymium.ai.util.ArtifactWriter;
+import com.xceptance.neodymium.ai.util.EncodedImage;
+
+/**
+ * The AI log of one run: thoughts, function calls, results and notes of the agent loop as structured events.
+ * <p>
+ * Every event is one JSON line in <code>&lt;log directory&gt;/&lt;name&gt;.jsonl</code>. Events are collected per step
+ * and handed to the {@link ArtifactWriter} in batches, so the agent loop neither waits for the disk nor keeps the log of
+ * a long run in memory. Binary values (e.g. screenshots) and long texts (e.g. page content) are written to a file of
+ * their own in <code>&lt;log directory&gt;/&lt;name&gt;/</code>, the event only refers to it. At the end of the run the
+ * readable "AI Log" attachment is rendered from the file, in the background as well.
+ * </p>
+ * <p>
+ * The console only gets what {@link AiConfiguration#logConsole()} asks for, by default one line per function call.
+ * </p>
+ * <p>
+ * Like {@link com.xceptance.neodymium.ai.metrics.RunMetrics} the log is bound to the thread of its run, so helpers can
+ * log via {@link #current()} without knowing the run.
+ * </p>
+ */
+public class AgentLog
+{
+    private static final ThreadLocal<AgentLog> CURRENT = new ThreadLocal<>();
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /** Pending events are handed to the writer once they exceed this size, even within a step. */
+    private static final int BATCH_SIZE = 64 * 1024;
+
+    /** Console lines are cut at this length unless the full output is requested. */
+    private static final int CONSOLE_LINE_LENGTH = 300;
+
+    private final Path file;
+
+    private final Path blobDirectory;
+
+    private final ConsoleOutput console;
+
+    private final int maxInlineLength;
+
+    private final long started = System.currentTimeMillis();
+
+    private final StringBuilder pending = new StringBuilder();
+
+    private int step;
+
+    private int blobs;
+
+    private AgentLog(String name)
+    {
+        AiConfiguration configuration = AiConfiguration.get();
+        Path directory = Path.of(configuration.logDirectory());
+        this.file = directory.resolve(name + ".jsonl");
+        this.blobDirectory = directory.resolve(name);
+        this.console = configuration.logConsole();
+        this.maxInlineLength = configuration.logMaxInlineLength();
+
+        ArtifactWriter.write(file, new byte[0]);
+    }
+
+    /**
+     * Starts the log of a run, replacing the log of a previous run with the same name, and binds it to the current
+     * thread.
+     *
+     * @param name
+     *            the name of the run, used for the log file
+     * @return the log of the run
+     */
+    public static AgentLog start(String name)
+    {
+        AgentLog log = new AgentLog(name);
+        CURRENT.set(log);
+        return log;
+    }
+
+    /**
+     * @return the log of the run of the current thread or <code>null</code> if there is none
+     */
+    public static AgentLog current()
+    {
+        return CURRENT.get();
+    }
+
+    /**
+     * Starts the next step and hands the events of the previous one to the writer.
+     */
+    public synchronized void nextStep()
+    {
+        step++;
+        flush();
+    }
+
+    /**
+     * @param text
+     *            the thoughts of the model
+     */
+    public void thoughts(String text)
+    {
+        event("thoughts", null, text, null);
+        print(ConsoleOutput.FULL, "Thoughts:\n" + text);
+    }
+
+    /**
+     * @param function
+     *            the function the model called
+     * @param args
+     *            the arguments of the call
+     */
+    public void call(String function, Map<String, Object> args)
+    {
+        Object data = event("call", function, null, args);
+        print(ConsoleOutput.ACTIONS, "Tester Action ==> " + function + " " + data);
+    }
+
+    /**
+     * @param function
+     *            the function that was called
+     * @param result
+     *            the function response, binary values are stored by reference
+     */
+    public void result(String function, Map<String, Object> result)
+    {
+        Object data = event("result", function, null, result);
+        print(ConsoleOutput.FULL, "\tResult: " + data);
+    }
+
+    /**
+     * @param function
+     *            the function of the replayed trace step
+     * @param args
+     *            the recorded arguments
+     */
+    public void replayed(String function, Map<String, Object> args)
+    {
+        Object data = event("replayed", function, null, args);
+        print(ConsoleOutput.ACTIONS, "Replayed Action ==> " + function + " " + data);
+    }
+
+    /**
+     * Logs something worth to be seen on the console, e.g. the outcome of the run.
+     *
+     * @param message
+     *            the message
+     */
+    public void info(String message)
+    {
+        event("info", null, message, null);
+        print(ConsoleOutput.ACTIONS, message);
+    }
+
+    /**
+     * Logs details only printed with the full console output, e.g. token counts.
+     *
+     * @param message
+     *            the message
+     */
+    public void debug(String message)
+    {
+        event("debug", null, message, null);
+        print(ConsoleOutput.FULL, message);
+    }
+
+    /**
+     * Logs an error, always printed to the console.
+     *
+     * @param message
+     *            the message
+     * @param t
+     *            the cause or <code>null</code>
+     */
+    public void error(String message, Throwable t)
+    {
+        Map<String, Object> data = null;
+        if (t != null)
+        {
+            StringWriter stackTrace = new StringWriter();
+            t.printStackTrace(new PrintWriter(stackTrace));
+            data = Map.of("exception", stackTrace.toString());
+        }
+        event("error", null, message, data);
+        System.err.println(t == null ? message : message + ": " + t);
+    }
+
+    /**
+     * Logs an error to the log of the run of the current thread. Outside of a run it is only printed.
+     *
+     * @param message
+     *            the message
+     * @param t
+     *            the cause or <code>null</code>
+     */
+    public static void reportError(String message, Throwable t)
+    {
+        AgentLog log = current();
+        if (log != null)
+        {
+            log.error(message, t);
+        }
+        else
+        {
+            System.err.println(t == null ? message : message + ": " + t);
+        }
+    }
+
+    /**
+     * Ends the run: unbinds the log from the current thread, hands the remaining events to the writer and attaches the
+     * readable log, rendered from the file once everything is written, to the current step.
+     */
+    public void finish()
+    {
+        if (CURRENT.get() == this)
+        {
+            CURRENT.remove();
+        }
+        synchronized (this)
+        {
+            flush();
+        }
+        ArtifactWriter.attach("AI Log", "text/plain", ".txt", () -> render(file));
+    }
+
+    /**
+     * Adds an event to the pending batch.
+     *
+     * @return the data as written, with binary values and long texts replaced by references
+     */
+    private synchronized Object event(String type, String function, String text, Object data)
+    {
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("time", System.currentTimeMillis() - started);
+        event.put("step", step);
+        event.put("type", type);
+        if (function != null)
+        {
+            event.put("function", function);
+        }
+        if (text != null)
+        {
+            event.put("text", inline(text));
+        }
+        Object inlined = inline(data);
+        if (inlined != null)
+        {
+            event.put("data", inlined);
+        }
+
+        try
+        {
+            pending.append(MAPPER.writeValueAsString(event)).append('\n');
+        }
+        catch (JsonProcessingException e)
+        {
+            System.err.println("Failed to log " + type + " event: " + e.getMessage());
+        }
+        if (pending.length() > BATCH_SIZE)
+        {
+            flush();
+        }
+        return inlined;
+    }
+
+    /**
+     * Converts a value into plain JSON values. Binary values and long texts are written to a file of their own and
+     * replaced by a reference, everything that is not a number, boolean, map or collection becomes a text.
+     */
+    private Object inline(Object value)
+    {
+        if (value == null || value instanceof Number || value instanceof Boolean)
+        {
+            return value;
+        }
+        if (value instanceof byte[] bytes)
+        {
+            return reference(bytes, ".bin");
+        }
+        if (value instanceof EncodedImage image)
+        {
+            return reference(image.data(), "." + image.mimeType().substring(image.mimeType().indexOf('/') + 1));
+        }
+        if (value instanceof Map<?, ?> map)
+        {
+            Map<String, Object> inlined = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : map.entrySet())
+            {
+                inlined.put(String.valueOf(entry.getKey()), inline(entry.getValue()));
+            }
+            return inlined;
+        }
+        if (value instanceof Collection<?> collection)
+        {
+            List<Object> inlined = new ArrayList<>(collection.size());
+            for (Object element : collection)
+            {
+                inlined.add(inline(element));
+            }
+            return inlined;
+        }
+
+        String text = String.valueOf(value);
+        return text.length() > maxInlineLength ? reference(text.getBytes(StandardCharsets.UTF_8), ".txt") : text;
+    }
+
+    private Map<String, Object> reference(byte[] content, String extension)
+    {
+        Path blob = blobDirectory.resolve(step + "_" + ++blobs + extension);
+        ArtifactWriter.write(blob, content);
+
+        Map<String, Object> reference = new LinkedHashMap<>();
+        reference.put("file", blobDirectory.getFileName() + "/" + blob.getFileName());
+        reference.put("bytes", content.length);
+        return reference;
+    }
+
+    private void flush()
+    {
+        if (pending.length() > 0)
+        {
+            ArtifactWriter.append(file, pending.toString().getBytes(StandardCharsets.UTF_8));
+            pending.setLength(0);
+        }
+    }
+
+    private void print(ConsoleOutput level, String message)
+    {
+        if (console.compareTo(level) < 0)
+        {
+            return;
+        }
+        if (console != ConsoleOutput.FULL && message.length() > CONSOLE_LINE_LENGTH)
+        {
+            message = message.substring(0, CONSOLE_LINE_LENGTH) + "...";
+        }
+        System.out.println(message);
+    }
+
+    /**
+     * Renders the log file in the layout of the old plain text log. Runs on the writer thread.
+     */
+    private static byte[] render(Path file)
+    {
+        StringBuilder text = new StringBuilder();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8))
+        {
+            int step = -1;
+            for (String line = reader.readLine(); line != null; line = reader.readLine())
+            {
+                JsonNode event = MAPPER.readTree(line);
+                if (event.path("step").asInt() != step)
+                {
+                    step = event.path("step").asInt();
+                    text.append("=== Step ").append(step).append(" ===\n");
+                }
+
+                String function = event.path("function").asText();
+                JsonNode data = event.path("data");
+                switch (event.path("type").asText())
+                {
+                    case "thoughts":
+                        text.append("Thoughts:\n").append(text(event.path("text"))).append('\n');
+                        break;
+                    case "call":
+                        text.append("Called Function:\n\t").append(function).append('\n').append(data).append('\n');
+                        break;
+                    case "replayed":
+                        text.append("Replayed:\n\t").append(function).append('\n').append(data).append('\n');
+                        break;
+                    case "result":
+                        text.append("\tResult:\n").append(data).append("\n\n");
+                        break;
+                    default:
+                        text.append(text(event.path("text"))).append('\n');
+                        if (data.has("exception"))
+                        {
+                            text.append(text(data.path("exception"))).append('\n');
+                        }
+                        break;
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            text.append("Failed to read the AI log ").append(file).append(": ").append(e.getMessage()).append('\n');
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the text or, if it was stored by reference, where to find it
+     */
+    private static String text(JsonNode node)
+    {
+        return node.isTextual() ? node.asText() : "[stored in " + node.path("file").asText() + ", " + node.path("bytes").asLong() + " bytes]";
+    }
+}
@@ -0,0 +1,81 @@
+package com.xceptance.neodymium.ai.metrics;
+
+import java.util.Arrays;
+
+/**
+ * The durations measured for one {@link Phase} of a run. A run has a few hundred samples per phase at most, so all of
+ * them are kept and the percentiles are exact.
+ */
+public class Histogram
+{
+    private long[] samples = new long[64];
+
+    private int count;
+
+    private long total;
+
+    private long max;
+
+    /**
+     * @param nanos
+     *            the duration in nanoseconds
+     */
+    public synchronized void record(long nanos)
+    {
+        if (count == samples.length)
+        {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = nanos;
+        total += nanos;
+        max = Math.max(max, nanos);
+    }
+
+    /**
+     * @return the number of samples
+     */
+    public synchronized int count()
+    {
+        return count;
+    }
+
+    /**
+     * @return the sum of all samples in nanoseconds
+     */
+    public synchronized long total()
+    {
+        return total;
+    }
+
+    /**
+     * @return the largest sample in nanoseconds
+     */
+    public synchronized long max()
+    {
+        return max;
+    }
+
+    /**
+     * @param percentiles
+     *            the percentiles between 0 and 100
+     * @return the value of each percentile in nanoseconds (nearest rank), 0 if there are no samples
+     */
+    public synchronized long[] percentiles(double... percentiles)
+    {
+        long[] values = new long[percentiles.length];
+        if (count == 0)
+        {
+            return values;
+        }
+
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        for (int i = 0; i < percentiles.length; i++)
+        {
+            // multiply first, 99.9 / 100 * 1000 is slightly above 999 in floating point
+            int rank = (int) Math.ceil(percentiles[i] * count / 100);
+            values[i] = sorted[Math.min(count, Math.max(1, rank)) - 1];
+        }
+        return values;
+    }
+}
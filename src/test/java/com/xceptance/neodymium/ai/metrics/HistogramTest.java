@@ -0,0 +1,113 @@
+package com.xceptance.neodymium.ai.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class HistogramTest
+{
+    @Test
+    public void emptyHistogramHasZeroValues()
+    {
+        Histogram histogram = new Histogram();
+
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.total());
+        assertEquals(0, histogram.max());
+        assertArrayEquals(new long[2], histogram.percentiles(50, 99));
+    }
+
+    @Test
+    public void percentilesUseTheNearestRank()
+    {
+        Histogram histogram = new Histogram();
+        List<Long> samples = new ArrayList<>();
+        for (long i = 1; i <= 100; i++)
+        {
+            samples.add(i);
+        }
+        Collections.shuffle(samples);
+        samples.forEach(histogram::record);
+
+        assertArrayEquals(new long[]
+        {
+          1, 1, 50, 90, 95, 99, 100
+        }, histogram.percentiles(0, 1, 50, 90, 95, 99, 100));
+        assertEquals(100, histogram.count());
+        assertEquals(5050, histogram.total());
+        assertEquals(100, histogram.max());
+    }
+
+    @Test
+    public void percentilesRoundUpToTheNextSample()
+    {
+        Histogram histogram = new Histogram();
+        histogram.record(300);
+        histogram.record(100);
+        histogram.record(200);
+
+        assertArrayEquals(new long[]
+        {
+          200, 300, 300
+        }, histogram.percentiles(50, 90, 99));
+    }
+
+    @Test
+    public void singleSampleIsEveryPercentile()
+    {
+        Histogram histogram = new Histogram();
+        histogram.record(42);
+
+        assertArrayEquals(new long[]
+        {
+          42, 42, 42
+        }, histogram.percentiles(0, 50, 100));
+    }
+
+    @Test
+    public void keepsAllSamples()
+    {
+        Histogram histogram = new Histogram();
+        for (int i = 1000; i > 0; i--)
+        {
+            histogram.record(i);
+        }
+
+        assertEquals(1000, histogram.count());
+        assertEquals(500_500, histogram.total());
+        assertArrayEquals(new long[]
+        {
+          1, 500, 999, 1000
+        }, histogram.percentiles(0, 50, 99.9, 100));
+    }
+
+    @Test
+    public void recordsFromSeveralThreads() throws InterruptedException
+    {
+        Histogram histogram = new Histogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++)
+        {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 1000; i++)
+                {
+                    histogram.record(1);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        assertEquals(4000, histogram.count());
+        assertEquals(4000, histogram.total());
+    }
+}
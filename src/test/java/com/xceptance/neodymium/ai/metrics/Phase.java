@@ -0,0 +1,38 @@
+package com.xceptance.neodymium.ai.metrics;
+
+import java.util.Locale;
+
+/**
+ * The parts of a step whose time is measured by {@link RunMetrics}.
+ */
+public enum Phase
+{
+    /** The model request, from sending it until the last chunk of the response arrived. */
+    MODEL_CALL,
+
+    /** Exact token counts requested from the model backend. */
+    COUNT_TOKENS,
+
+    /** Capturing screenshots in the browser. */
+    SCREENSHOT,
+
+    /** Decoding, marking, diffing and encoding screenshots. */
+    ENCODING,
+
+    /** Executing function calls in the browser. */
+    ACTION,
+
+    /** Waiting for the page to settle. */
+    WAIT,
+
+    /** Writing artifacts and attachments, in the background. */
+    ARTIFACT_IO;
+
+    /**
+     * @return the name used in the exports, e.g. <code>model_call</code>
+     */
+    public String key()
+    {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,365 @@
+package com.xceptance.neodymium.ai.metrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.genai.types.Content;
+import com.google.genai.types.GenerateContentResponse;
+import com.google.genai.types.ModalityTokenCount;
+import com.google.genai.types.Part;
+import com.xceptance.neodymium.ai.log.AgentLog;
+import com.xceptance.neodymium.ai.util.AiConfiguration;
+import com.xceptance.neodymium.ai.util.ArtifactWriter;
+
+/**
+ * Structured metrics of one agent run (one dataset): the time spent per {@link Phase}, tokens, uploaded bytes and
+ * retries, per step and aggregated with percentiles.
+ * <p>
+ * A run is bound to the thread that drives it, so code running on the test thread reports via
+ * {@link #timer(Phase)} without knowing the run. Work that runs on other threads captures {@link #current()} first.
+ * Phases may nest, e.g. a wait inside an action counts for both. At the end the run is exported as JSON summary and
+ * CSV with one line per step to the metrics directory and attached to the report.
+ * </p>
+ */
+public class RunMetrics
+{
+    private static final ThreadLocal<RunMetrics> CURRENT = new ThreadLocal<>();
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private static final double[] PERCENTILES =
+    {
+      50, 90, 95, 99
+    };
+
+    private static final Timer NO_TIMER = () -> {
+    };
+
+    /**
+     * Measures the duration of a phase until it is closed.
+     */
+    @FunctionalInterface
+    public interface Timer extends AutoCloseable
+    {
+        @Override
+        void close();
+    }
+
+    /**
+     * The figures of a single step: one model request and the execution of its function calls, or one replayed
+     * action.
+     */
+    private static class Step
+    {
+        private final int index;
+
+        private final List<String> functions = new ArrayList<>();
+
+        private final long[] nanos = new long[Phase.values().length];
+
+        private long inputTokens;
+
+        private long outputTokens;
+
+        private long thoughtTokens;
+
+        private long imageTokens;
+
+        private long uploadedBytes;
+
+        private int retries;
+
+        Step(int index)
+        {
+            this.index = index;
+        }
+    }
+
+    private final String name;
+
+    private final long started = System.nanoTime();
+
+    private final Map<Phase, Histogram> phases = new EnumMap<>(Phase.class);
+
+    private final List<Step> steps = new ArrayList<>();
+
+    private Step step;
+
+    private RunMetrics(String name)
+    {
+        this.name = name;
+        for (Phase phase : Phase.values())
+        {
+            phases.put(phase, new Histogram());
+        }
+        this.step = new Step(0);
+        steps.add(step);
+    }
+
+    /**
+     * Starts the metrics of a run and binds them to the current thread.
+     *
+     * @param name
+     *            the name of the run, used for the exported files
+     * @return the metrics of the run
+     */
+    public static RunMetrics start(String name)
+    {
+        RunMetrics metrics = new RunMetrics(name);
+        CURRENT.set(metrics);
+        return metrics;
+    }
+
+    /**
+     * @return the metrics of the run of the current thread or <code>null</code> if there is none
+     */
+    public static RunMetrics current()
+    {
+        return CURRENT.get();
+    }
+
+    /**
+     * Starts measuring a phase of the run of the current thread.
+     *
+     * @param phase
+     *            the phase
+     * @return the timer, to be closed at the end of the phase
+     */
+    public static Timer timer(Phase phase)
+    {
+        return timer(CURRENT.get(), phase);
+    }
+
+    /**
+     * Starts measuring a phase of the given run, meant for work on other threads.
+     *
+     * @param metrics
+     *            the metrics, may be <code>null</code>
+     * @param phase
+     *            the phase
+     * @return the timer, to be closed at the end of the phase
+     */
+    public static Timer timer(RunMetrics metrics, Phase phase)
+    {
+        if (metrics == null)
+        {
+            return NO_TIMER;
+        }
+        long start = System.nanoTime();
+        return () -> metrics.record(phase, System.nanoTime() - start);
+    }
+
+    /**
+     * Adds a measured duration to the current step.
+     *
+     * @param phase
+     *            the phase
+     * @param nanos
+     *            the duration in nanoseconds
+     */
+    public synchronized void record(Phase phase, long nanos)
+    {
+        phases.get(phase).record(nanos);
+        step.nanos[phase.ordinal()] += nanos;
+    }
+
+    /**
+     * Starts the next step, everything recorded from now on belongs to it.
+     */
+    public synchronized void nextStep()
+    {
+        step = new Step(steps.size());
+        steps.add(step);
+    }
+
+    /**
+     * @param function
+     *            a function executed in the current step
+     */
+    public synchronized void function(String function)
+    {
+        step.functions.add(function);
+    }
+
+    /**
+     * Counts a model request that has to be repeated, e.g. because the response did not contain a function call.
+     */
+    public synchronized void retry()
+    {
+        step.retries++;
+    }
+
+    /**
+     * Records the size of a model request.
+     *
+     * @param history
+     *            the contents sent
+     */
+    public void request(List<Content> history)
+    {
+        long bytes = 0;
+        for (Content content : history)
+        {
+            for (Part part : content.parts().orElse(List.of()))
+            {
+                bytes += part.text().map(text -> (long) text.length()).orElse(0L);
+                bytes += part.inlineData().flatMap(blob -> blob.data()).map(data -> (long) data.length).orElse(0L);
+                bytes += part.functionCall().map(call -> (long) call.toJson().length()).orElse(0L);
+                bytes += part.functionResponse().map(response -> (long) response.toJson().length()).orElse(0L);
+            }
+        }
+
+        synchronized (this)
+        {
+            step.uploadedBytes += bytes;
+        }
+    }
+
+    /**
+     * Records the token usage reported with a model response.
+     *
+     * @param response
+     *            the response
+     */
+    public void response(GenerateContentResponse response)
+    {
+        response.usageMetadata().ifPresent(usage -> {
+            long images = 0;
+            for (ModalityTokenCount count : usage.promptTokensDetails().orElse(List.of()))
+            {
+                if (count.modality().map(modality -> "IMAGE".equals(modality.toString())).orElse(false))
+                {
+                    images += count.tokenCount().orElse(0);
+                }
+            }
+
+            synchronized (this)
+            {
+                step.inputTokens += usage.promptTokenCount().orElse(0);
+                step.outputTokens += usage.candidatesTokenCount().orElse(0);
+                step.thoughtTokens += usage.thoughtsTokenCount().orElse(0);
+                step.imageTokens += images;
+            }
+        });
+    }
+
+    /**
+     * Ends the run: unbinds it from the current thread and, if enabled via {@link AiConfiguration#metricsExport()},
+     * writes the summary and the steps to the metrics directory and attaches both to the report, in the background via
+     * the {@link ArtifactWriter}.
+     */
+    public void finish()
+    {
+        if (CURRENT.get() == this)
+        {
+            CURRENT.remove();
+        }
+        if (!AiConfiguration.get().metricsExport())
+        {
+            return;
+        }
+
+        byte[] summary;
+        byte[] csv;
+        synchronized (this)
+        {
+            try
+            {
+                summary = MAPPER.writeValueAsBytes(summary());
+            }
+            catch (IOException e)
+            {
+                AgentLog.reportError("Failed to export the metrics of " + name, e);
+                return;
+            }
+            csv = csv().getBytes(StandardCharsets.UTF_8);
+        }
+
+        Path directory = Path.of(AiConfiguration.get().metricsDirectory());
+        ArtifactWriter.write(directory.resolve(name + ".json"), summary);
+        ArtifactWriter.write(directory.resolve(name + ".csv"), csv);
+        ArtifactWriter.attach("AI Metrics", "application/json", ".json", summary);
+        ArtifactWriter.attach("AI Metrics per Step", "text/csv", ".csv", csv);
+    }
+
+    private Map<String, Object> summary()
+    {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("name", name);
+        summary.put("wallTimeMs", millis(System.nanoTime() - started));
+        summary.put("steps", steps.size() - 1);
+
+        Map<String, Object> times = new LinkedHashMap<>();
+        for (Map.Entry<Phase, Histogram> phase : phases.entrySet())
+        {
+            Histogram histogram = phase.getValue();
+            long[] percentiles = histogram.percentiles(PERCENTILES);
+
+            Map<String, Object> values = new LinkedHashMap<>();
+            values.put("count", histogram.count());
+            values.put("totalMs", millis(histogram.total()));
+            for (int i = 0; i < PERCENTILES.length; i++)
+            {
+                values.put("p" + (int) PERCENTILES[i] + "Ms", millis(percentiles[i]));
+            }
+            values.put("maxMs", millis(histogram.max()));
+            times.put(phase.getKey().key(), values);
+        }
+        summary.put("phases", times);
+
+        long input = 0, output = 0, thoughts = 0, images = 0, bytes = 0, retries = 0;
+        for (Step each : steps)
+        {
+            input += each.inputTokens;
+            output += each.outputTokens;
+            thoughts += each.thoughtTokens;
+            images += each.imageTokens;
+            bytes += each.uploadedBytes;
+            retries += each.retries;
+        }
+        summary.put("tokens", Map.of("input", input, "output", output, "thoughts", thoughts, "images", images));
+        summary.put("uploadedBytes", bytes);
+        summary.put("retries", retries);
+        return summary;
+    }
+
+    private String csv()
+    {
+        StringBuilder csv = new StringBuilder("step,functions");
+        for (Phase phase : Phase.values())
+        {
+            csv.append(',').append(phase.key()).append("_ms");
+        }
+        csv.append(",input_tokens,output_tokens,thought_tokens,image_tokens,uploaded_bytes,retries\n");
+
+        for (Step each : steps)
+        {
+            csv.append(each.index).append(",\"").append(String.join(" ", each.functions)).append('"');
+            for (long nanos : each.nanos)
+            {
+                csv.append(',').append(millis(nanos));
+            }
+            csv.append(',').append(each.inputTokens)
+               .append(',').append(each.outputTokens)
+               .append(',').append(each.thoughtTokens)
+               .append(',').append(each.imageTokens)
+               .append(',').append(each.uploadedBytes)
+               .append(',').append(each.retries)
+               .append('\n');
+        }
+        return csv.toString();
+    }
+
+    private static double millis(long nanos)
+    {
+        return Math.round(nanos / 10_000d) / 100d;
+    }
+}
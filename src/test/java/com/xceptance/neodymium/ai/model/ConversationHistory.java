@@ -0,0 +1,134 @@
+package com.xceptance.neodymium.ai.model;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+import com.google.genai.types.Content;
+import com.xceptance.neodymium.ai.metrics.Phase;
+import com.xceptance.neodymium.ai.metrics.RunMetrics;
+
+/**
+ * The conversation sent to the model, with a running token estimate.
+ * <p>
+ * Every content is estimated once via {@link TokenEstimator} when it is added, and the running total is updated on every
+ * add and remove, so asking for the current size is free. Whenever an exact count is fetched from the model backend,
+ * pass it to {@link #calibrate(long)} so later estimates are corrected by the observed ratio. {@link #prune} does that
+ * on its own while it shrinks the conversation to the token limit.
+ * </p>
+ */
+public class ConversationHistory extends AbstractList<Content> implements RandomAccess
+{
+    private final List<Content> contents = new ArrayList<>();
+
+    private final List<Integer> tokens = new ArrayList<>();
+
+    private long estimatedTokens = 0;
+
+    private double calibration = 1.0;
+
+    @Override
+    public Content get(int index)
+    {
+        return contents.get(index);
+    }
+
+    @Override
+    public int size()
+    {
+        return contents.size();
+    }
+
+    @Override
+    public Content set(int index, Content content)
+    {
+        int estimate = TokenEstimator.estimate(content);
+        estimatedTokens += estimate - tokens.set(index, estimate);
+        return contents.set(index, content);
+    }
+
+    @Override
+    public void add(int index, Content content)
+    {
+        int estimate = TokenEstimator.estimate(content);
+        contents.add(index, content);
+        tokens.add(index, estimate);
+        estimatedTokens += estimate;
+        modCount++;
+    }
+
+    @Override
+    public Content remove(int index)
+    {
+        estimatedTokens -= tokens.remove(index);
+        modCount++;
+        return contents.remove(index);
+    }
+
+    /**
+     * @return the calibrated token estimate of the whole conversation
+     */
+    public long estimatedTokens()
+    {
+        return Math.round(estimatedTokens * calibration);
+    }
+
+    /**
+     * Adjusts the estimate to an exact count of the current conversation.
+     *
+     * @param exactTokens
+     *            the token count reported by the model backend
+     */
+    public void calibrate(long exactTokens)
+    {
+        if (exactTokens > 0 && estimatedTokens > 0)
+        {
+            // keep the factor in a sane range, a single odd count should not derail the estimate
+            calibration = Math.max(0.5, Math.min(4.0, (double) exactTokens / estimatedTokens));
+        }
+    }
+
+    /**
+     * Evicts contents until the conversation fits into the token limit. The running estimate is used as long as it is
+     * clearly below the limit, the exact count is only requested from the backend once the estimate gets close to it.
+     *
+     * @param policy
+     *            decides what to evict
+     * @param counter
+     *            counts the tokens exactly, usually the model backend
+     * @param model
+     *            the model name
+     * @param fixedTokens
+     *            the tokens of system instruction and tools, sent with every request
+     * @param tokenLimit
+     *            the maximum number of tokens of a request
+     * @param remoteCountThreshold
+     *            the estimated number of tokens from which on exact counts are requested
+     * @return the number of evictions or -1 if the conversation could not be pruned far enough
+     */
+    public int prune(HistoryEvictionPolicy policy, TokenCounter counter, String model, long fixedTokens, long tokenLimit, long remoteCountThreshold)
+    {
+        int evictions = 0;
+        while (estimatedTokens() + fixedTokens >= remoteCountThreshold)
+        {
+            long exactTokens;
+            try (RunMetrics.Timer timer = RunMetrics.timer(Phase.COUNT_TOKENS))
+            {
+                exactTokens = counter.countTokens(model, this);
+            }
+            calibrate(exactTokens);
+            if (exactTokens + fixedTokens <= tokenLimit)
+            {
+                break;
+            }
+
+            if (!policy.evict(this))
+            {
+                return -1;
+            }
+            evictions++;
+        }
+        return evictions;
+    }
+}
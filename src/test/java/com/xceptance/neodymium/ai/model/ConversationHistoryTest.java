@@ -0,0 +1,160 @@
+package com.xceptance.neodymium.ai.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.genai.types.Content;
+import com.google.genai.types.Part;
+
+public class ConversationHistoryTest
+{
+    private static final String MODEL = "test";
+
+    @Test
+    public void estimateFollowsAddSetAndRemove()
+    {
+        ConversationHistory history = conversation(3);
+        assertEquals(sum(history), history.estimatedTokens());
+
+        history.set(1, Content.fromParts(Part.fromText("x".repeat(400))));
+        assertEquals(sum(history), history.estimatedTokens());
+
+        history.remove(2);
+        history.remove(0);
+        assertEquals(sum(history), history.estimatedTokens());
+
+        history.clear();
+        assertEquals(0, history.estimatedTokens());
+    }
+
+    @Test
+    public void calibrateScalesTheEstimate()
+    {
+        ConversationHistory history = conversation(3);
+        long estimate = history.estimatedTokens();
+
+        history.calibrate(estimate * 2);
+        assertEquals(estimate * 2, history.estimatedTokens());
+
+        // the factor of a single odd count is capped
+        history.calibrate(estimate * 100);
+        assertEquals(estimate * 4, history.estimatedTokens());
+        history.calibrate(1);
+        assertEquals(Math.round(estimate * 0.5), history.estimatedTokens());
+
+        // nothing to learn from an empty count
+        history.calibrate(0);
+        assertEquals(Math.round(estimate * 0.5), history.estimatedTokens());
+    }
+
+    @Test
+    public void calibrationAppliesToLaterContents()
+    {
+        ConversationHistory history = conversation(1);
+        history.calibrate(history.estimatedTokens() * 2);
+
+        Content added = Content.fromParts(Part.fromText("x".repeat(400)));
+        long before = history.estimatedTokens();
+        history.add(added);
+
+        assertEquals(before + 2 * TokenEstimator.estimate(added), history.estimatedTokens(), 1);
+    }
+
+    @Test
+    public void pruneDoesNotCountBelowTheThreshold()
+    {
+        ConversationHistory history = conversation(5);
+        AtomicInteger counts = new AtomicInteger();
+
+        int evictions = history.prune(new OldestTurnEvictionPolicy(), (model, contents) -> {
+            counts.incrementAndGet();
+            return 0;
+        }, MODEL, 0, Long.MAX_VALUE, history.estimatedTokens() + 1);
+
+        assertEquals(0, evictions);
+        assertEquals(0, counts.get());
+        assertEquals(11, history.size());
+    }
+
+    @Test
+    public void pruneStopsOnceTheExactCountFits()
+    {
+        ConversationHistory history = conversation(5);
+        long total = sum(history);
+        AtomicInteger counts = new AtomicInteger();
+
+        // close to the limit by estimate, but the exact count says it fits
+        int evictions = history.prune(new OldestTurnEvictionPolicy(), (model, contents) -> {
+            counts.incrementAndGet();
+            return total / 2;
+        }, MODEL, 0, total, 0);
+
+        assertEquals(0, evictions);
+        assertEquals(1, counts.get());
+        assertEquals(11, history.size());
+        // calibrated to the exact count
+        assertEquals(total / 2, history.estimatedTokens(), 1);
+    }
+
+    @Test
+    public void pruneEvictsUntilTheConversationFits()
+    {
+        ConversationHistory history = conversation(5);
+        long fixedTokens = 10;
+        long tokenLimit = sum(history) / 2;
+
+        int evictions = history.prune(new OldestTurnEvictionPolicy(), ConversationHistoryTest::exact, MODEL, fixedTokens, tokenLimit, 0);
+
+        assertTrue(evictions > 0);
+        assertTrue(sum(history) + fixedTokens <= tokenLimit);
+        // the prompt is pinned
+        assertEquals("Open the shop", history.get(0).parts().get().get(0).text().get());
+    }
+
+    @Test
+    public void pruneFailsIfNothingCanBeEvicted()
+    {
+        ConversationHistory history = conversation(2);
+
+        assertEquals(-1, history.prune(h -> false, ConversationHistoryTest::exact, MODEL, 0, 1, 0));
+        assertEquals(5, history.size());
+    }
+
+    private static long exact(String model, List<Content> contents)
+    {
+        return contents.stream().mapToLong(TokenEstimator::estimate).sum();
+    }
+
+    private static long sum(ConversationHistory history)
+    {
+        return exact(MODEL, history);
+    }
+
+    /**
+     * @return the prompt followed by the given number of turns of model call and function response
+     */
+    static ConversationHistory conversation(int turns)
+    {
+        ConversationHistory history = new ConversationHistory();
+        history.add(Content.builder().role("user").parts(List.of(Part.fromText("Open the shop"))).build());
+        for (int i = 0; i < turns; i++)
+        {
+            history.add(Content.builder()
+                               .role("model")
+                               .parts(List.of(Part.fromText("I click the search field of step " + i + "."),
+                                              Part.fromFunctionCall("click_at", Map.of("x", 700, "y", 40))))
+                               .build());
+            history.add(Content.builder()
+                               .role("user")
+                               .parts(List.of(Part.fromFunctionResponse("click_at", Map.of("status", "success", "step", i))))
+                               .build());
+        }
+        return history;
+    }
+}
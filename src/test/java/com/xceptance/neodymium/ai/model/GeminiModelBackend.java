@@ -0,0 +1,163 @@
+package com.xceptance.neodymium.ai.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import com.google.genai.Client;
+import com.google.genai.ResponseStream;
+import com.google.genai.types.Candidate;
+import com.google.genai.types.Content;
+import com.google.genai.types.GenerateContentConfig;
+import com.google.genai.types.GenerateContentResponse;
+import com.google.genai.types.Part;
+import com.xceptance.neodymium.ai.log.AgentLog;
+
+/**
+ * Backend that sends every request through a {@link Client} of the Google GenAI SDK.
+ */
+public class GeminiModelBackend implements ModelBackend
+{
+    private final Client client;
+
+    /** Something that has to be closed together with the client, e.g. the server the client talks to. */
+    private final AutoCloseable companion;
+
+    private final AtomicBoolean warmedUp = new AtomicBoolean();
+
+    public GeminiModelBackend(Client client)
+    {
+        this(client, null);
+    }
+
+    public GeminiModelBackend(Client client, AutoCloseable companion)
+    {
+        this.client = client;
+        this.companion = companion;
+    }
+
+    /**
+     * Opens the connection to the API in the background with a cheap metadata request, so the first real request does
+     * not pay for connection setup and TLS handshake. Only the first call does anything.
+     *
+     * @param model
+     *            the model that will be used
+     */
+    public void warmUp(String model)
+    {
+        if (!warmedUp.compareAndSet(false, true))
+        {
+            return;
+        }
+
+        // the thread has no run of its own, failures go to the log of the run that started the warm up
+        AgentLog log = AgentLog.current();
+        Thread thread = new Thread(() -> {
+            try
+            {
+                client.models.get(model, null);
+            }
+            catch (RuntimeException e)
+            {
+                // the real request will report the problem
+                if (log != null)
+                {
+                    log.error("Warm up of the model client failed", e);
+                }
+            }
+        }, "ai-client-warm-up");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public GenerateContentResponse generateContent(String model, List<Content> history, GenerateContentConfig config)
+    {
+        return client.models.generateContent(model, history, config);
+    }
+
+    @Override
+    public GenerateContentResponse generateContentStream(String model, List<Content> history, GenerateContentConfig config,
+                                                         Consumer<GenerateContentResponse> onChunk)
+    {
+        try (ResponseStream<GenerateContentResponse> stream = client.models.generateContentStream(model, history, config))
+        {
+            return aggregate(stream, onChunk);
+        }
+    }
+
+    /**
+     * Hands every chunk to the consumer and combines them into one response. Text arriving in pieces is joined into a
+     * single part, all other parts (function calls) are kept as they are.
+     *
+     * @param chunks
+     *            the streamed chunks
+     * @param onChunk
+     *            called for every chunk before the next one is read
+     * @return the aggregated response
+     */
+    static GenerateContentResponse aggregate(Iterable<GenerateContentResponse> chunks, Consumer<GenerateContentResponse> onChunk)
+    {
+        GenerateContentResponse.Builder response = GenerateContentResponse.builder();
+        Candidate.Builder candidate = Candidate.builder();
+        List<Part> parts = new ArrayList<>();
+
+        for (GenerateContentResponse chunk : chunks)
+        {
+            onChunk.accept(chunk);
+
+            chunk.usageMetadata().ifPresent(response::usageMetadata);
+            chunk.modelVersion().ifPresent(response::modelVersion);
+            chunk.responseId().ifPresent(response::responseId);
+
+            if (chunk.candidates().isEmpty() || chunk.candidates().get().isEmpty())
+            {
+                continue;
+            }
+            Candidate chunkCandidate = chunk.candidates().get().get(0);
+            chunkCandidate.finishReason().ifPresent(candidate::finishReason);
+
+            for (Part part : chunkCandidate.content().flatMap(Content::parts).orElse(List.of()))
+            {
+                Part previous = parts.isEmpty() ? null : parts.get(parts.size() - 1);
+                if (previous != null && previous.text().isPresent() && part.text().isPresent()
+                    && previous.thought().orElse(false) == part.thought().orElse(false))
+                {
+                    Part.Builder joined = previous.toBuilder().text(previous.text().get() + part.text().get());
+                    part.thoughtSignature().ifPresent(joined::thoughtSignature);
+                    parts.set(parts.size() - 1, joined.build());
+                }
+                else
+                {
+                    parts.add(part);
+                }
+            }
+        }
+
+        return response.candidates(List.of(candidate.content(Content.builder().role("model").parts(parts).build()).build())).build();
+    }
+
+    @Override
+    public long countTokens(String model, List<Content> history)
+    {
+        return client.models.countTokens(model, history, null).totalTokens().get();
+    }
+
+    @Override
+    public void close()
+    {
+        client.close();
+        if (companion != null)
+        {
+            try
+            {
+                companion.close();
+            }
+            catch (Exception e)
+            {
+                throw new RuntimeException("Failed to close " + companion, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.xceptance.neodymium.ai.model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.genai.types.Candidate;
+import com.google.genai.types.Content;
+import com.google.genai.types.FinishReason;
+import com.google.genai.types.GenerateContentResponse;
+import com.google.genai.types.GenerateContentResponseUsageMetadata;
+import com.google.genai.types.Part;
+
+public class GeminiModelBackendTest
+{
+    @Test
+    public void joinsTextChunks()
+    {
+        GenerateContentResponse response = GeminiModelBackend.aggregate(List.of(chunk(Part.fromText("I click ")),
+                                                                                chunk(Part.fromText("the search ")),
+                                                                                chunk(Part.fromText("field."))),
+                                                                        chunk -> {});
+
+        List<Part> parts = parts(response);
+        assertEquals(1, parts.size());
+        assertEquals("I click the search field.", parts.get(0).text().get());
+        assertEquals("model", response.candidates().get().get(0).content().get().role().get());
+    }
+
+    @Test
+    public void keepsThoughtsApartFromTheAnswer()
+    {
+        Part thought = Part.builder().text("The field is at the top. ").thought(true).build();
+        Part moreThought = Part.builder().text("It is empty.").thought(true).build();
+        Part answer = Part.fromText("I type the search term.");
+
+        List<Part> parts = parts(GeminiModelBackend.aggregate(List.of(chunk(thought), chunk(moreThought), chunk(answer)), chunk -> {}));
+
+        assertEquals(2, parts.size());
+        assertEquals("The field is at the top. It is empty.", parts.get(0).text().get());
+        assertTrue(parts.get(0).thought().get());
+        assertEquals("I type the search term.", parts.get(1).text().get());
+    }
+
+    @Test
+    public void keepsTheLatestThoughtSignature()
+    {
+        byte[] signature = "signature".getBytes(StandardCharsets.UTF_8);
+        Part signed = Part.builder().text("done.").thoughtSignature(signature).build();
+
+        List<Part> parts = parts(GeminiModelBackend.aggregate(List.of(chunk(Part.fromText("Almost ")), chunk(signed)), chunk -> {}));
+
+        assertEquals(1, parts.size());
+        assertEquals("Almost done.", parts.get(0).text().get());
+        assertArrayEquals(signature, parts.get(0).thoughtSignature().get());
+    }
+
+    @Test
+    public void keepsFunctionCallsAsTheyAre()
+    {
+        Part first = Part.fromFunctionCall("click_at", Map.of("x", 700, "y", 40));
+        Part second = Part.fromFunctionCall("type_text_at", Map.of("x", 700, "y", 40, "text", "dress"));
+
+        List<Part> parts = parts(GeminiModelBackend.aggregate(List.of(chunk(Part.fromText("I search. ")),
+                                                                      chunk(first, second),
+                                                                      chunk(Part.fromText("Done."))),
+                                                              chunk -> {}));
+
+        assertEquals(List.of(Part.fromText("I search. "), first, second, Part.fromText("Done.")), parts);
+    }
+
+    @Test
+    public void handsEveryChunkToTheConsumerInOrder()
+    {
+        List<GenerateContentResponse> chunks = List.of(chunk(Part.fromText("a")), GenerateContentResponse.builder().build(), chunk(Part.fromText("b")));
+        List<GenerateContentResponse> seen = new ArrayList<>();
+
+        GeminiModelBackend.aggregate(chunks, seen::add);
+
+        assertEquals(chunks, seen);
+    }
+
+    @Test
+    public void takesMetadataFromTheChunks()
+    {
+        GenerateContentResponse last = GenerateContentResponse.builder()
+                                                              .candidates(List.of(Candidate.builder()
+                                                                                           .content(Content.fromParts(Part.fromText("b")))
+                                                                                           .finishReason(FinishReason.Known.STOP)
+                                                                                           .build()))
+                                                              .usageMetadata(GenerateContentResponseUsageMetadata.builder().totalTokenCount(42).build())
+                                                              .modelVersion("test-model")
+                                                              .build();
+
+        GenerateContentResponse response = GeminiModelBackend.aggregate(List.of(chunk(Part.fromText("a")), last), chunk -> {});
+
+        assertEquals(42, response.usageMetadata().get().totalTokenCount().get());
+        assertEquals("test-model", response.modelVersion().get());
+        assertEquals(FinishReason.Known.STOP, response.candidates().get().get(0).finishReason().get().knownEnum());
+        assertEquals("ab", parts(response).get(0).text().get());
+    }
+
+    @Test
+    public void emptyStreamGivesAnEmptyAnswer()
+    {
+        GenerateContentResponse response = GeminiModelBackend.aggregate(List.of(), chunk -> {});
+
+        assertTrue(parts(response).isEmpty());
+    }
+
+    private static GenerateContentResponse chunk(Part... parts)
+    {
+        return GenerateContentResponse.builder()
+                                      .candidates(List.of(Candidate.builder().content(Content.builder().role("model").parts(List.of(parts)).build()).build()))
+                                      .build();
+    }
+
+    private static List<Part> parts(GenerateContentResponse response)
+    {
+        return response.candidates().get().get(0).content().get().parts().get();
+    }
+}
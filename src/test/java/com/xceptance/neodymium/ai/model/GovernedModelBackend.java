@@ -0,0 +1,125 @@
+package com.xceptance.neodymium.ai.model;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import com.google.genai.Client;
+import com.google.genai.types.Content;
+import com.google.genai.types.GenerateContentConfig;
+import com.google.genai.types.GenerateContentResponse;
+
+/**
+ * The view of one agent session on a model backend shared by all sessions of the JVM. Every generate request passes the
+ * {@link RateGovernor} first. Token counts are not governed, they have their own quota and are rare (see
+ * {@link ConversationHistory}).
+ * <p>
+ * Closing the view does not close the shared backend, that happens when the JVM shuts down.
+ * </p>
+ */
+public class GovernedModelBackend implements ModelBackend
+{
+    /** One client per API key and JVM, so all sessions share connection pool and TLS sessions. */
+    private static final Map<String, GeminiModelBackend> SHARED = new ConcurrentHashMap<>();
+
+    private final ModelBackend delegate;
+
+    private final RateGovernor governor;
+
+    public GovernedModelBackend(ModelBackend delegate, RateGovernor governor)
+    {
+        this.delegate = delegate;
+        this.governor = governor;
+    }
+
+    /**
+     * @param apiKey
+     *            the Gemini API key
+     * @return a view on the live backend shared by all sessions of this JVM, governed by {@link RateGovernor#shared()}
+     */
+    public static GovernedModelBackend shared(String apiKey)
+    {
+        return new GovernedModelBackend(client(apiKey), RateGovernor.shared());
+    }
+
+    /**
+     * Warms up the client shared by all sessions of this JVM, see {@link GeminiModelBackend#warmUp(String)}.
+     *
+     * @param apiKey
+     *            the Gemini API key
+     * @param model
+     *            the model that will be used
+     */
+    public static void warmUp(String apiKey, String model)
+    {
+        client(apiKey).warmUp(model);
+    }
+
+    private static GeminiModelBackend client(String apiKey)
+    {
+        return SHARED.computeIfAbsent(apiKey, key -> {
+            GeminiModelBackend gemini = new GeminiModelBackend(new Client.Builder().apiKey(key).build());
+            Runtime.getRuntime().addShutdownHook(new Thread(gemini::close, "ai-client-shutdown"));
+            return gemini;
+        });
+    }
+
+    @Override
+    public GenerateContentResponse generateContent(String model, List<Content> history, GenerateContentConfig config)
+    {
+        try (RateGovernor.Permit permit = governor.acquire(estimate(history, config)))
+        {
+            GenerateContentResponse response = delegate.generateContent(model, history, config);
+            settle(permit, response);
+            return response;
+        }
+    }
+
+    @Override
+    public GenerateContentResponse generateContentStream(String model, List<Content> history, GenerateContentConfig config,
+                                                         Consumer<GenerateContentResponse> onChunk)
+    {
+        try (RateGovernor.Permit permit = governor.acquire(estimate(history, config)))
+        {
+            GenerateContentResponse response = delegate.generateContentStream(model, history, config, onChunk);
+            settle(permit, response);
+            return response;
+        }
+    }
+
+    @Override
+    public long countTokens(String model, List<Content> history)
+    {
+        return delegate.countTokens(model, history);
+    }
+
+    @Override
+    public void close()
+    {
+        // the delegate is shared with the other sessions
+    }
+
+    /**
+     * @return the estimated tokens of the request: the history plus system instruction and tools
+     */
+    private static long estimate(List<Content> history, GenerateContentConfig config)
+    {
+        long tokens = RequestTemplate.fixedTokens(config);
+        if (history instanceof ConversationHistory conversation)
+        {
+            return tokens + conversation.estimatedTokens();
+        }
+
+        for (Content content : history)
+        {
+            tokens += TokenEstimator.estimate(content);
+        }
+        return tokens;
+    }
+
+    private static void settle(RateGovernor.Permit permit, GenerateContentResponse response)
+    {
+        response.usageMetadata().flatMap(usage -> usage.totalTokenCount()).ifPresent(permit::settle);
+    }
+}
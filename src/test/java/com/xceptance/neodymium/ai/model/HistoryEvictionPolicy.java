@@ -0,0 +1,17 @@
+package com.xceptance.neodymium.ai.model;
+
+/**
+ * Decides what to drop from the conversation once it exceeds the token limit. The first content, the original prompt,
+ * is pinned and must never be evicted.
+ */
+public interface HistoryEvictionPolicy
+{
+    /**
+     * Reduces the size of the history by one step. Called repeatedly until the history fits into the token limit.
+     *
+     * @param history
+     *            the conversation to shrink
+     * @return <code>false</code> if nothing could be evicted anymore
+     */
+    public boolean evict(ConversationHistory history);
+}
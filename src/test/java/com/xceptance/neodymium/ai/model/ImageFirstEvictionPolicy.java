@@ -0,0 +1,140 @@
+package com.xceptance.neodymium.ai.model;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import com.google.genai.types.Blob;
+import com.google.genai.types.Content;
+import com.google.genai.types.Part;
+
+/**
+ * Evicts images before anything else, since the screenshots of older steps make up most of the tokens while the text of
+ * thoughts and function responses is what the model needs to keep track of the test.
+ * <p>
+ * The oldest image outside of the most recent ones is first downsampled to half its size (if enabled) and stripped
+ * once it is small. Only if no image is left, the oldest turn is dropped via {@link OldestTurnEvictionPolicy}.
+ * </p>
+ */
+public class ImageFirstEvictionPolicy implements HistoryEvictionPolicy
+{
+    /** Images with a side below this are not downsampled any further but stripped. */
+    private static final int MIN_DOWNSAMPLE_SIZE = 384;
+
+    private static final String PLACEHOLDER = "[Screenshot of this step removed to save tokens]";
+
+    private final int keepRecentImages;
+
+    private final boolean downsample;
+
+    private final HistoryEvictionPolicy fallback = new OldestTurnEvictionPolicy();
+
+    /**
+     * @param keepRecentImages
+     *            the number of most recent images that are never touched
+     * @param downsample
+     *            <code>true</code> to downsample images before they are stripped
+     */
+    public ImageFirstEvictionPolicy(int keepRecentImages, boolean downsample)
+    {
+        this.keepRecentImages = keepRecentImages;
+        this.downsample = downsample;
+    }
+
+    @Override
+    public boolean evict(ConversationHistory history)
+    {
+        int candidate = oldestEvictableImage(history);
+        if (candidate < 0)
+        {
+            return fallback.evict(history);
+        }
+
+        Content content = history.get(candidate);
+        List<Part> parts = new ArrayList<>();
+        boolean evicted = false;
+        for (Part part : content.parts().orElse(List.of()))
+        {
+            if (!evicted && isImage(part))
+            {
+                evicted = true;
+                Part reduced = downsample ? downsample(part) : null;
+                parts.add(reduced != null ? reduced : Part.fromText(PLACEHOLDER));
+            }
+            else
+            {
+                parts.add(part);
+            }
+        }
+
+        history.set(candidate, content.toBuilder().parts(parts).build());
+        return true;
+    }
+
+    /**
+     * @return the index of the oldest content with an image that is not among the most recent images or -1
+     */
+    private int oldestEvictableImage(ConversationHistory history)
+    {
+        List<Integer> imageContents = new ArrayList<>();
+        // index 0 is the pinned prompt
+        for (int i = 1; i < history.size(); i++)
+        {
+            for (Part part : history.get(i).parts().orElse(List.of()))
+            {
+                if (isImage(part))
+                {
+                    imageContents.add(i);
+                }
+            }
+        }
+
+        return imageContents.size() > keepRecentImages ? imageContents.get(0) : -1;
+    }
+
+    private static boolean isImage(Part part)
+    {
+        return part.inlineData().flatMap(Blob::mimeType).map(mimeType -> mimeType.startsWith("image/")).orElse(false);
+    }
+
+    /**
+     * @return the image at half its size or <code>null</code> if it is too small already or can't be decoded
+     */
+    private static Part downsample(Part part)
+    {
+        Blob blob = part.inlineData().get();
+        String mimeType = blob.mimeType().get();
+        try
+        {
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(blob.data().orElse(new byte[0])));
+            if (image == null || image.getWidth() / 2 < MIN_DOWNSAMPLE_SIZE && image.getHeight() / 2 < MIN_DOWNSAMPLE_SIZE)
+            {
+                return null;
+            }
+
+            int width = image.getWidth() / 2;
+            int height = image.getHeight() / 2;
+            BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2d = scaled.createGraphics();
+            g2d.drawImage(image, 0, 0, width, height, null);
+            g2d.dispose();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            if (!ImageIO.write(scaled, mimeType.substring("image/".length()), out))
+            {
+                return null;
+            }
+            return Part.fromBytes(out.toByteArray(), mimeType);
+        }
+        catch (IOException e)
+        {
+            return null;
+        }
+    }
+}
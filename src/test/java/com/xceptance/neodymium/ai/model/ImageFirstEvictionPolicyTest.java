@@ -0,0 +1,113 @@
+package com.xceptance.neodymium.ai.model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.genai.types.Content;
+import com.google.genai.types.Part;
+
+public class ImageFirstEvictionPolicyTest
+{
+    @Test
+    public void stripsTheOldestImageOutsideOfTheRecentOnes() throws IOException
+    {
+        ConversationHistory history = withScreenshots(3, 1600, 800);
+        long before = history.estimatedTokens();
+
+        assertTrue(new ImageFirstEvictionPolicy(2, false).evict(history));
+
+        assertEquals(7, history.size());
+        assertEquals(List.of(false, true, true), images(history));
+        // the function response stays, the image is replaced by a note
+        List<Part> parts = history.get(2).parts().get();
+        assertTrue(parts.get(0).functionResponse().isPresent());
+        assertTrue(parts.get(1).text().isPresent());
+        assertTrue(history.estimatedTokens() < before);
+    }
+
+    @Test
+    public void keepsTheRecentImages() throws IOException
+    {
+        ConversationHistory history = withScreenshots(2, 1600, 800);
+        ImageFirstEvictionPolicy policy = new ImageFirstEvictionPolicy(1, false);
+
+        assertTrue(policy.evict(history));
+        assertEquals(List.of(false, true), images(history));
+
+        // no image left to evict, the oldest turn goes
+        assertTrue(policy.evict(history));
+        assertEquals(3, history.size());
+        assertEquals(List.of(true), images(history));
+
+        assertFalse(policy.evict(history));
+    }
+
+    @Test
+    public void downsamplesBeforeStripping() throws IOException
+    {
+        ConversationHistory history = withScreenshots(2, 1600, 800);
+        ImageFirstEvictionPolicy policy = new ImageFirstEvictionPolicy(1, true);
+
+        assertTrue(policy.evict(history));
+        assertArrayEquals(new int[]
+        {
+          800, 400
+        }, size(history.get(2)));
+
+        assertTrue(policy.evict(history));
+        assertArrayEquals(new int[]
+        {
+          400, 200
+        }, size(history.get(2)));
+
+        // too small to be downsampled any further
+        assertTrue(policy.evict(history));
+        assertEquals(List.of(false, true), images(history));
+        assertEquals(5, history.size());
+    }
+
+    /**
+     * @return the prompt followed by the given number of turns, each response with a screenshot
+     */
+    private static ConversationHistory withScreenshots(int turns, int width, int height) throws IOException
+    {
+        byte[] png = TokenEstimatorTest.png(width, height);
+        ConversationHistory history = ConversationHistoryTest.conversation(0);
+        for (int i = 0; i < turns; i++)
+        {
+            history.add(Content.builder()
+                               .role("model")
+                               .parts(List.of(Part.fromFunctionCall("scroll_document", Map.of("direction", "down"))))
+                               .build());
+            history.add(Content.builder()
+                               .role("user")
+                               .parts(List.of(Part.fromFunctionResponse("scroll_document", Map.of("status", "success")), Part.fromBytes(png, "image/png")))
+                               .build());
+        }
+        return history;
+    }
+
+    /**
+     * @return for every function response whether it still has its image
+     */
+    private static List<Boolean> images(ConversationHistory history)
+    {
+        return history.stream()
+                      .filter(content -> content.parts().get().get(0).functionResponse().isPresent())
+                      .map(content -> content.parts().get().stream().anyMatch(part -> part.inlineData().isPresent()))
+                      .toList();
+    }
+
+    private static int[] size(Content content)
+    {
+        return TokenEstimator.imageSize(content.parts().get().get(1).inlineData().get().data().get());
+    }
+}
@@ -0,0 +1,131 @@
+package com.xceptance.neodymium.ai.model;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.google.genai.Client;
+import com.google.genai.types.Content;
+import com.google.genai.types.GenerateContentConfig;
+import com.google.genai.types.GenerateContentResponse;
+import com.google.genai.types.HttpOptions;
+import com.xceptance.neodymium.ai.util.AiConfiguration;
+
+/**
+ * The model side of the agent loop. Everything the loop needs from the model goes through this interface, so the loop
+ * can be run against the live API, a recording of it or a deterministic replay.
+ */
+public interface ModelBackend extends TokenCounter, AutoCloseable
+{
+    /**
+     * Generates the next model response for the given history.
+     *
+     * @param model
+     *            the model name
+     * @param history
+     *            the conversation so far
+     * @param config
+     *            the request configuration (system instruction, tools)
+     * @return the model response
+     */
+    public GenerateContentResponse generateContent(String model, List<Content> history, GenerateContentConfig config);
+
+    /**
+     * Generates the next model response for the given history and hands every chunk to the consumer as soon as it
+     * arrives. Backends that can't stream deliver the complete response as a single chunk.
+     *
+     * @param model
+     *            the model name
+     * @param history
+     *            the conversation so far
+     * @param config
+     *            the request configuration (system instruction, tools)
+     * @param onChunk
+     *            called on the calling thread for every chunk, in order
+     * @return the complete response, aggregated from all chunks
+     */
+    public default GenerateContentResponse generateContentStream(String model, List<Content> history, GenerateContentConfig config,
+                                                                 Consumer<GenerateContentResponse> onChunk)
+    {
+        GenerateContentResponse response = generateContent(model, history, config);
+        onChunk.accept(response);
+        return response;
+    }
+
+    @Override
+    public long countTokens(String model, List<Content> history);
+
+    @Override
+    public void close();
+
+    /**
+     * Creates the backend configured via {@link AiConfiguration#modelBackend()}. Backends talking to the live API share
+     * one client per JVM and are governed by {@link RateGovernor#shared()}.
+     *
+     * @param apiKey
+     *            the Gemini API key, only needed for backends that talk to the live API
+     * @param recordingName
+     *            the name of the recording, used as sub directory of the recording directory
+     * @return the backend
+     */
+    public static ModelBackend create(String apiKey, String recordingName)
+    {
+        Path recordingDirectory = Paths.get(AiConfiguration.get().recordingDirectory(), recordingName);
+
+        switch (AiConfiguration.get().modelBackend())
+        {
+            case RECORD:
+                return new RecordingModelBackend(GovernedModelBackend.shared(apiKey), recordingDirectory);
+            case REPLAY:
+                return new ReplayModelBackend(recordingDirectory);
+            case REPLAY_HTTP:
+                ReplayHttpServer server = ReplayHttpServer.start(new ReplayModelBackend(recordingDirectory));
+                Client replayClient = new Client.Builder()
+                                                          .apiKey("replay")
+                                                          .httpOptions(HttpOptions.builder().baseUrl(server.getBaseUrl()).build())
+                                                          .build();
+                return new GeminiModelBackend(replayClient, server);
+            case LIVE:
+            default:
+                return GovernedModelBackend.shared(apiKey);
+        }
+    }
+
+    /**
+     * Prepares the client of the configured backend in the background if it talks to the live API, so the first
+     * request of a run does not pay for the connection setup. The client is shared by all runs of the JVM.
+     *
+     * @param apiKey
+     *            the Gemini API key
+     * @param model
+     *            the model that will be used
+     */
+    public static void warmUp(String apiKey, String model)
+    {
+        switch (AiConfiguration.get().modelBackend())
+        {
+            case LIVE:
+            case RECORD:
+                GovernedModelBackend.warmUp(apiKey, model);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the configured backend talks to the live API and therefore needs an API key
+     */
+    public static boolean needsApiKey()
+    {
+        switch (AiConfiguration.get().modelBackend())
+        {
+            case REPLAY:
+            case REPLAY_HTTP:
+                return false;
+            default:
+                return true;
+        }
+    }
+}
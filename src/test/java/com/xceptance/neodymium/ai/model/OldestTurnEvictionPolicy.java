@@ -0,0 +1,46 @@
+package com.xceptance.neodymium.ai.model;
+
+import com.google.genai.types.Content;
+
+/**
+ * Drops the oldest turn: the oldest model response together with everything up to the next model response, i.e. the
+ * tool responses to its function calls and any texts added in between (e.g. nudges). A function call is never
+ * separated from its response that way. The latest turn is kept.
+ */
+public class OldestTurnEvictionPolicy implements HistoryEvictionPolicy
+{
+    @Override
+    public boolean evict(ConversationHistory history)
+    {
+        // the oldest turn ends where the next one starts, the first content is the pinned prompt
+        int end = -1;
+        boolean modelSeen = false;
+        for (int i = 1; i < history.size(); i++)
+        {
+            if (isModel(history.get(i)))
+            {
+                if (modelSeen)
+                {
+                    end = i;
+                    break;
+                }
+                modelSeen = true;
+            }
+        }
+        if (end < 0)
+        {
+            return false;
+        }
+
+        for (int i = 1; i < end; i++)
+        {
+            history.remove(1);
+        }
+        return true;
+    }
+
+    private static boolean isModel(Content content)
+    {
+        return "model".equals(content.role().orElse(null));
+    }
+}
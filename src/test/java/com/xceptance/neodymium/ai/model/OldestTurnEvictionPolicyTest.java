@@ -0,0 +1,87 @@
+package com.xceptance.neodymium.ai.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.genai.types.Content;
+import com.google.genai.types.Part;
+
+public class OldestTurnEvictionPolicyTest
+{
+    private final OldestTurnEvictionPolicy policy = new OldestTurnEvictionPolicy();
+
+    @Test
+    public void evictsTheOldestTurn()
+    {
+        ConversationHistory history = ConversationHistoryTest.conversation(3);
+        Content secondTurn = history.get(3);
+
+        assertTrue(policy.evict(history));
+
+        assertEquals(5, history.size());
+        assertEquals(secondTurn, history.get(1));
+    }
+
+    @Test
+    public void evictsTextsBetweenCallAndNextTurn()
+    {
+        ConversationHistory history = ConversationHistoryTest.conversation(1);
+        history.add(text("The pink square shows where you clicked, check it."));
+        history.addAll(ConversationHistoryTest.conversation(1).subList(1, 3));
+        Content secondTurn = history.get(4);
+
+        assertTrue(policy.evict(history));
+
+        // call, response and nudge are gone together, the next call still has its response
+        assertEquals(3, history.size());
+        assertEquals(secondTurn, history.get(1));
+        assertTrue(history.get(2).parts().get().get(0).functionResponse().isPresent());
+    }
+
+    @Test
+    public void evictsLeadingTextsWithTheFirstTurn()
+    {
+        ConversationHistory history = ConversationHistoryTest.conversation(0);
+        history.add(text("Continue from the current page."));
+        history.addAll(ConversationHistoryTest.conversation(2).subList(1, 5));
+        Content secondTurn = history.get(4);
+
+        assertTrue(policy.evict(history));
+
+        assertEquals(3, history.size());
+        assertEquals(secondTurn, history.get(1));
+    }
+
+    @Test
+    public void keepsTheLatestTurn()
+    {
+        ConversationHistory history = ConversationHistoryTest.conversation(1);
+        history.add(text("No visual change since the previous screenshot."));
+
+        assertFalse(policy.evict(history));
+        assertEquals(4, history.size());
+    }
+
+    @Test
+    public void keepsThePrompt()
+    {
+        ConversationHistory history = ConversationHistoryTest.conversation(4);
+        Content prompt = history.get(0);
+
+        while (policy.evict(history))
+        {
+            assertEquals(prompt, history.get(0));
+        }
+        assertEquals(3, history.size());
+    }
+
+    private static Content text(String text)
+    {
+        return Content.builder().role("user").parts(List.of(Part.fromText(text))).build();
+    }
+}
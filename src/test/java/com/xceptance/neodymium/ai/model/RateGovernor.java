@@ -0,0 +1,207 @@
+package com.xceptance.neodymium.ai.model;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.xceptance.neodymium.ai.util.AiConfiguration;
+
+/**
+ * Keeps the model requests of all agent sessions of the JVM inside the API quotas.
+ * <p>
+ * A request needs a free concurrency slot, one token of the requests per minute bucket and its estimated size from the
+ * tokens per minute bucket. Waiting requests are served strictly in arrival order. Every session has at most one
+ * request outstanding, so this queues fairly between sessions: a busy session can't overtake the others. Limits that
+ * are not positive are not enforced.
+ * </p>
+ */
+public class RateGovernor
+{
+    private static RateGovernor shared;
+
+    private final Semaphore concurrency;
+
+    private final TokenBucket requests;
+
+    private final TokenBucket tokens;
+
+    /** Fair lock, the request at the head of the queue waits for the buckets while holding it. */
+    private final ReentrantLock queue = new ReentrantLock(true);
+
+    /**
+     * @param maxConcurrentRequests
+     *            the maximum number of requests in flight
+     * @param requestsPerMinute
+     *            the maximum number of requests per minute
+     * @param tokensPerMinute
+     *            the maximum number of tokens per minute
+     */
+    public RateGovernor(int maxConcurrentRequests, int requestsPerMinute, long tokensPerMinute)
+    {
+        this.concurrency = maxConcurrentRequests > 0 ? new Semaphore(maxConcurrentRequests, true) : null;
+        this.requests = requestsPerMinute > 0 ? new TokenBucket(requestsPerMinute) : null;
+        this.tokens = tokensPerMinute > 0 ? new TokenBucket(tokensPerMinute) : null;
+    }
+
+    /**
+     * @return the governor shared by all sessions of this JVM, configured via {@link AiConfiguration}
+     */
+    public static synchronized RateGovernor shared()
+    {
+        if (shared == null)
+        {
+            AiConfiguration configuration = AiConfiguration.get();
+            shared = new RateGovernor(configuration.maxConcurrentRequests(), configuration.requestsPerMinute(), configuration.tokensPerMinute());
+        }
+        return shared;
+    }
+
+    /**
+     * Blocks until a request of the given size may be sent.
+     *
+     * @param estimatedTokens
+     *            the estimated size of the request
+     * @return the permit, to be closed once the response arrived
+     */
+    public Permit acquire(long estimatedTokens)
+    {
+        try
+        {
+            if (concurrency != null)
+            {
+                concurrency.acquire();
+            }
+
+            queue.lockInterruptibly();
+            try
+            {
+                waitFor(requests, 1);
+                waitFor(tokens, estimatedTokens);
+            }
+            finally
+            {
+                queue.unlock();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            if (concurrency != null)
+            {
+                concurrency.release();
+            }
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the rate limit", e);
+        }
+
+        return new Permit(estimatedTokens);
+    }
+
+    private void waitFor(TokenBucket bucket, long amount) throws InterruptedException
+    {
+        if (bucket == null)
+        {
+            return;
+        }
+
+        long waitMillis;
+        while ((waitMillis = bucket.tryTake(amount)) > 0)
+        {
+            TimeUnit.MILLISECONDS.sleep(waitMillis);
+        }
+    }
+
+    /**
+     * A granted request.
+     */
+    public class Permit implements AutoCloseable
+    {
+        private final long estimatedTokens;
+
+        private boolean closed;
+
+        private Permit(long estimatedTokens)
+        {
+            this.estimatedTokens = estimatedTokens;
+        }
+
+        /**
+         * Corrects the tokens taken for this request once the actual usage is known.
+         *
+         * @param actualTokens
+         *            the tokens the request actually consumed
+         */
+        public void settle(long actualTokens)
+        {
+            if (tokens != null)
+            {
+                tokens.adjust(actualTokens - estimatedTokens);
+            }
+        }
+
+        @Override
+        public void close()
+        {
+            if (!closed && concurrency != null)
+            {
+                concurrency.release();
+            }
+            closed = true;
+        }
+    }
+
+    /**
+     * Classic token bucket, refilled continuously up to its capacity of one minute worth of tokens.
+     */
+    private static class TokenBucket
+    {
+        private final double capacity;
+
+        private final double refillPerMilli;
+
+        private double available;
+
+        private long lastRefill = System.currentTimeMillis();
+
+        TokenBucket(long perMinute)
+        {
+            this.capacity = perMinute;
+            this.refillPerMilli = perMinute / 60_000d;
+            this.available = perMinute;
+        }
+
+        /**
+         * Takes the given amount if available.
+         *
+         * @return 0 if taken, the milliseconds to wait before the amount is available otherwise
+         */
+        synchronized long tryTake(long amount)
+        {
+            refill();
+
+            // a request larger than the bucket would never fit, it gets the full bucket instead
+            double needed = Math.min(amount, capacity);
+            if (available >= needed)
+            {
+                available -= needed;
+                return 0;
+            }
+            return Math.max(1, (long) Math.ceil((needed - available) / refillPerMilli));
+        }
+
+        /**
+         * Takes (positive) or returns (negative) the given amount, the bucket might go into debt.
+         */
+        synchronized void adjust(long amount)
+        {
+            refill();
+            available = Math.min(capacity, available - amount);
+        }
+
+        private void refill()
+        {
+            long now = System.currentTimeMillis();
+            available = Math.min(capacity, available + (now - lastRefill) * refillPerMilli);
+            lastRefill = now;
+        }
+    }
+}
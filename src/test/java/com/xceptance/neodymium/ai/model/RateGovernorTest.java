@@ -0,0 +1,134 @@
+package com.xceptance.neodymium.ai.model;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.Test;
+
+public class RateGovernorTest
+{
+    @Test
+    public void unlimitedDoesNotWait()
+    {
+        RateGovernor governor = new RateGovernor(0, 0, 0);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 1000; i++)
+        {
+            governor.acquire(1_000_000).close();
+        }
+        assertTrue(millisSince(start) < 1000);
+    }
+
+    @Test
+    public void concurrencyWaitsForAFreeSlot() throws Exception
+    {
+        RateGovernor governor = new RateGovernor(1, 0, 0);
+        RateGovernor.Permit first = governor.acquire(1);
+
+        CompletableFuture<RateGovernor.Permit> second = CompletableFuture.supplyAsync(() -> governor.acquire(1));
+        assertThrows(TimeoutException.class, () -> second.get(200, TimeUnit.MILLISECONDS));
+
+        first.close();
+        second.get(5, TimeUnit.SECONDS).close();
+    }
+
+    @Test
+    public void closingTwiceReleasesTheSlotOnce() throws Exception
+    {
+        RateGovernor governor = new RateGovernor(1, 0, 0);
+        RateGovernor.Permit permit = governor.acquire(1);
+        permit.close();
+        permit.close();
+
+        RateGovernor.Permit held = governor.acquire(1);
+        CompletableFuture<RateGovernor.Permit> waiting = CompletableFuture.supplyAsync(() -> governor.acquire(1));
+        assertThrows(TimeoutException.class, () -> waiting.get(200, TimeUnit.MILLISECONDS));
+
+        held.close();
+        waiting.get(5, TimeUnit.SECONDS).close();
+    }
+
+    @Test
+    public void tokensPerMinuteDelaysOnceTheBucketIsEmpty()
+    {
+        // one token per millisecond
+        RateGovernor governor = new RateGovernor(0, 0, 60_000);
+        governor.acquire(60_000).close();
+
+        long start = System.nanoTime();
+        governor.acquire(200).close();
+        assertTrue(millisSince(start) >= 150);
+    }
+
+    @Test
+    public void requestsPerMinuteDelaysOnceTheBucketIsEmpty() throws Exception
+    {
+        RateGovernor governor = new RateGovernor(0, 2, 0);
+        governor.acquire(1).close();
+        governor.acquire(1).close();
+
+        // the next request is only due in 30 seconds
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            Future<?> third = executor.submit(() -> governor.acquire(1).close());
+            assertThrows(TimeoutException.class, () -> third.get(300, TimeUnit.MILLISECONDS));
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void settleReturnsUnusedTokens()
+    {
+        RateGovernor governor = new RateGovernor(0, 0, 60_000);
+        try (RateGovernor.Permit permit = governor.acquire(60_000))
+        {
+            permit.settle(0);
+        }
+
+        long start = System.nanoTime();
+        governor.acquire(30_000).close();
+        assertTrue(millisSince(start) < 1000);
+    }
+
+    @Test
+    public void settleTakesAdditionalTokens()
+    {
+        RateGovernor governor = new RateGovernor(0, 0, 60_000);
+        try (RateGovernor.Permit permit = governor.acquire(0))
+        {
+            // the request was larger than estimated, the bucket is empty now
+            permit.settle(60_000);
+        }
+
+        long start = System.nanoTime();
+        governor.acquire(200).close();
+        assertTrue(millisSince(start) >= 150);
+    }
+
+    @Test
+    public void oversizedRequestGetsTheFullBucket()
+    {
+        RateGovernor governor = new RateGovernor(0, 0, 60_000);
+
+        long start = System.nanoTime();
+        governor.acquire(1_000_000).close();
+        assertTrue(millisSince(start) < 1000);
+    }
+
+    private static long millisSince(long start)
+    {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+}
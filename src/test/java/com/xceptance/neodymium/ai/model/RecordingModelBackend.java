@@ -0,0 +1,101 @@
+package com.xceptance.neodymium.ai.model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.google.genai.types.Content;
+import com.google.genai.types.GenerateContentConfig;
+import com.google.genai.types.GenerateContentResponse;
+
+/**
+ * Backend that forwards every request to another backend and persists the request fingerprint together with the
+ * response, so the run can be replayed later by the {@link ReplayModelBackend}.
+ * <p>
+ * Each exchange is stored as one file named <code>&lt;sequence&gt;_&lt;kind&gt;_&lt;fingerprint&gt;.json</code>. A previous
+ * recording in the same directory is replaced.
+ * </p>
+ */
+public class RecordingModelBackend implements ModelBackend
+{
+    static final String KIND_GENERATE = "generate";
+
+    static final String KIND_COUNT = "count";
+
+    private final ModelBackend delegate;
+
+    private final Path directory;
+
+    private int sequence = 0;
+
+    public RecordingModelBackend(ModelBackend delegate, Path directory)
+    {
+        this.delegate = delegate;
+        this.directory = directory;
+
+        try
+        {
+            Files.createDirectories(directory);
+            try (var files = Files.list(directory))
+            {
+                for (Path file : (Iterable<Path>) files::iterator)
+                {
+                    Files.delete(file);
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Failed to prepare recording directory " + directory, e);
+        }
+    }
+
+    @Override
+    public GenerateContentResponse generateContent(String model, List<Content> history, GenerateContentConfig config)
+    {
+        GenerateContentResponse response = delegate.generateContent(model, history, config);
+        write(KIND_GENERATE, RequestFingerprint.of(model, history), response.toJson());
+        return response;
+    }
+
+    @Override
+    public GenerateContentResponse generateContentStream(String model, List<Content> history, GenerateContentConfig config,
+                                                         Consumer<GenerateContentResponse> onChunk)
+    {
+        // the aggregated response is recorded, a replay delivers it as a single chunk
+        GenerateContentResponse response = delegate.generateContentStream(model, history, config, onChunk);
+        write(KIND_GENERATE, RequestFingerprint.of(model, history), response.toJson());
+        return response;
+    }
+
+    @Override
+    public long countTokens(String model, List<Content> history)
+    {
+        long tokens = delegate.countTokens(model, history);
+        write(KIND_COUNT, RequestFingerprint.of(model, history), String.valueOf(tokens));
+        return tokens;
+    }
+
+    @Override
+    public void close()
+    {
+        delegate.close();
+    }
+
+    private void write(String kind, String fingerprint, String payload)
+    {
+        String fileName = String.format("%04d_%s_%s.json", sequence++, kind, fingerprint);
+        try
+        {
+            Files.writeString(directory.resolve(fileName), payload, StandardCharsets.UTF_8);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Failed to write recording " + fileName, e);
+        }
+    }
+}
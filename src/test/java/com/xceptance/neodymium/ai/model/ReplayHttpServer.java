@@ -0,0 +1,113 @@
+package com.xceptance.neodymium.ai.model;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local HTTP stand-in for the Gemini API that answers with recorded responses. A real {@link com.google.genai.Client}
+ * pointed at {@link #getBaseUrl()} behaves exactly like against the live API, including its HTTP stack and JSON
+ * (de)serialization, which makes it suitable for load tests without network access.
+ */
+public class ReplayHttpServer implements AutoCloseable
+{
+    private final HttpServer server;
+
+    private final ReplayModelBackend replay;
+
+    private ReplayHttpServer(HttpServer server, ReplayModelBackend replay)
+    {
+        this.server = server;
+        this.replay = replay;
+    }
+
+    /**
+     * Starts a server on a free port of the loopback interface.
+     *
+     * @param replay
+     *            the recording to serve
+     * @return the started server
+     */
+    public static ReplayHttpServer start(ReplayModelBackend replay)
+    {
+        try
+        {
+            HttpServer httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+            ReplayHttpServer replayServer = new ReplayHttpServer(httpServer, replay);
+            httpServer.createContext("/", replayServer::handle);
+            httpServer.start();
+            return replayServer;
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Failed to start replay server", e);
+        }
+    }
+
+    /**
+     * @return the base URL to configure the client with
+     */
+    public String getBaseUrl()
+    {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/";
+    }
+
+    private void handle(HttpExchange exchange) throws IOException
+    {
+        // the request body is not needed, but has to be consumed to keep the connection reusable
+        exchange.getRequestBody().readAllBytes();
+
+        String path = exchange.getRequestURI().getPath();
+        String body;
+        String contentType = "application/json; charset=UTF-8";
+        int status = 200;
+        try
+        {
+            if (path.endsWith(":generateContent"))
+            {
+                body = replay.nextGenerateContentPayload(null);
+            }
+            else if (path.endsWith(":streamGenerateContent"))
+            {
+                // server-sent events, the recorded response is delivered as a single event
+                body = "data: " + replay.nextGenerateContentPayload(null).replaceAll("\\s*\\R\\s*", " ") + "\r\n\r\n";
+                contentType = "text/event-stream; charset=UTF-8";
+            }
+            else if (path.endsWith(":countTokens"))
+            {
+                body = "{\"totalTokens\": " + replay.nextCountTokens(null) + "}";
+            }
+            else
+            {
+                status = 404;
+                body = "{\"error\": {\"code\": 404, \"message\": \"Not recorded: " + path + "\"}}";
+            }
+        }
+        catch (IllegalStateException e)
+        {
+            status = 500;
+            body = "{\"error\": {\"code\": 500, \"message\": \"" + e.getMessage().replace("\"", "'") + "\"}}";
+        }
+
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", status == 200 ? contentType : "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody())
+        {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        server.stop(0);
+        replay.close();
+    }
+}
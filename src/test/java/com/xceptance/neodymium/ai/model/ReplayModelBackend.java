@@ -0,0 +1,140 @@
+package com.xceptance.neodymium.ai.model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.genai.types.Content;
+import com.google.genai.types.GenerateContentConfig;
+import com.google.genai.types.GenerateContentResponse;
+import com.xceptance.neodymium.ai.log.AgentLog;
+
+/**
+ * Backend that serves the responses persisted by the {@link RecordingModelBackend}. No network access is needed.
+ * <p>
+ * Responses are handed out in recording order. A request whose fingerprint differs from the recorded one still gets the
+ * next recorded response, since small differences (e.g. a changed URL in a function response) should not break the
+ * replay, but the mismatch is reported.
+ * </p>
+ */
+public class ReplayModelBackend implements ModelBackend
+{
+    private record Recording(String kind, String fingerprint, String payload)
+    {
+    }
+
+    private final Path directory;
+
+    /** Captured on construction, requests may be served on the thread of the replay server. */
+    private final AgentLog log = AgentLog.current();
+
+    private final List<Recording> generateRecordings = new ArrayList<>();
+
+    private final List<Recording> countRecordings = new ArrayList<>();
+
+    private int generateIndex = 0;
+
+    private int countIndex = 0;
+
+    public ReplayModelBackend(Path directory)
+    {
+        this.directory = directory;
+
+        if (!Files.isDirectory(directory))
+        {
+            throw new IllegalStateException("No recording found in " + directory + ". Run the test with neodymium.ai.model.backend=RECORD first.");
+        }
+
+        try (var files = Files.list(directory))
+        {
+            for (Path file : files.sorted().toList())
+            {
+                // <sequence>_<kind>_<fingerprint>.json
+                String[] nameParts = file.getFileName().toString().replace(".json", "").split("_");
+                if (nameParts.length != 3)
+                {
+                    continue;
+                }
+
+                Recording recording = new Recording(nameParts[1], nameParts[2], Files.readString(file, StandardCharsets.UTF_8));
+                if (RecordingModelBackend.KIND_GENERATE.equals(recording.kind()))
+                {
+                    generateRecordings.add(recording);
+                }
+                else if (RecordingModelBackend.KIND_COUNT.equals(recording.kind()))
+                {
+                    countRecordings.add(recording);
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Failed to read recording " + directory, e);
+        }
+    }
+
+    @Override
+    public GenerateContentResponse generateContent(String model, List<Content> history, GenerateContentConfig config)
+    {
+        return GenerateContentResponse.fromJson(nextGenerateContentPayload(RequestFingerprint.of(model, history)));
+    }
+
+    @Override
+    public long countTokens(String model, List<Content> history)
+    {
+        return nextCountTokens(RequestFingerprint.of(model, history));
+    }
+
+    /**
+     * @param fingerprint
+     *            the fingerprint of the current request or <code>null</code> if it is unknown
+     * @return the next recorded generate content response as JSON
+     */
+    synchronized String nextGenerateContentPayload(String fingerprint)
+    {
+        return next(generateRecordings, generateIndex++, fingerprint).payload();
+    }
+
+    /**
+     * @param fingerprint
+     *            the fingerprint of the current request or <code>null</code> if it is unknown
+     * @return the next recorded token count
+     */
+    synchronized long nextCountTokens(String fingerprint)
+    {
+        if (countRecordings.isEmpty())
+        {
+            // recorded without remote counting, nothing to replay
+            return 0;
+        }
+        // the last count is repeated if the loop asks more often than during the recording
+        return Long.parseLong(next(countRecordings, Math.min(countIndex++, countRecordings.size() - 1), fingerprint).payload().trim());
+    }
+
+    @Override
+    public void close()
+    {
+    }
+
+    private Recording next(List<Recording> recordings, int index, String fingerprint)
+    {
+        if (index >= recordings.size())
+        {
+            throw new IllegalStateException("Recording " + directory + " exhausted after " + recordings.size() + " responses.");
+        }
+
+        Recording recording = recordings.get(index);
+        if (fingerprint != null && !recording.fingerprint().equals(fingerprint))
+        {
+            if (log != null)
+            {
+                log.info("Replay: request " + index + " differs from the recording, serving the recorded response anyway.");
+            }
+        }
+        return recording;
+    }
+}
@@ -0,0 +1,67 @@
+package com.xceptance.neodymium.ai.model;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.TreeMap;
+
+import com.google.genai.types.Content;
+import com.google.genai.types.Part;
+
+/**
+ * Computes a stable fingerprint for a model request.
+ * <p>
+ * Screenshots differ in every run (cursor, animations, timestamps), so inline binary data only contributes its mime type.
+ * Text, function calls and function response names make up the rest, which is what identifies a step of a dataset.
+ * </p>
+ */
+public final class RequestFingerprint
+{
+    private RequestFingerprint()
+    {
+    }
+
+    /**
+     * @param model
+     *            the model name
+     * @param history
+     *            the request contents
+     * @return a hex encoded SHA-256 fingerprint of the request
+     */
+    public static String of(String model, List<Content> history)
+    {
+        StringBuilder sb = new StringBuilder(model).append('\n');
+        for (Content content : history)
+        {
+            sb.append(content.role().orElse("")).append(':');
+            for (Part part : content.parts().orElse(List.of()))
+            {
+                part.text().ifPresent(text -> sb.append("t=").append(text).append(';'));
+                part.functionCall().ifPresent(call -> sb.append("c=").append(call.name().orElse("")).append(call.args().map(TreeMap::new).orElse(null)).append(';'));
+                part.functionResponse().ifPresent(response -> sb.append("r=").append(response.name().orElse("")).append(';'));
+                part.inlineData().ifPresent(blob -> sb.append("b=").append(blob.mimeType().orElse("")).append(';'));
+            }
+            sb.append('\n');
+        }
+        return sha256(sb.toString());
+    }
+
+    /**
+     * @param value
+     *            the value to hash
+     * @return the hex encoded SHA-256 of the UTF-8 bytes of the value
+     */
+    public static String sha256(String value)
+    {
+        try
+        {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8)));
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
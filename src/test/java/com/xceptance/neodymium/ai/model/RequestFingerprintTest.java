@@ -0,0 +1,104 @@
+package com.xceptance.neodymium.ai.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.genai.types.Content;
+import com.google.genai.types.Part;
+
+public class RequestFingerprintTest
+{
+    private static final String MODEL = "gemini-2.5-computer-use-preview-10-2025";
+
+    @Test
+    public void sha256IsHexEncoded()
+    {
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", RequestFingerprint.sha256("abc"));
+        assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855", RequestFingerprint.sha256(""));
+    }
+
+    @Test
+    public void sameRequestGivesTheSameFingerprint()
+    {
+        assertEquals(RequestFingerprint.of(MODEL, request("Open the shop", 700, 40)), RequestFingerprint.of(MODEL, request("Open the shop", 700, 40)));
+    }
+
+    @Test
+    public void modelTextAndCallsChangeTheFingerprint()
+    {
+        String fingerprint = RequestFingerprint.of(MODEL, request("Open the shop", 700, 40));
+
+        assertNotEquals(fingerprint, RequestFingerprint.of("gemini-2.5-flash", request("Open the shop", 700, 40)));
+        assertNotEquals(fingerprint, RequestFingerprint.of(MODEL, request("Open the cart", 700, 40)));
+        assertNotEquals(fingerprint, RequestFingerprint.of(MODEL, request("Open the shop", 701, 40)));
+    }
+
+    @Test
+    public void roleChangesTheFingerprint()
+    {
+        Content user = Content.builder().role("user").parts(List.of(Part.fromText("Open the shop"))).build();
+        Content model = Content.builder().role("model").parts(List.of(Part.fromText("Open the shop"))).build();
+
+        assertNotEquals(RequestFingerprint.of(MODEL, List.of(user)), RequestFingerprint.of(MODEL, List.of(model)));
+    }
+
+    @Test
+    public void screenshotsOnlyContributeTheirType()
+    {
+        String first = RequestFingerprint.of(MODEL, List.of(Content.fromParts(Part.fromBytes(new byte[]
+        {
+          1, 2, 3
+        }, "image/png"))));
+        String second = RequestFingerprint.of(MODEL, List.of(Content.fromParts(Part.fromBytes(new byte[]
+        {
+          4, 5, 6, 7
+        }, "image/png"))));
+        String jpeg = RequestFingerprint.of(MODEL, List.of(Content.fromParts(Part.fromBytes(new byte[]
+        {
+          1, 2, 3
+        }, "image/jpeg"))));
+
+        assertEquals(first, second);
+        assertNotEquals(first, jpeg);
+    }
+
+    @Test
+    public void orderOfTheCallArgumentsDoesNotMatter()
+    {
+        Map<String, Object> xy = new LinkedHashMap<>();
+        xy.put("x", 700);
+        xy.put("y", 40);
+        Map<String, Object> yx = new LinkedHashMap<>();
+        yx.put("y", 40);
+        yx.put("x", 700);
+
+        assertEquals(RequestFingerprint.of(MODEL, List.of(Content.fromParts(Part.fromFunctionCall("click_at", xy)))),
+                     RequestFingerprint.of(MODEL, List.of(Content.fromParts(Part.fromFunctionCall("click_at", yx)))));
+    }
+
+    @Test
+    public void functionResponsesOnlyContributeTheirName()
+    {
+        String success = RequestFingerprint.of(MODEL, List.of(Content.fromParts(Part.fromFunctionResponse("click_at", Map.of("status", "success", "url", "a")))));
+        String otherPage = RequestFingerprint.of(MODEL, List.of(Content.fromParts(Part.fromFunctionResponse("click_at", Map.of("status", "success", "url", "b")))));
+        String scroll = RequestFingerprint.of(MODEL, List.of(Content.fromParts(Part.fromFunctionResponse("scroll", Map.of("status", "success", "url", "a")))));
+
+        assertEquals(success, otherPage);
+        assertNotEquals(success, scroll);
+    }
+
+    private static List<Content> request(String prompt, int x, int y)
+    {
+        return List.of(Content.builder().role("user").parts(List.of(Part.fromText(prompt))).build(),
+                       Content.builder()
+                              .role("model")
+                              .parts(List.of(Part.fromText("I click the search field."), Part.fromFunctionCall("click_at", Map.of("x", x, "y", y))))
+                              .build());
+    }
+}
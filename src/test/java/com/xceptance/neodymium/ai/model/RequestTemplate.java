@@ -0,0 +1,136 @@
+package com.xceptance.neodymium.ai.model;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import com.google.genai.types.ComputerUse;
+import com.google.genai.types.Content;
+import com.google.genai.types.Environment;
+import com.google.genai.types.FunctionDeclaration;
+import com.google.genai.types.GenerateContentConfig;
+import com.google.genai.types.Part;
+import com.google.genai.types.Tool;
+
+/**
+ * The part of every model request that never changes during a run: system instruction, tool schemas and the resulting
+ * {@link GenerateContentConfig}. It is built once per test class and JVM and shared by all datasets and steps, the SDK
+ * types are immutable.
+ */
+public final class RequestTemplate
+{
+    private static final Map<Class<?>, RequestTemplate> TEMPLATES = new ConcurrentHashMap<>();
+
+    private final Content systemInstruction;
+
+    private final List<FunctionDeclaration> functionDeclarations;
+
+    private final GenerateContentConfig config;
+
+    private final long fixedTokens;
+
+    private RequestTemplate(Content systemInstruction, List<FunctionDeclaration> functionDeclarations)
+    {
+        this.systemInstruction = systemInstruction;
+        this.functionDeclarations = List.copyOf(functionDeclarations);
+
+        Tool tool = Tool.builder()
+                        .functionDeclarations(this.functionDeclarations)
+                        .computerUse(ComputerUse.builder()
+                                                .environment(Environment.Known.ENVIRONMENT_BROWSER)
+                                                .build())
+                        .build();
+        this.config = GenerateContentConfig.builder()
+                                           .systemInstruction(systemInstruction)
+                                           .tools(tool)
+                                           .build();
+
+        // sent with every request, but not part of the history
+        this.fixedTokens = estimate(systemInstruction, List.of(tool));
+    }
+
+    private static long estimate(Content systemInstruction, List<Tool> tools)
+    {
+        long tokens = systemInstruction == null ? 0 : TokenEstimator.estimate(systemInstruction);
+        for (Tool tool : tools)
+        {
+            tokens += TokenEstimator.estimate(Part.fromText(tool.toJson()));
+        }
+        return tokens;
+    }
+
+    /**
+     * Returns the template of the given test class, building it on first use.
+     *
+     * @param testClass
+     *            the test class
+     * @param systemPrompt
+     *            provides the system prompt, only called once
+     * @param functionDeclarations
+     *            provides the tool schemas, only called once
+     * @return the template
+     */
+    public static RequestTemplate of(Class<?> testClass, Supplier<String> systemPrompt, Supplier<List<FunctionDeclaration>> functionDeclarations)
+    {
+        return TEMPLATES.computeIfAbsent(testClass,
+                                         key -> new RequestTemplate(Content.fromParts(Part.fromText(systemPrompt.get())), functionDeclarations.get()));
+    }
+
+    /**
+     * Returns the estimated tokens of system instruction and tools of a request configuration. Configurations of a
+     * template are looked up, others are estimated.
+     *
+     * @param config
+     *            the request configuration, may be <code>null</code>
+     * @return the estimated tokens every request with this configuration costs on top of the history
+     */
+    public static long fixedTokens(GenerateContentConfig config)
+    {
+        if (config == null)
+        {
+            return 0;
+        }
+        // one template per test class, a scan by identity is cheaper than hashing the configuration
+        for (RequestTemplate template : TEMPLATES.values())
+        {
+            if (template.config == config)
+            {
+                return template.fixedTokens;
+            }
+        }
+        return estimate(config.systemInstruction().orElse(null), config.tools().orElse(List.of()));
+    }
+
+    /**
+     * @return the system instruction
+     */
+    public Content systemInstruction()
+    {
+        return systemInstruction;
+    }
+
+    /**
+     * @return the tool schemas, unmodifiable
+     */
+    public List<FunctionDeclaration> functionDeclarations()
+    {
+        return functionDeclarations;
+    }
+
+    /**
+     * @return the request configuration including system instruction and tools
+     */
+    public GenerateContentConfig config()
+    {
+        return config;
+    }
+
+    /**
+     * @return the estimated tokens of system instruction and tools, which every request costs on top of the history
+     */
+    public long fixedTokens()
+    {
+        return fixedTokens;
+    }
+}
@@ -0,0 +1,24 @@
+package com.xceptance.neodymium.ai.model;
+
+import java.util.List;
+
+import com.google.genai.types.Content;
+
+/**
+ * Counts the tokens of a conversation exactly, as the model does. This is all {@link ConversationHistory#prune} needs
+ * from the model side.
+ */
+@FunctionalInterface
+public interface TokenCounter
+{
+    /**
+     * Counts the tokens the given history would consume.
+     *
+     * @param model
+     *            the model name
+     * @param history
+     *            the conversation so far
+     * @return the total token count
+     */
+    public long countTokens(String model, List<Content> history);
+}
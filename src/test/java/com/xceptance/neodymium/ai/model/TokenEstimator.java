@@ -0,0 +1,153 @@
+package com.xceptance.neodymium.ai.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import com.google.genai.types.Blob;
+import com.google.genai.types.Content;
+import com.google.genai.types.Part;
+
+/**
+ * Local approximation of the token count of a {@link Content}, so the agent loop does not need a countTokens round trip
+ * for every step.
+ * <p>
+ * Text is counted with the usual rule of thumb of four characters per token. Images follow the Gemini rules: images
+ * with both sides up to 384 pixels cost 258 tokens, larger images are tiled into 768x768 tiles of 258 tokens each. The
+ * estimate is only meant to decide when an exact remote count is worth it, see {@link ConversationHistory}.
+ * </p>
+ */
+public final class TokenEstimator
+{
+    private static final int CHARS_PER_TOKEN = 4;
+
+    private static final int TOKENS_PER_TILE = 258;
+
+    private static final int SMALL_IMAGE_SIZE = 384;
+
+    private static final int TILE_SIZE = 768;
+
+    /** Overhead for role and part framing. */
+    private static final int TOKENS_PER_PART = 4;
+
+    private TokenEstimator()
+    {
+    }
+
+    /**
+     * @param content
+     *            the content to estimate
+     * @return the estimated token count of the content
+     */
+    public static int estimate(Content content)
+    {
+        int tokens = 0;
+        for (Part part : content.parts().orElse(List.of()))
+        {
+            tokens += estimate(part);
+        }
+        return tokens;
+    }
+
+    /**
+     * @param part
+     *            the part to estimate
+     * @return the estimated token count of the part
+     */
+    public static int estimate(Part part)
+    {
+        int tokens = TOKENS_PER_PART;
+        if (part.text().isPresent())
+        {
+            tokens += textTokens(part.text().get());
+        }
+        if (part.functionCall().isPresent())
+        {
+            tokens += textTokens(part.functionCall().get().name().orElse("")) + textTokens(String.valueOf(part.functionCall().get().args().orElse(null)));
+        }
+        if (part.functionResponse().isPresent())
+        {
+            tokens += textTokens(part.functionResponse().get().name().orElse(""))
+                      + textTokens(String.valueOf(part.functionResponse().get().response().orElse(null)));
+        }
+        if (part.inlineData().isPresent())
+        {
+            tokens += imageTokens(part.inlineData().get());
+        }
+        return tokens;
+    }
+
+    private static int textTokens(String text)
+    {
+        return (text.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+
+    private static int imageTokens(Blob blob)
+    {
+        if (!blob.mimeType().orElse("").startsWith("image/") || blob.data().isEmpty())
+        {
+            return 0;
+        }
+
+        int[] size = imageSize(blob.data().get());
+        if (size == null)
+        {
+            // unknown format, assume a full viewport screenshot
+            size = new int[]
+            {
+              1600, 800
+            };
+        }
+
+        if (size[0] <= SMALL_IMAGE_SIZE && size[1] <= SMALL_IMAGE_SIZE)
+        {
+            return TOKENS_PER_TILE;
+        }
+
+        int tilesX = (size[0] + TILE_SIZE - 1) / TILE_SIZE;
+        int tilesY = (size[1] + TILE_SIZE - 1) / TILE_SIZE;
+        return tilesX * tilesY * TOKENS_PER_TILE;
+    }
+
+    /**
+     * Reads the dimensions from the image header without decoding the pixels.
+     *
+     * @param data
+     *            the encoded image
+     * @return width and height or <code>null</code> if the format is unknown
+     */
+    static int[] imageSize(byte[] data)
+    {
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(data)))
+        {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext())
+            {
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+            try
+            {
+                reader.setInput(in, true, true);
+                return new int[]
+                {
+                  reader.getWidth(0), reader.getHeight(0)
+                };
+            }
+            finally
+            {
+                reader.dispose();
+            }
+        }
+        catch (IOException e)
+        {
+            return null;
+        }
+    }
+}
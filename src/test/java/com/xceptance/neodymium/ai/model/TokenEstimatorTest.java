@@ -0,0 +1,100 @@
+package com.xceptance.neodymium.ai.model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.genai.types.Content;
+import com.google.genai.types.Part;
+
+public class TokenEstimatorTest
+{
+    /** Role and part framing of every part. */
+    private static final int PART = 4;
+
+    @Test
+    public void textCountsFourCharactersPerToken()
+    {
+        assertEquals(PART + 2, TokenEstimator.estimate(Part.fromText("abcdefgh")));
+        assertEquals(PART + 3, TokenEstimator.estimate(Part.fromText("abcdefghi")));
+        assertEquals(PART, TokenEstimator.estimate(Part.fromText("")));
+    }
+
+    @Test
+    public void contentSumsItsParts()
+    {
+        Content content = Content.fromParts(Part.fromText("abcdefgh"), Part.fromText("abcd"));
+
+        assertEquals(2 * PART + 3, TokenEstimator.estimate(content));
+    }
+
+    @Test
+    public void functionCallsAndResponsesCountNameAndArguments()
+    {
+        Part call = Part.fromFunctionCall("click_at", Map.of("x", 1));
+        Part response = Part.fromFunctionResponse("click_at", Map.of("status", "success"));
+
+        assertEquals(PART + 2 + tokens(String.valueOf(Map.of("x", 1))), TokenEstimator.estimate(call));
+        assertEquals(PART + 2 + tokens(String.valueOf(Map.of("status", "success"))), TokenEstimator.estimate(response));
+    }
+
+    @Test
+    public void smallImageIsOneTile() throws IOException
+    {
+        assertEquals(PART + 258, TokenEstimator.estimate(Part.fromBytes(png(384, 200), "image/png")));
+    }
+
+    @Test
+    public void largeImageIsTiled() throws IOException
+    {
+        // 3 x 2 tiles of 768 pixels
+        assertEquals(PART + 6 * 258, TokenEstimator.estimate(Part.fromBytes(png(1600, 800), "image/png")));
+        assertEquals(PART + 258, TokenEstimator.estimate(Part.fromBytes(png(768, 400), "image/png")));
+    }
+
+    @Test
+    public void unreadableImageCountsAsViewportScreenshot()
+    {
+        byte[] garbage = "no image".getBytes(StandardCharsets.UTF_8);
+
+        assertEquals(PART + 6 * 258, TokenEstimator.estimate(Part.fromBytes(garbage, "image/png")));
+    }
+
+    @Test
+    public void otherInlineDataIsNotCounted()
+    {
+        assertEquals(PART, TokenEstimator.estimate(Part.fromBytes(new byte[100], "application/pdf")));
+    }
+
+    @Test
+    public void imageSizeIsReadFromTheHeader() throws IOException
+    {
+        assertArrayEquals(new int[]
+        {
+          1600, 800
+        }, TokenEstimator.imageSize(png(1600, 800)));
+        assertNull(TokenEstimator.imageSize(new byte[10]));
+    }
+
+    private static int tokens(String text)
+    {
+        return (text.length() + 3) / 4;
+    }
+
+    static byte[] png(int width, int height) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", out);
+        return out.toByteArray();
+    }
+}
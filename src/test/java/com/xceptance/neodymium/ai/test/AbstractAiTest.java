@@ -4,52 +4,79 @@ import static com.codeborne.selenide.Condition.attribute;
 import static com.codeborne.selenide.Condition.enabled;
 import static com.codeborne.selenide.Condition.not;
 import static com.codeborne.selenide.Condition.tagName;
+import static com.codeborne.selenide.Condition.visible;
+import static com.codeborne.selenide.Selectors.withText;
 import static com.codeborne.selenide.Selenide.$;
 
-import java.io.ByteArrayInputStream;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.awt.Rectangle;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import org.apache.commons.lang3.StringUtils;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
 import org.jspecify.annotations.Nullable;
 import org.junit.Assert;
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
 import org.openqa.selenium.Dimension;
 import org.openqa.selenium.JavascriptExecutor;
 import org.openqa.selenium.Keys;
-import org.openqa.selenium.OutputType;
-import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.ScriptTimeoutException;
+import org.openqa.selenium.TimeoutException;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
 import org.openqa.selenium.interactions.Actions;
+import org.openqa.selenium.support.ui.ExpectedConditions;
 
 import com.codeborne.selenide.Selenide;
 import com.codeborne.selenide.SelenideElement;
 import com.codeborne.selenide.WebDriverRunner;
-import com.google.genai.Client;
-import com.google.genai.types.ComputerUse;
 import com.google.genai.types.Content;
-import com.google.genai.types.CountTokensResponse;
-import com.google.genai.types.Environment;
 import com.google.genai.types.FunctionCall;
-import com.google.genai.types.FunctionDeclaration;
-import com.google.genai.types.GenerateContentConfig;
 import com.google.genai.types.GenerateContentResponse;
 import com.google.genai.types.Part;
-import com.google.genai.types.Schema;
-import com.google.genai.types.Tool;
-import com.google.genai.types.Type;
 import com.xceptance.neodymium.ai.data.AITestData;
+import com.xceptance.neodymium.ai.log.AgentLog;
+import com.xceptance.neodymium.ai.metrics.Phase;
+import com.xceptance.neodymium.ai.metrics.RunMetrics;
+import com.xceptance.neodymium.ai.model.ConversationHistory;
+import com.xceptance.neodymium.ai.model.HistoryEvictionPolicy;
+import com.xceptance.neodymium.ai.model.ImageFirstEvictionPolicy;
+import com.xceptance.neodymium.ai.model.ModelBackend;
+import com.xceptance.neodymium.ai.model.OldestTurnEvictionPolicy;
+import com.xceptance.neodymium.ai.model.RequestFingerprint;
+import com.xceptance.neodymium.ai.model.RequestTemplate;
+import com.xceptance.neodymium.ai.tool.AiTool;
+import com.xceptance.neodymium.ai.tool.HelperMethods;
+import com.xceptance.neodymium.ai.tool.Param;
+import com.xceptance.neodymium.ai.tool.ToolRegistry;
+import com.xceptance.neodymium.ai.tool.ToolResult;
+import com.xceptance.neodymium.ai.trace.ActionTrace;
+import com.xceptance.neodymium.ai.trace.LocatorCache;
+import com.xceptance.neodymium.ai.trace.TraceCompiler;
+import com.xceptance.neodymium.ai.trace.TraceStep;
+import com.xceptance.neodymium.ai.util.AiConfiguration;
+import com.xceptance.neodymium.ai.util.ArtifactWriter;
+import com.xceptance.neodymium.ai.util.CoordinateActions;
+import com.xceptance.neodymium.ai.util.DomCleaner;
+import com.xceptance.neodymium.ai.util.ElementFingerprint;
+import com.xceptance.neodymium.ai.util.ElementMap;
+import com.xceptance.neodymium.ai.util.EncodedImage;
+import com.xceptance.neodymium.ai.util.PageStability;
 import com.xceptance.neodymium.ai.util.ScreenshotMarker;
+import com.xceptance.neodymium.ai.util.SessionParallelism;
+import com.xceptance.neodymium.ai.util.StepPipeline;
+import com.xceptance.neodymium.ai.util.ViewportGeometry;
+import com.xceptance.neodymium.ai.util.VisualDelta;
 import com.xceptance.neodymium.common.testdata.DataItem;
-import com.xceptance.neodymium.util.AllureAddons;
 import com.xceptance.neodymium.util.Neodymium;
 import com.xceptance.neodymium.util.SelenideAddons;
 
@@ -62,8 +89,21 @@ import io.qameta.allure.Allure;
  * agent that takes a natural language prompt, views the browser via screenshots/DOM, and executes actions (clicks,
  * typing, navigation) via Function Calling.
  * </p>
+ * <p>
+ * The functions are the methods annotated with {@link AiTool}. Subclasses add their own functions the same way, see
+ * {@link ToolRegistry}.
+ * </p>
+ * <p>
+ * The actions of passing runs can be compiled into a trace and replayed by later runs without the model, which only
+ * takes over where the page no longer matches the trace, see {@link ActionTrace}.
+ * </p>
+ * <p>
+ * Agent tests run concurrently, each session on its own thread with its own browser, see {@link SessionParallelism}.
+ * All other tests of the module keep running one after another.
+ * </p>
  */
 // @Retry()
+@Execution(ExecutionMode.CONCURRENT)
 public abstract class AbstractAiTest
 {
     private static final String gemini_api_key = "";
@@ -75,7 +115,43 @@ public abstract class AbstractAiTest
     /** Standard viewport width for AI consistency. */
     public static final int viewPortX = 1600;
 
-    final int TOKEN_LIMIT = 120_000;
+    final int TOKEN_LIMIT = AiConfiguration.get().tokenLimit();
+
+    /** How the function response tells that an action was executed on an element of the locator cache. */
+    private static final String LOCATED_BY_CACHE = "locator cache";
+
+    /** The model driving the browser. */
+    private static final String MODEL = "gemini-2.5-computer-use-preview-10-2025";
+
+    /** The conversation of the current run. */
+    private ConversationHistory history;
+
+    /** The AI log of the current run. */
+    private AgentLog log;
+
+    /** The executed steps of the current run. */
+    private List<String> testSteps;
+
+    /** Tracks the visual changes between the screenshots of the current run, <code>null</code> if disabled. */
+    private VisualDelta visualDelta;
+
+    /** Whether coordinate actions are executed as a single script call. */
+    private boolean scriptActions;
+
+    /** The tools of this test class. */
+    private ToolRegistry tools;
+
+    /** The screenshot captured while waiting for the model, used as debug screenshot of the next function call. */
+    private byte[] prefetchedScreenshot;
+
+    /** Collects the actions of the current run for its trace, <code>null</code> if traces are off. */
+    private TraceCompiler traceCompiler;
+
+    /** Remembers the elements of element actions across runs, <code>null</code> if disabled. */
+    private LocatorCache locatorCache;
+
+    /** Time, tokens and bytes of the current run. */
+    private RunMetrics metrics;
 
     @DataItem
     AITestData data;
@@ -96,81 +172,158 @@ public abstract class AbstractAiTest
      */
     public void runAiTest() throws Exception
     {
+        // one recording per test class, data set and prompt, so datasets can be replayed offline. The data set keeps
+        // datasets with the same prompt apart, e.g. when they run in parallel sessions.
+        String dataSet = Neodymium.getData().get("testId");
+        String recordingName = getClass().getSimpleName() + (dataSet == null ? "" : "_" + dataSet.replaceAll("[^\\w-]", "-")) + "_"
+                               + RequestFingerprint.sha256(data.prompt).substring(0, 12);
+
+        log = AgentLog.start(recordingName);
+        metrics = RunMetrics.start(recordingName);
+
+        if (ModelBackend.needsApiKey())
+        {
+            Assert.assertFalse("Enter gemini API key go to Google AI studio to generate one if needed.", StringUtils.isBlank(gemini_api_key));
+
+            // Open the connection to the model while the browser is prepared
+            ModelBackend.warmUp(gemini_api_key, MODEL);
+        }
+
         // Ensure consistent resolution for coordinate mapping
         scaleViewPortTo(viewPortX, viewPortY);
 
         // List of test steps (only for debugging right now)
-        List<String> testSteps = new ArrayList<String>();
-        List<FunctionDeclaration> functionDeclarations = generateFunctionDeclarations();
-
-        // Define the AI Persona and strict operational rules
-        Content systemInstruction = Content.fromParts(Part.fromText(systemPrompt()));
-
-        Assert.assertFalse("Enter gemini API key go to Google AI studio to generate one if needed.", StringUtils.isBlank(gemini_api_key));
+        testSteps = new ArrayList<String>();
+
+        // Only send what changed on the page since the last screenshot. A full frame is forced before the last one
+        // kept in the history gets evicted by newer images, so the model always has a frame to apply the changes to.
+        visualDelta = AiConfiguration.get().visualDeltaEnabled()
+                      ? new VisualDelta(AiConfiguration.get().visualDeltaMaxRegionShare(),
+                                        Math.max(1, AiConfiguration.get().keepRecentImages()))
+                      : null;
+
+        // Coordinate actions as a single script call each or via WebDriver
+        scriptActions = AiConfiguration.get().actionMode() == AiConfiguration.ActionMode.SCRIPT;
+
+        // Execute function calls while the rest of the response is still streamed
+        final boolean streaming = AiConfiguration.get().streaming();
+
+        // Define the AI Persona, strict operational rules and tools, built once per test class and JVM
+        tools = ToolRegistry.of(getClass());
+        RequestTemplate template = RequestTemplate.of(getClass(), this::systemPrompt, tools::declarations);
+
+        // Repeat the actions of a previous passing run, the model only takes over where the page no longer matches
+        AiConfiguration.TraceMode traceMode = AiConfiguration.get().traceMode();
+        Path traceFile = ActionTrace.file(recordingName);
+        traceCompiler = traceMode == AiConfiguration.TraceMode.OFF ? null : new TraceCompiler(data.prompt);
+        locatorCache = AiConfiguration.get().locatorCacheEnabled() ? LocatorCache.shared() : null;
+        ActionTrace trace = traceMode == AiConfiguration.TraceMode.REPLAY ? ActionTrace.load(traceFile) : null;
+        String handoff = null;
+        if (trace != null)
+        {
+            handoff = replayTrace(trace);
+            if (handoff == null)
+            {
+                log.info("### Test replayed from trace, nice! ###");
+                finishRun();
+                return;
+            }
+        }
 
-        try (Client client = new Client.Builder()
-                                                 .apiKey(gemini_api_key)
-                                                 .build())
+        try (ModelBackend backend = ModelBackend.create(gemini_api_key, recordingName))
         {
-            List<Content> history = new ArrayList<>();
-            history.add(Content.fromParts(Part.fromText(data.prompt)));
+            history = new ConversationHistory();
+            if (handoff == null)
+            {
+                history.add(Content.fromParts(Part.fromText(data.prompt)));
+            }
+            else
+            {
+                // the first frame of the visual delta, so it is full and counts as such
+                EncodedImage screenshot = ScreenshotMarker.takeScreenshotWithMarker(-1, -1, "trace_handoff", visualDelta).image();
+                history.add(Content.fromParts(Part.fromText(data.prompt), Part.fromText(handoff), Part.fromBytes(screenshot.data(), screenshot.mimeType())));
+            }
 
             GenerateContentResponse response = null;
             int safetyCounter = 0;
             boolean testFinished = false;
 
-            StringBuilder log = new StringBuilder();
             try
             {
                 // Main interaction loop
                 while (true)
                 {
-                    String model = "gemini-2.5-computer-use-preview-10-2025";
+                    metrics.nextStep();
+                    log.nextStep();
+                    manageHistory(backend, history, MODEL, template);
+
+                    // Function responses of calls executed during streaming, they follow the model content in the history
+                    List<Content> functionResponses = new ArrayList<>();
+                    AtomicBoolean finishedWhileStreaming = new AtomicBoolean();
 
-                    manageHistory(client, history, model, functionDeclarations, systemInstruction);
-                    
                     // Call Gemini API
-                    response = client.models.generateContent(
-                                                             model,
-                                                             history,
-                                                             GenerateContentConfig.builder()
-                                                                                  .systemInstruction(systemInstruction)
-                                                                                  .tools(Tool.builder()
-                                                                                             .functionDeclarations(functionDeclarations)
-                                                                                             .computerUse(ComputerUse.builder()
-                                                                                                                     .environment(Environment.Known.ENVIRONMENT_BROWSER)
-                                                                                                                     .build())
-                                                                                             .build())
-                                                                                  .build());
+                    if (streaming)
+                    {
+                        // Thoughts streamed since the last function call, logged right before the next one
+                        StringBuilder streamedText = new StringBuilder();
+                        Consumer<GenerateContentResponse> dispatch = chunk -> {
+                            @Nullable
+                            String chunkText = chunk.text();
+                            if (StringUtils.isNotEmpty(chunkText))
+                            {
+                                streamedText.append(chunkText);
+                            }
+
+                            if (chunk.functionCalls() != null)
+                            {
+                                for (FunctionCall functionCall : chunk.functionCalls())
+                                {
+                                    logThoughts(streamedText);
+                                    finishedWhileStreaming.set(executeFunctionCall(functionCall, functionResponses));
+                                }
+                            }
+                        };
+                        response = StepPipeline.stream(onChunk -> measuredModelCall(() -> backend.generateContentStream(MODEL, history, template.config(), onChunk)),
+                                                       this::prefetchStepState,
+                                                       dispatch);
+                        logThoughts(streamedText);
+                    }
+                    else
+                    {
+                        response = StepPipeline.call(() -> measuredModelCall(() -> backend.generateContent(MODEL, history, template.config())), this::prefetchStepState);
+                    }
 
                     @Nullable
                     String responseText = response.text();
 
                     if (StringUtils.isNoneBlank(responseText))
                     {
-                        log
-                           .append("Thoughts:\n")
-                           .append(responseText)
-                           .append("\n");
+                        if (!streaming)
+                        {
+                            log.thoughts(responseText);
+                        }
                     }
                     else
                     {
                         history.add(Content.fromParts(Part.fromText("Remember: Always add yout Thoughts in the reuquired xml like format to your repsonse!")));
                     }
 
-                    System.out.println("Full response:" + responseText);
-
                     // Handle cases where AI stops outputting function calls (Safety or Confusion)
                     if (response.functionCalls() == null || response.functionCalls().isEmpty())
                     {
                         if (testFinished)
                         {
-                            System.out.println("### Test finished, nice! ###");
+                            log.info("### Test finished, nice! ###");
+                            if (traceCompiler != null && traceCompiler.passed())
+                            {
+                                traceCompiler.compile(Neodymium.getDriver().getCurrentUrl()).save(traceFile);
+                            }
                             break;
                         }
                         else
                         {
-                            System.out.println("### No function call received. SafetyCounter: " + safetyCounter++ + " ###");
+                            log.info("### No function call received. SafetyCounter: " + safetyCounter++ + " ###");
+                            metrics.retry();
                             Assert.assertTrue("AI stopped working before the test was officially finished.", safetyCounter < 15);
                             // Nudge the AI to continue if it falls silent
                             history.add(Content.fromParts(Part.fromText("Continue with your task.")));
@@ -183,210 +336,463 @@ public abstract class AbstractAiTest
                         history.add(response.candidates().get().get(0).content().get());
                     }
 
+                    safetyCounter = 0;
+                    if (streaming)
+                    {
+                        // already executed while the response was streamed
+                        history.addAll(functionResponses);
+                        testFinished = finishedWhileStreaming.get();
+                        continue;
+                    }
+
                     // Process Function Calls requested by AI
                     for (FunctionCall functionCall : response.functionCalls())
                     {
-                        try
-                        {
-                            Map<String, Object> args = functionCall.args().get();
+                        testFinished = executeFunctionCall(functionCall, history);
+                    }
+                }
+            }
+            finally
+            {
+                finishRun();
+            }
+        }
+    }
 
-                            log.append("Called Function:\n").append("\t").append(functionCall.name().get()).append("\n").append(args).append("\n");
-                            System.out.println("Tester Action ==> " + functionCall.name().get() + " " + args);
+    /**
+     * Attaches the AI log and the metrics of the run and persists the locator cache.
+     */
+    private void finishRun()
+    {
+        metrics.finish();
+        if (locatorCache != null)
+        {
+            locatorCache.save();
+        }
+        // last, so failures of the above still end up in the log
+        log.finish();
+        // make sure the report is complete before the test ends
+        ArtifactWriter.flush();
+    }
 
-                            Map<String, Object> result = new HashMap<>();
-                            if (args.containsKey("safety_decision"))
-                            {
-                                result.put("safety_acknowledgement", "true");
-                            }
+    /**
+     * Logs the thoughts streamed so far, if any, and clears them.
+     *
+     * @param streamedText
+     *            the streamed thoughts
+     */
+    private void logThoughts(StringBuilder streamedText)
+    {
+        if (!StringUtils.isBlank(streamedText))
+        {
+            log.thoughts(streamedText.toString().strip());
+        }
+        streamedText.setLength(0);
+    }
 
-                            String stepDescription = (String) args.get("description");
-                            if (StringUtils.isBlank(stepDescription))
-                            {
-                                stepDescription = functionCall.name().get() + " " + args;
-                                testSteps.add(stepDescription);
-                            }
-                            else
-                            {
-                                testSteps.add(stepDescription + "  (" + functionCall.name().get() + " " + args + ")");
-                                history.add(Content.fromParts(Part.fromText("Remember: Allways add a description field to each function call.")));
-                                result.put("warning", "mandatory description field missing");
-                            }
+    /**
+     * Sends a model request and records its duration, size and token usage. Runs on the pipeline thread.
+     *
+     * @param call
+     *            the request
+     * @return the response
+     */
+    private GenerateContentResponse measuredModelCall(Supplier<GenerateContentResponse> call)
+    {
+        metrics.request(history);
+        try (RunMetrics.Timer timer = RunMetrics.timer(metrics, Phase.MODEL_CALL))
+        {
+            GenerateContentResponse response = call.get();
+            metrics.response(response);
+            return response;
+        }
+    }
 
-                            safetyCounter = 0;
-                            testFinished = Allure.step(stepDescription, () -> {
+    /**
+     * Executes a single function call of the model inside an Allure step and collects the function response together
+     * with the resulting browser state.
+     *
+     * @param functionCall
+     *            the function call to execute
+     * @param target
+     *            receives the contents to send back to the model, in order
+     * @return <code>true</code> if the model finished the test with this call
+     */
+    private boolean executeFunctionCall(FunctionCall functionCall, List<Content> target)
+    {
+        try
+        {
+            Map<String, Object> args = functionCall.args().get();
 
-                                takeScreenshot(functionCall, "_00_before_function"); // Debug screenshot
+            log.call(functionCall.name().get(), args);
 
-                                boolean testFinishedInsideStep = false;
+            Map<String, Object> result = new HashMap<>();
+            if (args.containsKey("safety_decision"))
+            {
+                result.put("safety_acknowledgement", "true");
+            }
 
-                                // --- FUNCTION EXECUTION SWITCH ---
-                                switch (functionCall.name().get())
-                                {
-                                    case "open_web_browser":
-                                        result.put("status", "success");
-                                        break;
-                                    case "navigate":
-                                    case "navigate_to_url":
-                                        Selenide.open((String) args.get("url"));
-                                        result.put("status", "success");
-                                        break;
-                                    case "go_back":
-                                        Selenide.back();
-                                        result.put("status", "success");
-                                        break;
-                                    case "java_method":
-                                        runMethodWithReflection((String) args.get("name"), (String) args.get("parameter"));
-                                        result.put("status", "success");
-                                        break;
-                                    case "finish_test":
-                                        testFinishedInsideStep = true;
-                                        testSteps.add("Summary: " + (String) args.get("summary"));
-                                        break;
-                                    case "click_element":
-                                        try
-                                        {
-                                            $((String) args.get("selector"))
-                                                                            .highlight()
-                                                                            .click();
-                                            result.put("status", "success");
-                                        }
-                                        catch (Exception e)
-                                        {
-                                            result.put("status", "error");
-                                            result.put("message", e.getMessage());
-                                        }
-                                        break;
-                                    case "click_at":
-                                        int xClick = ((Number) args.get("x")).intValue();
-                                        int yClick = ((Number) args.get("y")).intValue();
-                                        clickScaledCoords(xClick, yClick);
-                                        result.put("status", "success");
-                                        break;
-                                    case "type_text":
-                                        String text = (String) args.get("text");
-                                        String selectorForTyping = (String) args.get("selector");
-                                        if (selectorForTyping != null)
-                                        {
-                                            $(selectorForTyping).highlight().type(text);
-                                        }
-                                        else
-                                        {
-                                            sendText(text); // Global typing (no specific element)
-                                        }
-                                        result.put("status", "success");
-                                        break;
-                                    case "type_text_at":
-                                        boolean clearBeforeTyping = (boolean) ((args.get("clear_before_typing") == null) ? false
-                                                                                                                         : args.get("clear_before_typing"));
-                                        String text_to_type = (String) args.get("text");
-                                        boolean press_enter = (Boolean) args.getOrDefault("press_enter", false);
-                                        int xType = ((Number) args.get("x")).intValue();
-                                        int yType = ((Number) args.get("y")).intValue();
-
-                                        if (clearBeforeTyping == true)
-                                        {
-                                            clearInputScaledCoords(xType, yType);
-                                        }
-                                        clickScaledCoords(xType, yType);
-                                        sendText(text_to_type);
-                                        if (press_enter)
-                                        {
-                                            Actions actions = new Actions(WebDriverRunner.getWebDriver());
-                                            actions.sendKeys(Keys.ENTER).perform();
-                                        }
-                                        result.put("status", "success");
-                                        break;
-                                    case "scroll_document":
-                                        String direction = (String) args.get("direction");
-                                        int magnitude = 800;
-                                        if (args.containsKey("magnitude"))
-                                        {
-                                            magnitude = ((Number) args.get("magnitude")).intValue();
-                                        }
-                                        if ("down".equals(direction))
-                                        {
-                                            scroll(0, magnitude);
-                                        }
-                                        else if ("up".equals(direction))
-                                        {
-                                            scroll(0, -magnitude);
-                                        }
-                                        result.put("status", "success");
-                                        break;
-                                    case "take_screenshot":
-                                        byte[] screenshotBytes = new ByteArrayInputStream(((TakesScreenshot) WebDriverRunner.getWebDriver()).getScreenshotAs(OutputType.BYTES)).readAllBytes();
-                                        result.put("screenshot-image-bytes", screenshotBytes);
-                                        result.put("status", "success");
-                                        break;
-                                    case "hover_at":
-                                        int x = ((Number) args.get("x")).intValue();
-                                        int y = ((Number) args.get("y")).intValue();
-                                        hoverScaledCoords(x, y);
-                                        result.put("status", "success");
-                                        break;
-                                    case "wait_5_seconds":
-                                        Selenide.sleep(5000);
-                                        result.put("status", "success");
-                                        break;
-                                    case "report_issue":
-                                        // Stops the test and fails immediately via JUnit assertion
-                                        SelenideAddons.wrapAssertionError(() -> Assertions.assertEquals((String) args.get("expectedValue"),
-                                                                                                        (String) args.get("actualValue"),
-                                                                                                        (String) args.get("errorMessage")));
-                                        break;
-                                    case "get_page_content":
-                                        String cleanedDom = getCleanedDom();
-                                        AllureAddons.addAttachmentToStep("DOM Content", "text/html", ".html",
-                                                                         new ByteArrayInputStream(cleanedDom.getBytes(StandardCharsets.UTF_8)));
-
-                                        result.put("content", Part.fromText(cleanedDom));
-                                        break;
-                                    default:
-                                        result.put("error", "unsupported function");
-                                }
+            String stepDescription = (String) args.get("description");
+            if (StringUtils.isBlank(stepDescription))
+            {
+                stepDescription = functionCall.name().get() + " " + args;
+                testSteps.add(stepDescription);
+            }
+            else
+            {
+                testSteps.add(stepDescription + "  (" + functionCall.name().get() + " " + args + ")");
+                target.add(Content.fromParts(Part.fromText("Remember: Allways add a description field to each function call.")));
+                result.put("warning", "mandatory description field missing");
+            }
 
-                                if (functionCall.args().get().containsKey("x") && functionCall.args().get().containsKey("y"))
-                                {
-                                    int x = ((Number) functionCall.args().get().get("x")).intValue();
-                                    int y = ((Number) functionCall.args().get().get("y")).intValue();
+            ToolResult toolResult = new ToolResult(result);
+            boolean finished = Allure.step(stepDescription, () -> {
 
-                                    history.add(Content.fromParts(Part.fromText("Check on the next image if the coordinates you tried to use (" + x + "," + y
-                                                                                + ") are where you intendet to act. They are marked with a pink 5x5 square.")));
-                                }
+                attachDebugScreenshot(functionCall, "_00_before_function"); // Debug screenshot
 
-                                result.put("url", Neodymium.getDriver().getCurrentUrl());
+                ToolRegistry.Tool tool = tools.tool(functionCall.name().get());
+                if (tool != null)
+                {
+                    metrics.function(tool.name());
+                    try (RunMetrics.Timer timer = RunMetrics.timer(Phase.ACTION))
+                    {
+                        invokeTool(tool, args, stepDescription, toolResult);
+                    }
+                }
+                else
+                {
+                    result.put("error", "unsupported function");
+                }
 
-                                log.append("\t").append("Result:\n").append(result).append("\n").append("\n");
-                                return testFinishedInsideStep;
-                            });
+                if (functionCall.args().get().containsKey("x") && functionCall.args().get().containsKey("y") && !locatedByCache(result))
+                {
+                    int x = ((Number) functionCall.args().get().get("x")).intValue();
+                    int y = ((Number) functionCall.args().get().get("y")).intValue();
 
-                            Selenide.sleep(1000);
-                            // Capture browser state (as screenshot) to send back to AI
-                            byte[] screenshot = takeScreenshot(functionCall, "_10_after_function");// new
-                            // ByteArrayInputStream(((TakesScreenshot)
-                            // WebDriverRunner.getWebDriver()).getScreenshotAs(OutputType.BYTES)).readAllBytes();
+                    target.add(Content.fromParts(Part.fromText("Check on the next image if the coordinates you tried to use (" + x + "," + y
+                                                                + ") are where you intendet to act. They are marked with a pink 5x5 square.")));
+                }
 
-                            // Add result and new screenshot to history
-                            history.add(Content.fromParts(
-                                                          Part.fromFunctionResponse(functionCall.name().get(), result),
-                                                          Part.fromBytes(screenshot, "image/png"),
-                                                          Part.fromText("Now let's check if that worked and do the next step.")));
+                result.put("url", Neodymium.getDriver().getCurrentUrl());
 
-                        }
-                        catch (IllegalArgumentException e)
-                        {
-                            e.printStackTrace();
-                            // Fallback for illegal responses/hallucinations from API
-                        }
+                log.result(functionCall.name().get(), result);
+                return toolResult.finished();
+            });
 
+            List<Part> responseParts = new ArrayList<>();
+            responseParts.add(Part.fromFunctionResponse(functionCall.name().get(), result));
+
+            EncodedImage zoomed = toolResult.image();
+            if (zoomed != null)
+            {
+                responseParts.add(Part.fromBytes(zoomed.data(), zoomed.mimeType()));
+                if (visualDelta != null)
+                {
+                    visualDelta.imageAdded();
+                }
+            }
+            else
+            {
+                // Wait until the page settled (instead of a fixed sleep)
+                PageStability.waitForStablePage();
+                // Capture browser state (as screenshot) to send back to AI
+                VisualDelta.Frame frame = takeScreenshot(functionCall, "_10_after_function", visualDelta, !locatedByCache(result));
+                if (frame.image() == null)
+                {
+                    responseParts.add(Part.fromText("No visual change since the previous screenshot."));
+                }
+                else
+                {
+                    if (frame.region() != null)
+                    {
+                        Rectangle region = frame.region();
+                        responseParts.add(Part.fromText("Only a part of the page changed since the previous screenshot. The next image shows just the region x="
+                                                        + region.x + ", y=" + region.y + ", width=" + region.width + ", height=" + region.height
+                                                        + ", everything else is unchanged."));
                     }
+                    responseParts.add(Part.fromBytes(frame.image().data(), frame.image().mimeType()));
                 }
             }
-            finally
+            if (AiConfiguration.get().perceptionElementMap())
+            {
+                responseParts.add(Part.fromText("Interactive elements:\n" + ElementMap.list()));
+            }
+            responseParts.add(Part.fromText("Now let's check if that worked and do the next step."));
+
+            // Add result and new screenshot (or the requested zoomed region) to history
+            target.add(Content.fromParts(responseParts.toArray(new Part[0])));
+            return finished;
+        }
+        catch (IllegalArgumentException e)
+        {
+            log.error("Invalid function call " + functionCall.name().orElse(null), e);
+            // Fallback for illegal responses/hallucinations from API
+            return false;
+        }
+    }
+
+    /**
+     * Replays a trace step by step. Before each step the page has to be the one the step started on when it was
+     * recorded and the element it acted on has to be found by its fingerprint, otherwise the replay stops there. The
+     * same goes for verifications, whose value has to be shown on the page again.
+     *
+     * @param trace
+     *            the trace to replay
+     * @return <code>null</code> if the whole trace was replayed and the run ended on the recorded page, otherwise the
+     *         note for the model that takes over
+     */
+    private String replayTrace(ActionTrace trace)
+    {
+        log.info("Replaying trace with " + trace.steps().size() + " steps");
+        StringBuilder done = new StringBuilder();
+        for (int i = 0; i < trace.steps().size(); i++)
+        {
+            TraceStep step = trace.steps().get(i);
+            metrics.nextStep();
+            log.nextStep();
+            metrics.function(step.function());
+            log.replayed(step.function(), step.args());
+            String mismatch = Allure.step(step.description() + " (replayed)", () -> replayStep(step));
+            if (mismatch != null)
+            {
+                log.info("### Trace does not match at step " + (i + 1) + ": " + mismatch + " ###");
+                return "This task was partially executed already by repeating a previous run. These steps are done:\n" + done
+                       + "The next step '" + step.description() + "' could not be repeated: " + mismatch
+                       + ". Continue the task from the current state of the browser, shown on the screenshot, and finish it as usual.";
+            }
+
+            testSteps.add(step.description() + "  (replayed " + step.function() + ")");
+            traceCompiler.add(step);
+            done.append(i + 1).append(". ").append(step.description()).append("\n");
+        }
+
+        PageStability.waitForStablePage();
+        String url = Neodymium.getDriver().getCurrentUrl();
+        if (!trace.endsOn(url))
+        {
+            log.info("Trace ended on " + url + " instead of " + trace.finalUrl());
+            return "This task was executed already by repeating a previous run. These steps are done:\n" + done
+                   + "The run ended on " + url + " instead of " + trace.finalUrl()
+                   + ". Check the current state of the browser, shown on the screenshot, and finish the task as usual.";
+        }
+        return null;
+    }
+
+    /**
+     * Repeats a single step of a trace.
+     *
+     * @param step
+     *            the step
+     * @return <code>null</code> if the step was executed, otherwise why not
+     */
+    private String replayStep(TraceStep step)
+    {
+        PageStability.waitForStablePage();
+        String url = Neodymium.getDriver().getCurrentUrl();
+        if (!step.startsOn(url))
+        {
+            return "the page is " + url + " instead of " + step.url();
+        }
+
+        ToolRegistry.Tool tool = tools.tool(step.function());
+        if (tool == null)
+        {
+            return "the function " + step.function() + " does not exist anymore";
+        }
+
+        if (tool.replay() == AiTool.Replay.VERIFY)
+        {
+            return verify(step);
+        }
+        if (step.element() == null || tool.replay() == AiTool.Replay.CALL)
+        {
+            Map<String, Object> result = new HashMap<>();
+            try (RunMetrics.Timer timer = RunMetrics.timer(Phase.ACTION))
             {
-                Allure.addAttachment("AI Log", log.toString());
+                tool.invoke(this, step.args(), new ToolResult(result));
             }
+            return "error".equals(result.get("status")) ? String.valueOf(result.get("message")) : null;
+        }
+
+        WebElement found = step.element().locate();
+        if (found == null)
+        {
+            return "the element " + step.element().tag() + " '" + step.element().text() + "' was not found";
+        }
+        try (RunMetrics.Timer timer = RunMetrics.timer(Phase.ACTION))
+        {
+            return actOn(found, tool.replay(), step.args());
+        }
+    }
+
+    /**
+     * Repeats a verification of a trace: the value it verified has to be shown on the page again. Verifications without
+     * such a value (e.g. reviews) can only be repeated by the model.
+     *
+     * @param step
+     *            the verification step
+     * @return <code>null</code> if the value is shown, otherwise why the model has to take over
+     */
+    private String verify(TraceStep step)
+    {
+        Object value = step.args().get("actualValue");
+        if (value == null || String.valueOf(value).isBlank())
+        {
+            return "it is a verification, check it again on the current page";
+        }
+        try
+        {
+            $(withText(String.valueOf(value))).shouldBe(visible, Duration.ofMillis(AiConfiguration.get().stabilityTimeout()));
+            return null;
+        }
+        catch (AssertionError e)
+        {
+            return "the verified value '" + value + "' is not shown on the page anymore";
+        }
+    }
+
+    /**
+     * Executes an element action of a tool directly on the given element via Selenide.
+     *
+     * @param found
+     *            the element
+     * @param action
+     *            the kind of action
+     * @param args
+     *            the arguments of the call, providing the text to type
+     * @return <code>null</code> if the action was executed, otherwise why not
+     */
+    private String actOn(WebElement found, AiTool.Replay action, Map<String, Object> args)
+    {
+        try
+        {
+            SelenideElement element = $(found);
+            switch (action)
+            {
+                case HOVER:
+                    element.hover();
+                    break;
+                case TYPE:
+                    element.click();
+                    if (Boolean.TRUE.equals(args.get("clear_before_typing")))
+                    {
+                        element.clear();
+                    }
+                    element.sendKeys(String.valueOf(args.get("text")));
+                    if (Boolean.TRUE.equals(args.get("press_enter")))
+                    {
+                        element.pressEnter();
+                    }
+                    break;
+                case CLICK:
+                default:
+                    element.click();
+                    break;
+            }
+            return null;
+        }
+        catch (RuntimeException e)
+        {
+            return e.getClass().getSimpleName() + ": " + e.getMessage();
+        }
+    }
+
+    /**
+     * Executes a tool. An element action is executed on the element the {@link LocatorCache} remembers for its
+     * description if that element is still there with the same tag and label, no matter where the model aimed, so a
+     * misplaced click needs no correction round trip. Otherwise it is executed as the model asked for. The element an
+     * action acted on is captured before the action changes the page, for the locator cache and the trace.
+     *
+     * @param tool
+     *            the tool
+     * @param args
+     *            the arguments of the call
+     * @param stepDescription
+     *            the description of the step
+     * @param result
+     *            receives the outcome
+     */
+    private void invokeTool(ToolRegistry.Tool tool, Map<String, Object> args, String stepDescription, ToolResult result)
+    {
+        AiTool.Replay action = tool.replay();
+        boolean elementAction = action == AiTool.Replay.CLICK || action == AiTool.Replay.HOVER || action == AiTool.Replay.TYPE;
+        boolean traced = traceCompiler != null && action != AiTool.Replay.SKIP;
+        if (!traced && !(elementAction && locatorCache != null))
+        {
+            tool.invoke(this, args, result);
+            return;
+        }
+
+        String url = Neodymium.getDriver().getCurrentUrl();
+        String cacheKey = elementAction && locatorCache != null ? LocatorCache.key(action.name(), (String) args.get(ToolRegistry.DESCRIPTION), url) : null;
+
+        ElementFingerprint element = cacheKey != null ? locatorCache.get(cacheKey) : null;
+        // a single probe, the cached element is only found if its tag and label still match on this page
+        WebElement cached = element != null ? element.locate() : null;
+        if (cached != null && actOn(cached, action, args) == null)
+        {
+            result.success()
+                  .put("element", element.tag() + " '" + element.text() + "'")
+                  .put("located_by", LOCATED_BY_CACHE)
+                  .put("note", "The action was executed directly on this element, found via the locator cache.");
+        }
+        else
+        {
+            if (element != null)
+            {
+                locatorCache.invalidate(cacheKey);
+            }
+            element = elementAction ? fingerprint(args) : null;
+            tool.invoke(this, args, result);
+        }
+
+        if ("error".equals(result.values().get("status")))
+        {
+            return;
+        }
+        if (cacheKey != null && element != null)
+        {
+            locatorCache.put(cacheKey, element);
+        }
+        if (traced)
+        {
+            traceCompiler.add(new TraceStep(tool.name(), new HashMap<>(args), stepDescription, url, element));
+        }
+    }
+
+    /**
+     * @param result
+     *            the function response
+     * @return whether the action was executed on an element of the {@link LocatorCache} instead of at the coordinates
+     */
+    private static boolean locatedByCache(Map<String, Object> result)
+    {
+        return LOCATED_BY_CACHE.equals(result.get("located_by"));
+    }
+
+    /**
+     * Fingerprints the element an action is going to act on, addressed by coordinates, element id or CSS selector.
+     *
+     * @param args
+     *            the arguments of the call
+     * @return the fingerprint or <code>null</code> if the call does not address a single element
+     */
+    private ElementFingerprint fingerprint(Map<String, Object> args)
+    {
+        if (args.get("x") instanceof Number x && args.get("y") instanceof Number y)
+        {
+            var scaled = new ScaledCoord(x.intValue(), y.intValue()).scaleTo(1000, 1000);
+            return ElementFingerprint.at(scaled.x, scaled.y);
+        }
+        if (args.get("id") instanceof Number id)
+        {
+            return ElementFingerprint.ofId(id.intValue());
+        }
+        if (args.get("selector") instanceof String selector)
+        {
+            return ElementFingerprint.ofSelector(selector);
         }
+        return null;
     }
 
     /***
@@ -410,6 +816,8 @@ public abstract class AbstractAiTest
 
             You get a screenshot for each step. If you try to use any coordinates those will be marked with a pink square on the screenshot.
             If something is not working as expected, search for the pink square and adjust your coordinates accordingly.
+            If the page did not change since the previous screenshot, you get a short text instead. If only a part of the page changed,
+            you get an image of just that region together with its position, everything else looks like on the previous screenshot.
 
             GENERAL RULES:
             1. You are automating, stick to the prompt, don't try around
@@ -427,7 +835,10 @@ public abstract class AbstractAiTest
             4. In the 'finish_test' function give a summary of ALL steps you have done during this test run
             5. If you are asked to use CSS or locator don't use the screenshot but work on the DOM with get_page_content and/or click_element
             6. If something is not working via screenshots get the DOM  via get_page_content function and then use click_element function
-            7. If asked to call a java method, use the java_method function, using exactly the name given in the prompt.
+            7. If asked to call a java method, use the java_method function, using exactly the name given in the prompt. Pass a single argument as parameter and several as parameters, in order.
+            8. If details on the screenshot are too small to read, use the zoom_region function to get a full resolution image of that region.
+            9. If you have to wait for something, use the wait_for function with a condition instead of wait_5_seconds.
+            10. Prefer list_elements and click_id, hover_id or type_id over coordinates and over reading the whole DOM, the ids stay valid until the page navigates.
 
             RULES FOR VALIDATION:
             1. Whenever the user asks you to "check", "verify", "assert", or "validate" a value, you MUST NOT reply with text.
@@ -439,209 +850,440 @@ public abstract class AbstractAiTest
             """;
     }
 
-    /**
-     * Generates the list of available tools (functions) the AI can call. This defines the JSON Schema passed to the
-     * GenAI model.
-     *
-     * @return List of FunctionDeclaration objects.
-     */
-    private List<FunctionDeclaration> generateFunctionDeclarations()
-    {
-        FunctionDeclaration finishTool = FunctionDeclaration.builder()
-                                                            .name("finish_test")
-                                                            .description("Terminates the test session. Call this ONLY when you have completed the objective and validated the result.")
-                                                            .parameters(
-                                                                        Schema.builder()
-                                                                              .type(Type.Known.OBJECT)
-                                                                              .properties(Map.of(
-                                                                                                 "status",
-                                                                                                 Schema.builder().type(Type.Known.STRING)
-                                                                                                       .enum_(List.of("PASS", "FAIL"))
-                                                                                                       .description("The final result of the test").build(),
-                                                                                                 "description",
-                                                                                                 Schema.builder().type(Type.Known.STRING)
-                                                                                                       .description("A very short description of the goal of this function call.")
-                                                                                                       .build(),
-                                                                                                 "summary",
-                                                                                                 Schema.builder().type(Type.Known.STRING)
-                                                                                                       .description("A short summary of what happened")
-                                                                                                       .build()))
-                                                                              .required(List.of("status", "summary", "description"))
-                                                                              .build())
-                                                            .build();
-        FunctionDeclaration getContent = FunctionDeclaration.builder()
-                                                            .name("get_page_content")
-                                                            .description("Retrieves the DOM or page content from the browser.")
-                                                            .parameters(
-                                                                        Schema.builder()
-                                                                              .type(Type.Known.OBJECT)
-                                                                              .properties(Map.of(
-                                                                                                 "description",
-                                                                                                 Schema.builder().type(Type.Known.STRING)
-                                                                                                       .description("A very short description of the goal of this function call.")
-                                                                                                       .build()))
-                                                                              .required(List.of("description"))
-                                                                              .build())
-                                                            .build();
-
-        FunctionDeclaration javaMethod = FunctionDeclaration.builder()
-                                                            .name("java_method")
-                                                            .description("Calls a java method if the prompt demands it.")
-                                                            .parameters(
-                                                                        Schema.builder()
-                                                                              .type(Type.Known.OBJECT)
-                                                                              .properties(Map.of(
-                                                                                                 "name",
-                                                                                                 Schema.builder().type(Type.Known.STRING)
-                                                                                                       .description("The name of the mehtod").build(),
-                                                                                                 "description",
-                                                                                                 Schema.builder().type(Type.Known.STRING)
-                                                                                                       .description("A very short description of the goal of this function call.")
-                                                                                                       .build(),
-                                                                                                 "parameter",
-                                                                                                 Schema.builder().type(Type.Known.STRING)
-                                                                                                       .description("The parameter needed").build()))
-                                                                              .required(List.of("name", "parameter", "description"))
-                                                                              .build())
-                                                            .build();
-
-        FunctionDeclaration validationTool = FunctionDeclaration.builder()
-                                                                .name("report_issue")
-                                                                .description("Call this function ONLY when you have extracted the data and are ready to validate the test result.")
-                                                                .parameters(
-                                                                            Schema.builder()
-                                                                                  .type(Type.Known.OBJECT)
-                                                                                  .properties(Map.of(
-                                                                                                     "actualValue",
-                                                                                                     Schema.builder().type(Type.Known.STRING)
-                                                                                                           .description("The extracted value").build(),
-                                                                                                     "expectedValue",
-                                                                                                     Schema.builder().type(Type.Known.STRING)
-                                                                                                           .description("The expected value").build(),
-                                                                                                     "description",
-                                                                                                     Schema.builder().type(Type.Known.STRING)
-                                                                                                           .description("A very short description of the goal of this function call.")
-                                                                                                           .build(),
-                                                                                                     "errorMessage",
-                                                                                                     Schema.builder().type(Type.Known.STRING)
-                                                                                                           .description("Error details if failing")
-                                                                                                           .build()))
-                                                                                  .required(List.of("errorMessage", "actualValue", "expectedValue",
-                                                                                                    "description"))
-                                                                                  .build())
-                                                                .build();
-
-        FunctionDeclaration reviewTool = FunctionDeclaration.builder()
-                                                            .name("review_step_result")
-                                                            .description("Call this function to either approve or reject a step.")
-                                                            .parameters(
-                                                                        Schema.builder()
-                                                                              .type(Type.Known.OBJECT)
-                                                                              .properties(Map.of(
-                                                                                                 "result",
-                                                                                                 Schema.builder().type(Type.Known.BOOLEAN)
-                                                                                                       .description("The extracted value").build(),
-                                                                                                 "description",
-                                                                                                 Schema.builder().type(Type.Known.STRING)
-                                                                                                       .description("A very short description of the goal of this function call.")
-                                                                                                       .build(),
-                                                                                                 "reason",
-                                                                                                 Schema.builder().type(Type.Known.STRING)
-                                                                                                       .description("The reason why the last step got the according result. Focus on the last step.")
-                                                                                                       .build()))
-                                                                              .required(List.of("result", "reason", "description"))
-                                                                              .build())
-                                                            .build();
-
-        FunctionDeclaration clickElement = FunctionDeclaration.builder()
-                                                              .name("click_element")
-                                                              .description("Extract the matching selector from the DOM and click it.")
-                                                              .parameters(
-                                                                          Schema.builder()
-                                                                                .type(Type.Known.OBJECT)
-                                                                                .properties(Map.of(
-                                                                                                   "description",
-                                                                                                   Schema.builder().type(Type.Known.STRING)
-                                                                                                         .description("A very short description of the goal of this function call.")
-                                                                                                         .build(),
-                                                                                                   "selector",
-                                                                                                   Schema.builder().type(Type.Known.STRING)
-                                                                                                         .description("The css locator for the desired element")
-                                                                                                         .build()))
-                                                                                .required(List.of("selector", "description"))
-                                                                                .build())
-                                                              .build();
-
-        List<FunctionDeclaration> functionDeclarations = List.of(validationTool, finishTool,
-                                                                 javaMethod, reviewTool, clickElement, getContent);
-        return functionDeclarations;
+    // --- TOOLS ---
+    // Every method annotated with @AiTool is a function the model can call, see ToolRegistry. Predefined functions are
+    // the ones of the computer use tool, the model knows them already.
+
+    private record UrlArgs(@Param(description = "The URL to open") String url)
+    {
+    }
+
+    private record CoordinateArgs(@Param(description = "The x coordinate (0-999)") int x,
+                                  @Param(description = "The y coordinate (0-999)") int y)
+    {
+    }
+
+    private record TypeTextArgs(@Param(description = "The text to type") String text,
+                                @Param(description = "The css locator of the element to type into", required = false) String selector)
+    {
+    }
+
+    private record TypeTextAtArgs(@Param(description = "The x coordinate (0-999)") int x,
+                                  @Param(description = "The y coordinate (0-999)") int y,
+                                  @Param(description = "The text to type") String text,
+                                  @Param(name = "clear_before_typing", description = "Replace the current value", required = false) boolean clearBeforeTyping,
+                                  @Param(name = "press_enter", description = "Press enter after typing", required = false) boolean pressEnter)
+    {
+    }
+
+    private record ScrollArgs(@Param(description = "The direction to scroll", values =
+    {
+      "up", "down", "left", "right"
+    }) String direction,
+                              @Param(description = "The distance to scroll in pixels, 800 if omitted", required = false) Integer magnitude)
+    {
+    }
+
+    private record JavaMethodArgs(@Param(description = "The name of the mehtod") String name,
+                                  @Param(description = "The parameter, if the method takes exactly one", required = false) String parameter,
+                                  @Param(description = "All parameters in order, if the method takes several", required = false) List<Object> parameters)
+    {
+    }
+
+    private record FinishArgs(@Param(description = "The final result of the test", values =
+    {
+      "PASS", "FAIL"
+    }) String status,
+                              @Param(description = "A short summary of what happened") String summary)
+    {
+    }
+
+    private record ReviewArgs(@Param(description = "Whether the last step is approved") boolean result,
+                              @Param(description = "The reason why the last step got the according result. Focus on the last step.") String reason)
+    {
+    }
+
+    private record IssueArgs(@Param(description = "The extracted value") String actualValue,
+                             @Param(description = "The expected value") String expectedValue,
+                             @Param(description = "Error details if failing") String errorMessage)
+    {
+    }
+
+    private record SelectorArgs(@Param(description = "The css locator for the desired element") String selector)
+    {
+    }
+
+    private record PageContentArgs(@Param(description = "Set to true to get the full page DOM even if it was retrieved before.", required = false) boolean full)
+    {
+    }
+
+    private record RegionArgs(@Param(description = "The left edge of the region (0-999)") int x,
+                              @Param(description = "The top edge of the region (0-999)") int y,
+                              @Param(description = "The width of the region (1-1000)") int width,
+                              @Param(description = "The height of the region (1-1000)") int height)
+    {
+    }
+
+    private record WaitForArgs(@Param(description = "What to wait for", values =
+    {
+      "text_visible", "selector_visible", "url_matches", "network_idle"
+    }) String condition,
+                               @Param(description = "The text, the CSS selector or the URL regex to wait for. Not needed for network_idle.", required = false) String value,
+                               @Param(name = "timeout_ms", description = "The maximum time to wait in milliseconds, 10000 if omitted. Longer timeouts are capped.", required = false) Long timeoutMs)
+    {
+    }
+
+    private record ElementIdArgs(@Param(description = "The id of the element as returned by list_elements") int id)
+    {
+    }
+
+    private record TypeIdArgs(@Param(description = "The id of the element as returned by list_elements") int id,
+                              @Param(description = "The text to type") String text,
+                              @Param(name = "clear_before_typing", description = "Replace the current value", required = false) boolean clearBeforeTyping,
+                              @Param(name = "press_enter", description = "Press enter after typing", required = false) boolean pressEnter)
+    {
+    }
+
+    @AiTool(name = "open_web_browser", predefined = true, replay = AiTool.Replay.SKIP)
+    private void openWebBrowser(ToolResult result)
+    {
+        result.success();
+    }
+
+    @AiTool(name = "navigate", aliases = "navigate_to_url", predefined = true)
+    private void navigate(UrlArgs args, ToolResult result)
+    {
+        Selenide.open(args.url());
+        result.success();
+    }
+
+    @AiTool(name = "go_back", predefined = true)
+    private void goBack(ToolResult result)
+    {
+        Selenide.back();
+        result.success();
+    }
+
+    @AiTool(name = "click_at", predefined = true, replay = AiTool.Replay.CLICK)
+    private void clickAt(CoordinateArgs args, ToolResult result)
+    {
+        if (scriptActions)
+        {
+            var scaledClick = new ScaledCoord(args.x(), args.y()).scaleTo(1000, 1000);
+            result.putAll(CoordinateActions.click(scaledClick.x, scaledClick.y));
+        }
+        else
+        {
+            clickScaledCoords(args.x(), args.y());
+            result.success();
+        }
+    }
+
+    @AiTool(name = "hover_at", predefined = true, replay = AiTool.Replay.HOVER)
+    private void hoverAt(CoordinateArgs args, ToolResult result)
+    {
+        // always native, synthetic events don't trigger CSS :hover
+        hoverScaledCoords(args.x(), args.y());
+        result.success();
+    }
+
+    @AiTool(name = "type_text", predefined = true, replay = AiTool.Replay.TYPE)
+    private void typeText(TypeTextArgs args, ToolResult result)
+    {
+        if (args.selector() != null)
+        {
+            $(args.selector()).highlight().type(args.text());
+        }
+        else
+        {
+            sendText(args.text()); // Global typing (no specific element)
+        }
+        result.success();
+    }
+
+    @AiTool(name = "type_text_at", predefined = true, replay = AiTool.Replay.TYPE)
+    private void typeTextAt(TypeTextAtArgs args, ToolResult result)
+    {
+        if (scriptActions)
+        {
+            var scaledType = new ScaledCoord(args.x(), args.y()).scaleTo(1000, 1000);
+            result.putAll(CoordinateActions.type(scaledType.x, scaledType.y, args.text(), args.clearBeforeTyping(), args.pressEnter()));
+            return;
+        }
+
+        if (args.clearBeforeTyping())
+        {
+            clearInputScaledCoords(args.x(), args.y());
+        }
+        clickScaledCoords(args.x(), args.y());
+        sendText(args.text());
+        if (args.pressEnter())
+        {
+            Actions actions = new Actions(WebDriverRunner.getWebDriver());
+            actions.sendKeys(Keys.ENTER).perform();
+        }
+        result.success();
+    }
+
+    @AiTool(name = "scroll_document", predefined = true)
+    private void scrollDocument(ScrollArgs args, ToolResult result)
+    {
+        int magnitude = args.magnitude() != null ? args.magnitude() : 800;
+        if ("down".equals(args.direction()))
+        {
+            scroll(0, magnitude);
+        }
+        else if ("up".equals(args.direction()))
+        {
+            scroll(0, -magnitude);
+        }
+        result.success();
+    }
+
+    @AiTool(name = "take_screenshot", predefined = true, replay = AiTool.Replay.SKIP)
+    private void screenshot(ToolResult result)
+    {
+        // the screenshot taken after every function is sent along with this response
+        result.success();
+    }
+
+    @AiTool(name = "wait_5_seconds", predefined = true, replay = AiTool.Replay.SKIP)
+    private void waitFiveSeconds(ToolResult result)
+    {
+        // a fixed wait, as the model expects from the name; wait_for returns as soon as a condition holds
+        try (RunMetrics.Timer timer = RunMetrics.timer(Phase.WAIT))
+        {
+            Selenide.sleep(5000);
+        }
+        result.success();
+    }
+
+    @AiTool(name = "java_method", description = "Calls a java method if the prompt demands it. Returns the value the method returned, if any.")
+    private void javaMethod(JavaMethodArgs args, ToolResult result)
+    {
+        try
+        {
+            Object returned = HelperMethods.of(getClass(), AbstractAiTest.class).invoke(this, args.name(), javaMethodArguments(args));
+            if (returned != null)
+            {
+                result.put("return_value", String.valueOf(returned));
+            }
+            result.success();
+        }
+        catch (IllegalArgumentException e)
+        {
+            result.error(e.getMessage());
+        }
+        catch (Exception | AssertionError e)
+        {
+            result.error(e.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+        catch (Error e)
+        {
+            throw e;
+        }
+        catch (Throwable t)
+        {
+            throw new RuntimeException(t);
+        }
+    }
+
+    private static List<?> javaMethodArguments(JavaMethodArgs args)
+    {
+        if (args.parameters() != null && !args.parameters().isEmpty())
+        {
+            return args.parameters();
+        }
+        return args.parameter() == null ? List.of() : List.of(args.parameter());
+    }
+
+    @AiTool(name = "finish_test", description = "Terminates the test session. Call this ONLY when you have completed the objective and validated the result.", replay = AiTool.Replay.SKIP)
+    private void finishTest(FinishArgs args, ToolResult result)
+    {
+        testSteps.add("Summary: " + args.summary());
+        if (traceCompiler != null)
+        {
+            traceCompiler.finish("PASS".equals(args.status()));
+        }
+        result.finish();
+    }
+
+    @AiTool(name = "review_step_result", description = "Call this function to either approve or reject a step.", replay = AiTool.Replay.VERIFY)
+    private void reviewStepResult(ReviewArgs args, ToolResult result)
+    {
+        testSteps.add("Review: " + (args.result() ? "approved" : "rejected") + " - " + args.reason());
+        result.put("approved", args.result());
+        result.success();
+    }
+
+    @AiTool(name = "report_issue", description = "Call this function ONLY when you have extracted the data and are ready to validate the test result.", replay = AiTool.Replay.VERIFY)
+    private void reportIssue(IssueArgs args, ToolResult result)
+    {
+        // Stops the test and fails immediately via JUnit assertion
+        SelenideAddons.wrapAssertionError(() -> Assertions.assertEquals(args.expectedValue(), args.actualValue(), args.errorMessage()));
+    }
+
+    @AiTool(name = "click_element", description = "Extract the matching selector from the DOM and click it.", replay = AiTool.Replay.CLICK)
+    private void clickElement(SelectorArgs args, ToolResult result)
+    {
+        try
+        {
+            $(args.selector())
+                              .highlight()
+                              .click();
+            result.success();
+        }
+        catch (Exception e)
+        {
+            result.error(e.getMessage());
+        }
+    }
+
+    @AiTool(name = "get_page_content", description = "Retrieves the DOM or page content from the browser. Repeated calls on the same page only return what changed since the previous call.", replay = AiTool.Replay.SKIP)
+    private void pageContent(PageContentArgs args, ToolResult result)
+    {
+        String cleanedDom = getPageContent(args.full());
+        ArtifactWriter.attach("DOM Content", "text/html", ".html", cleanedDom.getBytes(StandardCharsets.UTF_8));
+
+        result.put("content", Part.fromText(cleanedDom));
+    }
+
+    @AiTool(name = "zoom_region", description = "Returns a full resolution image of a region of the current viewport. Use it if details on the screenshot are too small to read.", replay = AiTool.Replay.SKIP)
+    private void zoomRegion(RegionArgs args, ToolResult result)
+    {
+        result.image(ScreenshotMarker.takeRegionScreenshot(args.x(), args.y(), args.width(), args.height()));
+        result.success();
+    }
+
+    @AiTool(name = "wait_for", description = "Waits until a condition holds and returns as soon as it does. Use this instead of wait_5_seconds.")
+    private void waitForCondition(WaitForArgs args, ToolResult result)
+    {
+        long waitTimeout = Math.min(args.timeoutMs() != null ? Math.max(0, args.timeoutMs()) : 10_000, AiConfiguration.get().waitMaxTimeout());
+        long waitStart = System.currentTimeMillis();
+        boolean conditionMet = waitFor(args.condition(), args.value(), waitTimeout);
+        result.put("waited_ms", System.currentTimeMillis() - waitStart);
+        result.put("status", conditionMet ? "success" : "timeout");
+    }
+
+    @AiTool(name = "list_elements", description = "Lists the visible interactive elements of the current viewport as [id] role \"label\" with position and size. "
+                                                  + "Use the ids with click_id, hover_id and type_id.", replay = AiTool.Replay.SKIP)
+    private void listElements(ToolResult result)
+    {
+        result.put("elements", ElementMap.list());
+        result.success();
+    }
+
+    @AiTool(name = "click_id", description = "Clicks the element with the given id from list_elements.", replay = AiTool.Replay.CLICK)
+    private void clickId(ElementIdArgs args, ToolResult result)
+    {
+        result.putAll(ElementMap.click(args.id()));
+    }
+
+    @AiTool(name = "hover_id", description = "Moves the mouse over the element with the given id from list_elements.", replay = AiTool.Replay.HOVER)
+    private void hoverId(ElementIdArgs args, ToolResult result)
+    {
+        result.putAll(ElementMap.hover(args.id()));
+    }
+
+    @AiTool(name = "type_id", description = "Clicks the element with the given id from list_elements and types the text.", replay = AiTool.Replay.TYPE)
+    private void typeId(TypeIdArgs args, ToolResult result)
+    {
+        result.putAll(ElementMap.type(args.id(), args.text(), args.clearBeforeTyping(), args.pressEnter()));
     }
 
     /**
-     * Extracts the DOM, cleans it using Jsoup, and truncates it if necessary. This reduces token usage for the AI and
-     * removes non-interactive elements (script, style, svg).
+     * Extracts the DOM, cleans it and truncates it to the configured size, see {@link DomCleaner}. This reduces token
+     * usage for the AI and removes non-interactive and hidden elements (script, style, svg).
      *
      * @return A string containing the cleaned HTML DOM.
      */
     public String getCleanedDom()
     {
-        String rawHtml = Selenide.executeJavaScript("return document.documentElement.outerHTML;");
-        Document doc = Jsoup.parse(rawHtml);
-
-        // Remove heavy elements that don't aid selector logic
-        doc.select("script, style, svg, noscript, meta").remove();
-
-        // Optional: remove hidden elements if you only want visible interaction
-        doc.select("[style*='display: none']").remove();
-
-        String pageContent = doc.html();
-
-        // // Limit size to avoid context window overflow
-        // if (pageContent.length() > 20000)
-        // {
-        // pageContent = pageContent.substring(0, 20000);
-        // }
+        String pageContent = DomCleaner.cleanedDom();
 
         String domContent = "Current Page DOM:\n" + pageContent;
         return domContent;
     }
 
     /**
-     * Create a debugging screenshot with a marker at the clicked location. NOTE: These are NOT sent to the AI, but
-     * saved locally for human debugging.
-     * 
-     * @param functionCall
-     *            The function call containing coordinates (if any).
-     * @return
+     * Returns the DOM for the get_page_content function. If the model already got the DOM of the current document,
+     * only the elements that changed since then are returned (see {@link DomCleaner#snapshot(boolean)}).
+     *
+     * @param full
+     *            <code>true</code> if the model explicitly asked for the full page
+     * @return the cleaned DOM or the changes
      */
-    private byte[] takeScreenshot(FunctionCall functionCall)
+    private String getPageContent(boolean full)
     {
-        return takeScreenshot(functionCall, "");
+        return DomCleaner.snapshot(full).describe();
     }
 
     /**
-     * Create a debugging screenshot with a marker.
+     * Attach a debugging screenshot with a marker. The screenshot captured while waiting for the model is used if there
+     * is one, marking and encoding happen in the background.
      * 
      * @param functionCall
      *            The function call containing coordinates.
      * @param additionalMessage
      *            Suffix for the filename.
-     * @return
      */
-    private byte[] takeScreenshot(FunctionCall functionCall, String additionalMessage)
+    private void attachDebugScreenshot(FunctionCall functionCall, String additionalMessage)
     {
+        byte[] png = prefetchedScreenshot != null ? prefetchedScreenshot : ScreenshotMarker.capture();
+        prefetchedScreenshot = null;
+
+        int x = -1;
+        int y = -1;
         if (functionCall.args().get().containsKey("x") && functionCall.args().get().containsKey("y"))
         {
-            int x = ((Number) functionCall.args().get().get("x")).intValue();
-            int y = ((Number) functionCall.args().get().get("y")).intValue();
-
             // Map AI coordinates (usually 1000x1000 relative) to screen coordinates
-            var scaled = new ScaledCoord(x, y).scaleTo(1000, 1000);
+            var scaled = new ScaledCoord(((Number) functionCall.args().get().get("x")).intValue(),
+                                         ((Number) functionCall.args().get().get("y")).intValue()).scaleTo(1000, 1000);
+            x = scaled.x;
+            y = scaled.y;
+        }
+
+        ScreenshotMarker.attachScreenshotWithMarker(png, x, y, functionCall.name().get() + additionalMessage);
+    }
+
+    /**
+     * Speculative browser work while the model is thinking. Nothing touches the page while waiting for the model, so
+     * the screenshot captured now shows the state the first function call of the response starts from.
+     */
+    private void prefetchStepState()
+    {
+        prefetchedScreenshot = ScreenshotMarker.capture();
+        // make sure coordinate mapping does not need another round trip once the function calls arrive
+        ViewportGeometry.of(Neodymium.getDriver()).width();
+    }
 
-            return ScreenshotMarker.takeScreenshotWithMarker(scaled.x, scaled.y, functionCall.name().get() + additionalMessage);
+    /**
+     * Create a screenshot with a marker for the model, reduced to what changed since the previous one.
+     * 
+     * @param functionCall
+     *            The function call containing coordinates.
+     * @param additionalMessage
+     *            Suffix for the filename.
+     * @param visualDelta
+     *            The change detection of this test or <code>null</code> to always send the full screenshot.
+     * @param mark
+     *            Whether the coordinates of the call are marked, not if the action was executed elsewhere.
+     * @return the frame for the model
+     */
+    private VisualDelta.Frame takeScreenshot(FunctionCall functionCall, String additionalMessage, VisualDelta visualDelta, boolean mark)
+    {
+        int x = -1;
+        int y = -1;
+        if (mark && functionCall.args().get().containsKey("x") && functionCall.args().get().containsKey("y"))
+        {
+            // Map AI coordinates (usually 1000x1000 relative) to screen coordinates
+            var scaled = new ScaledCoord(((Number) functionCall.args().get().get("x")).intValue(),
+                                         ((Number) functionCall.args().get().get("y")).intValue()).scaleTo(1000, 1000);
+            x = scaled.x;
+            y = scaled.y;
         }
 
-        return ScreenshotMarker.takeScreenshotWithMarker(-1, -1, functionCall.name().get() + additionalMessage);
+        return ScreenshotMarker.takeScreenshotWithMarker(x, y, functionCall.name().get() + additionalMessage, visualDelta);
     }
 
     /**
@@ -671,7 +1313,7 @@ public abstract class AbstractAiTest
         }
         else
         {
-            System.out.println("Skipped clearing element: " + element.getTagName());
+            log.debug("Skipped clearing element: " + element.getTagName());
         }
     }
 
@@ -714,6 +1356,48 @@ public abstract class AbstractAiTest
 
             window.setSize(new Dimension(newW, newH));
         }
+
+        // the cached viewport size is outdated after a resize
+        ViewportGeometry.of(Neodymium.getDriver()).invalidate();
+    }
+
+    /**
+     * Waits until the given condition holds, but not longer than the timeout.
+     *
+     * @param condition
+     *            one of text_visible, selector_visible, url_matches or network_idle
+     * @param value
+     *            the text, CSS selector or URL regex to wait for, ignored for network_idle
+     * @param timeout
+     *            the maximum time to wait in milliseconds
+     * @return <code>true</code> if the condition holds, <code>false</code> if the timeout was reached
+     */
+    private boolean waitFor(String condition, String value, long timeout)
+    {
+        Duration duration = Duration.ofMillis(timeout);
+        try
+        {
+            switch (condition)
+            {
+                case "text_visible":
+                    $(withText(value)).shouldBe(visible, duration);
+                    return true;
+                case "selector_visible":
+                    $(value).shouldBe(visible, duration);
+                    return true;
+                case "url_matches":
+                    Selenide.Wait().withTimeout(duration).until(ExpectedConditions.urlMatches(value));
+                    return true;
+                case "network_idle":
+                    return PageStability.waitForStablePage(AiConfiguration.get().stabilityQuietPeriod(), timeout).settled();
+                default:
+                    throw new IllegalArgumentException("Unknown wait condition: " + condition);
+            }
+        }
+        catch (AssertionError | TimeoutException | ScriptTimeoutException e)
+        {
+            return false;
+        }
     }
 
     private void scroll(int x, int y)
@@ -770,97 +1454,90 @@ public abstract class AbstractAiTest
 
     /**
      * Record to handle coordinate scaling from the AI's relative space (usually 1000x1000) to the actual browser
-     * viewport dimensions.
+     * viewport dimensions. The viewport size comes from the {@link ViewportGeometry} cache of the session.
      */
     private record ScaledCoord(int x, int y)
     {
         ScaledCoord scaleTo(int width, int height)
         {
-            JavascriptExecutor js = (JavascriptExecutor) Neodymium.getDriver();
-            long innerWidth = (Long) js.executeScript("return window.innerWidth;");
-            long innerHeight = (Long) js.executeScript("return window.innerHeight;");
+            ViewportGeometry viewport = ViewportGeometry.of(Neodymium.getDriver());
+            long innerWidth = viewport.width();
+            long innerHeight = viewport.height();
 
             return new ScaledCoord((int) Math.round(((double) this.x / width) * innerWidth), (int) Math.round(((double) this.y / height) * innerHeight));
         }
     }
 
     /**
-     * Invokes a method on the current test class instance via Reflection. Allows the AI to trigger specific Java helper
-     * methods defined in subclasses. * @param methodName Name of the method to call.
-     * 
+     * Invokes a helper method on the current test class instance, see {@link HelperMethods}. Allows the AI to trigger
+     * specific Java helper methods defined in subclasses.
+     *
+     * @param methodName
+     *            Name of the method to call.
      * @param parameterValue
      *            The single String parameter to pass.
      * @return The result of the method call, or null if failed.
      */
     public Object runMethodWithReflection(String methodName, String parameterValue)
     {
-        Class<?> currentClass = this.getClass();
-
         try
         {
-            Method method = currentClass.getMethod(methodName, String.class);
-            Object result = method.invoke(this, parameterValue);
-            return result;
-        }
-        catch (NoSuchMethodException e)
-        {
-            System.err.println("Error: Method '" + methodName + "' with a single String parameter not found.");
-            e.printStackTrace();
+            return HelperMethods.of(getClass(), AbstractAiTest.class)
+                                .invoke(this, methodName, parameterValue == null ? List.of() : List.of(parameterValue));
         }
-        catch (IllegalAccessException e)
+        catch (IllegalArgumentException e)
         {
-            System.err.println("Error: Cannot access method (e.g., it might be private or protected).");
-            e.printStackTrace();
+            log.error(e.getMessage(), null);
         }
-        catch (InvocationTargetException e)
+        catch (Throwable t)
         {
-            System.err.println("Error: The invoked method threw an exception.");
-            e.printStackTrace();
+            log.error("The invoked method " + methodName + " threw an exception", t);
         }
 
         return null;
     }
 
     /**
-     * Make sure we don't run out of tokens
+     * Creates the policy used to shrink the history once it exceeds the token limit. Override to plug in a custom
+     * policy.
+     *
+     * @return the policy configured via {@link AiConfiguration#historyEvictionPolicy()}
+     */
+    protected HistoryEvictionPolicy historyEvictionPolicy()
+    {
+        switch (AiConfiguration.get().historyEvictionPolicy())
+        {
+            case OLDEST_TURN:
+                return new OldestTurnEvictionPolicy();
+            case IMAGE_FIRST:
+            default:
+                return new ImageFirstEvictionPolicy(AiConfiguration.get().keepRecentImages(), AiConfiguration.get().downsampleImages());
+        }
+    }
+
+    /**
+     * Make sure we don't run out of tokens, see {@link ConversationHistory#prune}. System instruction and tools are
+     * sent with every request, their precomputed share is reserved up front.
      * 
-     * @param client
+     * @param backend
      * @param history
      * @param modelName
-     * @param functionDeclarations
-     * @param systemPromot
+     * @param template
      */
-    private void manageHistory(Client client, List<Content> history, String modelName, List<FunctionDeclaration> functionDeclarations,
-                                      Content systemPromot)
+    private void manageHistory(ModelBackend backend, ConversationHistory history, String modelName, RequestTemplate template)
     {
+        final long remoteCountThreshold = Math.round(TOKEN_LIMIT * AiConfiguration.get().remoteTokenCountThreshold());
+        final long fixedTokens = template.fixedTokens();
 
-        while (true)
+        int evictions = history.prune(historyEvictionPolicy(), backend, modelName, fixedTokens, TOKEN_LIMIT, remoteCountThreshold);
+        if (evictions > 0)
         {
-            CountTokensResponse response = client.models.countTokens(
-                                                                     modelName,
-                                                                     history,
-                                                                     null);
-
-            long currentTokens = response.totalTokens().get();
-            System.out.println("Current Tokens: " + currentTokens + " / " + TOKEN_LIMIT);
-
-            if (currentTokens <= TOKEN_LIMIT)
-            {
-                break;
-            }
-
-            // Prune logic
-            if (history.size() > 3)
-            {
-                System.out.println("✂️ Pruning history...");
-                history.remove(1); // Remove oldest Model response
-                history.remove(1); // Remove oldest Tool response
-            }
-            else
-            {
-                System.err.println("⚠️ History cannot be pruned further.");
-                break;
-            }
+            log.debug("✂️ Pruned history, " + evictions + " evictions");
+        }
+        else if (evictions < 0)
+        {
+            log.error("⚠️ History cannot be pruned further.", null);
         }
+        log.debug("Estimated Tokens: " + (history.estimatedTokens() + fixedTokens) + " / " + TOKEN_LIMIT);
     }
 }
@@ -0,0 +1,75 @@
+package com.xceptance.neodymium.ai.tool;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method of the test class as a function the model can call.
+ * <p>
+ * The method takes a {@link ToolResult} as last parameter and optionally a record with the arguments before it. The
+ * record components are bound from the arguments of the function call and described via {@link Param}, the schema sent
+ * to the model is generated from them, see {@link ToolRegistry}. Subclasses add tools by annotating their own methods
+ * and replace tools by using the same name.
+ * </p>
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface AiTool
+{
+    /**
+     * @return the function name the model uses
+     */
+    String name();
+
+    /**
+     * @return further names the model might use for the same function
+     */
+    String[] aliases() default {};
+
+    /**
+     * @return what the function does, sent to the model
+     */
+    String description() default "";
+
+    /**
+     * @return <code>true</code> for functions the model already knows (e.g. the computer use functions), those are
+     *         executed but not declared
+     */
+    boolean predefined() default false;
+
+    /**
+     * @return how a call of the function is repeated when a recorded trace is replayed
+     */
+    Replay replay() default Replay.CALL;
+
+    /**
+     * How a call is repeated when a recorded trace is replayed, see {@link com.xceptance.neodymium.ai.trace.ActionTrace}.
+     */
+    enum Replay
+    {
+        /** Not repeated and not recorded, the function only observes the page or talks to the model. */
+        SKIP,
+
+        /** The function is called again with the recorded arguments. */
+        CALL,
+
+        /** Clicks the element the call acted on, found again by its fingerprint. */
+        CLICK,
+
+        /** Moves the mouse over the element the call acted on. */
+        HOVER,
+
+        /** Types the recorded text into the element the call acted on. */
+        TYPE,
+
+        /**
+         * A verification. If the call recorded the value it verified (its <code>actualValue</code> argument), the value
+         * has to be shown on the page again, otherwise the model takes over to check it anew.
+         */
+        VERIFY
+    }
+}
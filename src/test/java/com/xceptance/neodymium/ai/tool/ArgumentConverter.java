@@ -0,0 +1,102 @@
+package com.xceptance.neodymium.ai.tool;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Converts argument values as sent by the model (JSON numbers, booleans and strings) to Java types. The model is not
+ * strict about types, so numbers and booleans are also accepted as strings.
+ */
+final class ArgumentConverter
+{
+    private ArgumentConverter()
+    {
+    }
+
+    /**
+     * @param type
+     *            the target type
+     * @return whether there is a converter for the type
+     */
+    static boolean supports(Class<?> type)
+    {
+        return type == String.class || type.isPrimitive() && type != char.class && type != byte.class && type != short.class && type != float.class
+               || type == Integer.class || type == Long.class || type == Double.class || type == Boolean.class || type.isEnum()
+               || type == Object.class || type == Map.class || type == List.class;
+    }
+
+    /**
+     * Creates the converter for the given type, <code>null</code> becomes the default value of primitives.
+     *
+     * @param type
+     *            the target type
+     * @return the converter
+     * @throws IllegalStateException
+     *             if the type is not supported
+     */
+    @SuppressWarnings(
+    {
+      "unchecked", "rawtypes"
+    })
+    static Function<Object, Object> of(Class<?> type)
+    {
+        if (type == String.class)
+        {
+            return value -> value == null ? null : value.toString();
+        }
+        if (type == int.class)
+        {
+            return value -> value == null ? 0 : number(value).intValue();
+        }
+        if (type == Integer.class)
+        {
+            return value -> value == null ? null : number(value).intValue();
+        }
+        if (type == long.class)
+        {
+            return value -> value == null ? 0L : number(value).longValue();
+        }
+        if (type == Long.class)
+        {
+            return value -> value == null ? null : number(value).longValue();
+        }
+        if (type == double.class)
+        {
+            return value -> value == null ? 0d : number(value).doubleValue();
+        }
+        if (type == Double.class)
+        {
+            return value -> value == null ? null : number(value).doubleValue();
+        }
+        if (type == boolean.class)
+        {
+            return value -> value == null ? false : bool(value);
+        }
+        if (type == Boolean.class)
+        {
+            return value -> value == null ? null : bool(value);
+        }
+        if (type.isEnum())
+        {
+            return value -> value == null ? null : Enum.valueOf((Class<? extends Enum>) type, value.toString().toUpperCase(Locale.ROOT));
+        }
+        if (type == Object.class || type == Map.class || type == List.class)
+        {
+            return value -> value;
+        }
+        throw new IllegalStateException("Unsupported argument type " + type);
+    }
+
+    private static Number number(Object value)
+    {
+        return value instanceof Number number ? number : new BigDecimal(value.toString().trim());
+    }
+
+    private static boolean bool(Object value)
+    {
+        return value instanceof Boolean bool ? bool : Boolean.parseBoolean(value.toString().trim());
+    }
+}
@@ -0,0 +1,108 @@
+package com.xceptance.neodymium.ai.tool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+public class ArgumentConverterTest
+{
+    @Test
+    public void supportsJsonLikeTypes()
+    {
+        for (Class<?> type : List.of(String.class, int.class, Integer.class, long.class, Long.class, double.class, Double.class, boolean.class,
+                                     Boolean.class, Direction.class, Object.class, Map.class, List.class))
+        {
+            assertTrue(ArgumentConverter.supports(type), type.getName());
+        }
+        for (Class<?> type : List.of(char.class, byte.class, short.class, float.class, Float.class, Character.class, Set.class, int[].class))
+        {
+            assertFalse(ArgumentConverter.supports(type), type.getName());
+        }
+    }
+
+    @Test
+    public void convertsNumbersAndNumbersInStrings()
+    {
+        assertEquals(12, ArgumentConverter.of(int.class).apply(12));
+        assertEquals(12, ArgumentConverter.of(int.class).apply(12.0));
+        assertEquals(7, ArgumentConverter.of(Integer.class).apply(" 7 "));
+        assertEquals(12, ArgumentConverter.of(int.class).apply("12.7"));
+        assertEquals(10_000_000_000L, ArgumentConverter.of(long.class).apply("10000000000"));
+        assertEquals(3L, ArgumentConverter.of(Long.class).apply(3));
+        assertEquals(0.5, ArgumentConverter.of(double.class).apply("0.5"));
+        assertEquals(2.0, ArgumentConverter.of(Double.class).apply(2));
+
+        assertThrows(NumberFormatException.class, () -> ArgumentConverter.of(int.class).apply("many"));
+    }
+
+    @Test
+    public void convertsBooleansAndBooleansInStrings()
+    {
+        assertEquals(true, ArgumentConverter.of(boolean.class).apply(true));
+        assertEquals(true, ArgumentConverter.of(boolean.class).apply(" TRUE "));
+        assertEquals(false, ArgumentConverter.of(Boolean.class).apply("false"));
+        assertEquals(false, ArgumentConverter.of(boolean.class).apply("yes"));
+    }
+
+    @Test
+    public void convertsEnumsIgnoringCase()
+    {
+        assertEquals(Direction.DOWN, ArgumentConverter.of(Direction.class).apply("down"));
+        assertEquals(Direction.UP, ArgumentConverter.of(Direction.class).apply("Up"));
+
+        assertThrows(IllegalArgumentException.class, () -> ArgumentConverter.of(Direction.class).apply("left"));
+    }
+
+    @Test
+    public void convertsAnythingToString()
+    {
+        assertEquals("12", ArgumentConverter.of(String.class).apply(12));
+        assertEquals("dress", ArgumentConverter.of(String.class).apply("dress"));
+    }
+
+    @Test
+    public void passesStructuredValuesOn()
+    {
+        Map<String, Object> map = Map.of("a", 1);
+        List<String> list = List.of("a");
+
+        assertSame(map, ArgumentConverter.of(Map.class).apply(map));
+        assertSame(list, ArgumentConverter.of(List.class).apply(list));
+        assertSame(list, ArgumentConverter.of(Object.class).apply(list));
+    }
+
+    @Test
+    public void nullBecomesTheDefaultOfPrimitives()
+    {
+        assertEquals(0, ArgumentConverter.of(int.class).apply(null));
+        assertEquals(0L, ArgumentConverter.of(long.class).apply(null));
+        assertEquals(0d, ArgumentConverter.of(double.class).apply(null));
+        assertEquals(false, ArgumentConverter.of(boolean.class).apply(null));
+
+        for (Class<?> type : List.of(String.class, Integer.class, Long.class, Double.class, Boolean.class, Direction.class, Object.class))
+        {
+            assertNull(ArgumentConverter.of(type).apply(null), type.getName());
+        }
+    }
+
+    @Test
+    public void rejectsUnsupportedTypes()
+    {
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> ArgumentConverter.of(float.class));
+        assertTrue(e.getMessage().contains("float"));
+    }
+
+    enum Direction
+    {
+        UP, DOWN
+    }
+}
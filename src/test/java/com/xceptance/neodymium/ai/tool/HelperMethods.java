@@ -0,0 +1,208 @@
+package com.xceptance.neodymium.ai.tool;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * The Java helper methods of a test class the model may call via the <code>java_method</code> function, scanned once
+ * per class and JVM.
+ * <p>
+ * Eligible are public instance methods without annotations (which rules out test and lifecycle methods), declared in
+ * the test class or a super class below the given base class, whose parameters are all of a type the model can pass
+ * (strings, numbers, booleans, enums). Overrides of public methods of the base class or of {@link Object} (e.g.
+ * <code>toString</code>) are not helpers. Each method is resolved to a {@link MethodHandle} taking the test instance
+ * and an argument array, and a converter per parameter is prepared. Overloads are told apart by their number of
+ * parameters, the number of arguments has to match exactly.
+ * </p>
+ */
+public final class HelperMethods
+{
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+
+    private static final Map<Class<?>, HelperMethods> CACHE = new ConcurrentHashMap<>();
+
+    /** Name to the overloads, sorted by their number of parameters. */
+    private final Map<String, TreeMap<Integer, Helper>> helpers = new HashMap<>();
+
+    private HelperMethods(Class<?> testClass, Class<?> baseClass)
+    {
+        if (!baseClass.isAssignableFrom(testClass))
+        {
+            throw new IllegalArgumentException(testClass.getName() + " does not extend " + baseClass.getName());
+        }
+
+        for (Class<?> type = testClass; type != baseClass; type = type.getSuperclass())
+        {
+            Method[] methods = type.getDeclaredMethods();
+            Arrays.sort(methods, Comparator.comparing(Method::getName));
+            for (Method method : methods)
+            {
+                if (eligible(method, baseClass))
+                {
+                    // the most specific declaration wins
+                    helpers.computeIfAbsent(method.getName(), name -> new TreeMap<>()).putIfAbsent(method.getParameterCount(), new Helper(method));
+                }
+            }
+        }
+    }
+
+    /**
+     * @param testClass
+     *            the test class
+     * @param baseClass
+     *            the class whose own methods are not offered (the agent base class)
+     * @return the helper methods of the test class
+     */
+    public static HelperMethods of(Class<?> testClass, Class<?> baseClass)
+    {
+        return CACHE.computeIfAbsent(testClass, type -> new HelperMethods(type, baseClass));
+    }
+
+    private static boolean eligible(Method method, Class<?> baseClass)
+    {
+        int modifiers = method.getModifiers();
+        if (!Modifier.isPublic(modifiers) || Modifier.isStatic(modifiers) || method.isSynthetic() || method.isBridge()
+            || method.getDeclaredAnnotations().length > 0 || overrides(method, baseClass))
+        {
+            return false;
+        }
+        for (Class<?> type : method.getParameterTypes())
+        {
+            if (!ArgumentConverter.supports(type) || type == Object.class || type == Map.class || type == List.class)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return <code>true</code> if the method overrides a public method of the base class or of {@link Object}
+     */
+    private static boolean overrides(Method method, Class<?> baseClass)
+    {
+        try
+        {
+            baseClass.getMethod(method.getName(), method.getParameterTypes());
+            return true;
+        }
+        catch (NoSuchMethodException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Calls a helper method.
+     *
+     * @param target
+     *            the test instance
+     * @param name
+     *            the method name
+     * @param arguments
+     *            the arguments as sent by the model, converted to the parameter types
+     * @return the value the method returned, <code>null</code> for void methods
+     * @throws IllegalArgumentException
+     *             if there is no such method with exactly this number of parameters or the arguments don't fit
+     * @throws Throwable
+     *             whatever the method throws
+     */
+    public Object invoke(Object target, String name, List<?> arguments) throws Throwable
+    {
+        TreeMap<Integer, Helper> overloads = helpers.get(name);
+        Helper helper = overloads == null ? null : overloads.get(arguments.size());
+        if (helper == null)
+        {
+            throw new IllegalArgumentException("No method " + name + " taking " + arguments.size() + " arguments. Available: " + signatures());
+        }
+        return helper.invoke(target, arguments);
+    }
+
+    /**
+     * @return the signatures of all helper methods, e.g. <code>addToCart(String)</code>
+     */
+    public List<String> signatures()
+    {
+        List<String> signatures = new ArrayList<>();
+        for (TreeMap<Integer, Helper> overloads : helpers.values())
+        {
+            for (Helper helper : overloads.values())
+            {
+                signatures.add(helper.signature);
+            }
+        }
+        signatures.sort(null);
+        return signatures;
+    }
+
+    /**
+     * A single helper method with its handle and parameter converters.
+     */
+    private static final class Helper
+    {
+        private final String signature;
+
+        private final boolean returnsVoid;
+
+        private final List<Function<Object, Object>> converters = new ArrayList<>();
+
+        private final MethodHandle invoker;
+
+        private Helper(Method method)
+        {
+            this.signature = method.getName() + Arrays.stream(method.getParameterTypes())
+                                                      .map(Class::getSimpleName)
+                                                      .collect(Collectors.joining(", ", "(", ")"));
+            this.returnsVoid = method.getReturnType() == void.class;
+            for (Class<?> type : method.getParameterTypes())
+            {
+                converters.add(ArgumentConverter.of(type));
+            }
+
+            try
+            {
+                this.invoker = MethodHandles.privateLookupIn(method.getDeclaringClass(), MethodHandles.lookup())
+                                            .unreflect(method)
+                                            .asSpreader(Object[].class, method.getParameterCount())
+                                            .asType(INVOKER_TYPE);
+            }
+            catch (IllegalAccessException e)
+            {
+                throw new IllegalStateException("Can't access helper method " + method, e);
+            }
+        }
+
+        private Object invoke(Object target, List<?> arguments) throws Throwable
+        {
+            Object[] values = new Object[converters.size()];
+            for (int i = 0; i < values.length; i++)
+            {
+                Object value = arguments.get(i);
+                try
+                {
+                    values[i] = converters.get(i).apply(value);
+                }
+                catch (RuntimeException e)
+                {
+                    throw new IllegalArgumentException("Argument " + (i + 1) + " of " + signature + " has an invalid value '" + value + "'", e);
+                }
+            }
+
+            Object result = (Object) invoker.invokeExact(target, values);
+            return returnsVoid ? null : result;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.xceptance.neodymium.ai.tool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class HelperMethodsTest
+{
+    private final HelperMethods helpers = HelperMethods.of(Shop.class, Agent.class);
+
+    @Test
+    public void offersOnlyTheHelpersOfTheTestClass()
+    {
+        assertEquals(List.of("addToCart(String)", "addToCart(String, int)", "checkout()", "openCategory(String)", "price(String, boolean)"),
+                     helpers.signatures());
+    }
+
+    @Test
+    public void isScannedOncePerClass()
+    {
+        assertSame(helpers, HelperMethods.of(Shop.class, Agent.class));
+    }
+
+    @Test
+    public void selectsTheOverloadByTheNumberOfArguments() throws Throwable
+    {
+        assertEquals("1 x Dinosaur", helpers.invoke(new Shop(), "addToCart", List.of("Dinosaur")));
+        assertEquals("3 x Lion", helpers.invoke(new Shop(), "addToCart", List.of("Lion", 3)));
+    }
+
+    @Test
+    public void rejectsAnyOtherNumberOfArguments()
+    {
+        IllegalArgumentException tooMany = assertThrows(IllegalArgumentException.class,
+                                                        () -> helpers.invoke(new Shop(), "addToCart", List.of("Lion", 3, "gift")));
+        assertTrue(tooMany.getMessage().contains("No method addToCart taking 3 arguments"));
+        assertTrue(tooMany.getMessage().contains("addToCart(String, int)"));
+
+        // optional parameters are not padded with defaults
+        assertThrows(IllegalArgumentException.class, () -> helpers.invoke(new Shop(), "price", List.of("Lion")));
+    }
+
+    @Test
+    public void rejectsUnknownMethods()
+    {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> helpers.invoke(new Shop(), "deleteAccount", List.of()));
+        assertTrue(e.getMessage().contains("checkout()"));
+    }
+
+    @Test
+    public void convertsTheArguments() throws Throwable
+    {
+        assertEquals("2 x Lion", helpers.invoke(new Shop(), "addToCart", List.of("Lion", "2")));
+        assertEquals("Lion: 23.98", helpers.invoke(new Shop(), "price", List.of("Lion", "true")));
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                                                  () -> helpers.invoke(new Shop(), "addToCart", List.of("Lion", "many")));
+        assertTrue(e.getMessage().contains("Argument 2 of addToCart(String, int)"));
+    }
+
+    @Test
+    public void voidMethodsReturnNull() throws Throwable
+    {
+        Shop shop = new Shop();
+
+        assertNull(helpers.invoke(shop, "openCategory", List.of("Animals")));
+        assertEquals("Animals", shop.category);
+    }
+
+    @Test
+    public void passesOnWhatTheMethodThrows()
+    {
+        assertThrows(IOException.class, () -> helpers.invoke(new Shop(), "checkout", List.of()));
+    }
+
+    @Test
+    public void rejectsClassesOutsideOfTheBaseClass()
+    {
+        assertThrows(IllegalArgumentException.class, () -> HelperMethods.of(Unrelated.class, Agent.class));
+    }
+
+    static class Agent
+    {
+        public String screenshot()
+        {
+            return "base";
+        }
+
+        public void log(String message)
+        {
+        }
+    }
+
+    static class Catalog extends Agent
+    {
+        String category;
+
+        public void openCategory(String name)
+        {
+            category = name;
+        }
+    }
+
+    public static class Shop extends Catalog
+    {
+        public String addToCart(String product)
+        {
+            return addToCart(product, 1);
+        }
+
+        public String addToCart(String product, int count)
+        {
+            return count + " x " + product;
+        }
+
+        public String price(String product, boolean withTax)
+        {
+            return product + ": " + (withTax ? "23.98" : "19.98");
+        }
+
+        public void checkout() throws IOException
+        {
+            throw new IOException("payment declined");
+        }
+
+        /** Overrides of the base class are part of the agent, not helpers. */
+        @Override
+        public String screenshot()
+        {
+            return "shop";
+        }
+
+        /** Same for overrides of {@link Object}, even without the annotation. */
+        public String toString()
+        {
+            return "Shop";
+        }
+
+        @Override
+        public boolean equals(Object other)
+        {
+            return other instanceof Shop;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 1;
+        }
+
+        @Deprecated
+        public void annotated()
+        {
+        }
+
+        public void remember(List<String> products)
+        {
+        }
+
+        public static void resetAll()
+        {
+        }
+
+        void packageVisible()
+        {
+        }
+    }
+
+    static class Unrelated
+    {
+        public void helper()
+        {
+        }
+    }
+}
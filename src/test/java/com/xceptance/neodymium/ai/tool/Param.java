@@ -0,0 +1,36 @@
+package com.xceptance.neodymium.ai.tool;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Describes an argument of an {@link AiTool}, placed on a component of the argument record.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.RECORD_COMPONENT)
+public @interface Param
+{
+    /**
+     * @return the argument name the model uses, the component name if empty
+     */
+    String name() default "";
+
+    /**
+     * @return what the argument is about, sent to the model
+     */
+    String description() default "";
+
+    /**
+     * @return whether the model has to pass the argument
+     */
+    boolean required() default true;
+
+    /**
+     * @return the allowed values of a string argument, any value if empty
+     */
+    String[] values() default {};
+}
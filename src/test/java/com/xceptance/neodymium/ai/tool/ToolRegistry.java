@@ -0,0 +1,438 @@
+package com.xceptance.neodymium.ai.tool;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.RecordComponent;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+
+import com.google.genai.types.FunctionDeclaration;
+import com.google.genai.types.Schema;
+import com.google.genai.types.Type;
+
+/**
+ * All {@link AiTool}s of a test class, scanned once per class and JVM.
+ * <p>
+ * For every tool the schema is generated from its argument record, the canonical constructor of the record and the
+ * tool method itself are resolved to {@link MethodHandle}s, and one converter per argument is prepared. A call then
+ * is a map lookup, one conversion per argument and two handle invocations. Every declared tool gets the mandatory
+ * <code>description</code> argument on top of its own.
+ * </p>
+ */
+public final class ToolRegistry
+{
+    /** The argument every declared tool has, describes the goal of the call. */
+    public static final String DESCRIPTION = "description";
+
+    private static final Schema DESCRIPTION_SCHEMA = Schema.builder()
+                                                           .type(Type.Known.STRING)
+                                                           .description("A very short description of the goal of this function call.")
+                                                           .build();
+
+    /** The invoker type every tool method is adapted to: (test instance, argument record, result) -> void. */
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(void.class, Object.class, Object.class, ToolResult.class);
+
+    private static final ClassValue<ToolRegistry> REGISTRIES = new ClassValue<>()
+    {
+        @Override
+        protected ToolRegistry computeValue(Class<?> type)
+        {
+            return new ToolRegistry(type);
+        }
+    };
+
+    private final Map<String, Tool> tools = new HashMap<>();
+
+    private final List<FunctionDeclaration> declarations;
+
+    private ToolRegistry(Class<?> testClass)
+    {
+        List<Tool> declared = new ArrayList<>();
+
+        // subclasses first, so they can replace tools of their super classes
+        for (Class<?> type = testClass; type != null && type != Object.class; type = type.getSuperclass())
+        {
+            Method[] methods = type.getDeclaredMethods();
+            Arrays.sort(methods, Comparator.comparing(Method::getName));
+            for (Method method : methods)
+            {
+                AiTool annotation = method.getAnnotation(AiTool.class);
+                if (annotation == null || tools.containsKey(annotation.name()))
+                {
+                    continue;
+                }
+
+                Tool tool = new Tool(annotation, method);
+                tools.put(tool.name, tool);
+                for (String alias : annotation.aliases())
+                {
+                    tools.putIfAbsent(alias, tool);
+                }
+                if (!tool.predefined)
+                {
+                    declared.add(tool);
+                }
+            }
+        }
+
+        declared.sort(Comparator.comparing(tool -> tool.name));
+        List<FunctionDeclaration> declarations = new ArrayList<>();
+        for (Tool tool : declared)
+        {
+            declarations.add(tool.declaration());
+        }
+        this.declarations = List.copyOf(declarations);
+    }
+
+    /**
+     * @param testClass
+     *            the test class
+     * @return the tools of the test class and its super classes
+     */
+    public static ToolRegistry of(Class<?> testClass)
+    {
+        return REGISTRIES.get(testClass);
+    }
+
+    /**
+     * @return the declarations of all tools that are not predefined, sorted by name
+     */
+    public List<FunctionDeclaration> declarations()
+    {
+        return declarations;
+    }
+
+    /**
+     * @param name
+     *            the function name or one of its aliases
+     * @return the tool or <code>null</code> if there is none with that name
+     */
+    public Tool tool(String name)
+    {
+        return tools.get(name);
+    }
+
+    /**
+     * A single tool with its precomputed schema, argument binding and invoker.
+     */
+    public static final class Tool
+    {
+        private final String name;
+
+        private final String description;
+
+        private final boolean predefined;
+
+        private final AiTool.Replay replay;
+
+        private final Schema schema;
+
+        private final ArgumentBinder binder;
+
+        private final MethodHandle invoker;
+
+        private Tool(AiTool annotation, Method method)
+        {
+            this.name = annotation.name();
+            this.description = annotation.description();
+            this.predefined = annotation.predefined();
+            this.replay = annotation.replay();
+
+            Class<?>[] parameterTypes = method.getParameterTypes();
+            if (parameterTypes.length < 1 || parameterTypes.length > 2 || parameterTypes[parameterTypes.length - 1] != ToolResult.class
+                || (parameterTypes.length == 2 && !parameterTypes[0].isRecord()))
+            {
+                throw new IllegalStateException("Tool method " + method + " has to take an optional argument record and a ToolResult");
+            }
+
+            this.binder = parameterTypes.length == 2 ? new ArgumentBinder(parameterTypes[0]) : null;
+            this.schema = schema(binder, !predefined);
+
+            try
+            {
+                MethodHandle handle = MethodHandles.privateLookupIn(method.getDeclaringClass(), MethodHandles.lookup()).unreflect(method);
+                if (Modifier.isStatic(method.getModifiers()))
+                {
+                    handle = MethodHandles.dropArguments(handle, 0, Object.class);
+                }
+                if (binder == null)
+                {
+                    handle = MethodHandles.dropArguments(handle, 1, Object.class);
+                }
+                this.invoker = handle.asType(INVOKER_TYPE);
+            }
+            catch (IllegalAccessException e)
+            {
+                throw new IllegalStateException("Can't access tool method " + method, e);
+            }
+        }
+
+        /**
+         * @return the function name
+         */
+        public String name()
+        {
+            return name;
+        }
+
+        /**
+         * @return whether the model already knows the function, so it is not declared
+         */
+        public boolean predefined()
+        {
+            return predefined;
+        }
+
+        /**
+         * @return how a call is repeated when a recorded trace is replayed
+         */
+        public AiTool.Replay replay()
+        {
+            return replay;
+        }
+
+        /**
+         * @return the schema of the arguments
+         */
+        public Schema schema()
+        {
+            return schema;
+        }
+
+        /**
+         * @return the declaration sent to the model
+         */
+        public FunctionDeclaration declaration()
+        {
+            return FunctionDeclaration.builder()
+                                      .name(name)
+                                      .description(description)
+                                      .parameters(schema)
+                                      .build();
+        }
+
+        /**
+         * Binds the arguments of a function call to the argument record of the tool.
+         *
+         * @param args
+         *            the arguments as sent by the model
+         * @return the argument record or <code>null</code> if the tool takes no arguments
+         * @throws IllegalArgumentException
+         *             if a required argument is missing or can't be converted
+         */
+        public Object bind(Map<String, Object> args)
+        {
+            return binder == null ? null : binder.bind(args);
+        }
+
+        /**
+         * Binds the arguments and executes the tool. Invalid arguments are reported as error in the result, everything
+         * the tool itself throws is passed on.
+         *
+         * @param target
+         *            the test instance
+         * @param args
+         *            the arguments as sent by the model
+         * @param result
+         *            receives the outcome
+         */
+        public void invoke(Object target, Map<String, Object> args, ToolResult result)
+        {
+            Object arguments;
+            try
+            {
+                arguments = bind(args);
+            }
+            catch (IllegalArgumentException e)
+            {
+                result.error("Invalid arguments for " + name + ": " + e.getMessage());
+                return;
+            }
+
+            try
+            {
+                invoker.invokeExact(target, arguments, result);
+            }
+            catch (RuntimeException | Error e)
+            {
+                throw e;
+            }
+            catch (Throwable t)
+            {
+                throw new RuntimeException("Tool " + name + " failed", t);
+            }
+        }
+
+        private static Schema schema(ArgumentBinder binder, boolean withDescription)
+        {
+            Map<String, Schema> properties = new LinkedHashMap<>();
+            List<String> required = new ArrayList<>();
+            if (binder != null)
+            {
+                for (int i = 0; i < binder.names.length; i++)
+                {
+                    properties.put(binder.names[i], binder.schemas[i]);
+                    if (binder.required[i])
+                    {
+                        required.add(binder.names[i]);
+                    }
+                }
+            }
+            if (withDescription && !properties.containsKey(DESCRIPTION))
+            {
+                properties.put(DESCRIPTION, DESCRIPTION_SCHEMA);
+                required.add(DESCRIPTION);
+            }
+
+            return Schema.builder()
+                         .type(Type.Known.OBJECT)
+                         .properties(properties)
+                         .required(required)
+                         .build();
+        }
+    }
+
+    /**
+     * Creates an argument record from the arguments of a function call.
+     */
+    private static final class ArgumentBinder
+    {
+        private final String[] names;
+
+        private final boolean[] required;
+
+        private final Schema[] schemas;
+
+        private final List<Function<Object, Object>> converters = new ArrayList<>();
+
+        /** The canonical constructor, taking all components as one array. */
+        private final MethodHandle constructor;
+
+        private ArgumentBinder(Class<?> recordType)
+        {
+            RecordComponent[] components = recordType.getRecordComponents();
+            names = new String[components.length];
+            required = new boolean[components.length];
+            schemas = new Schema[components.length];
+            Class<?>[] types = new Class<?>[components.length];
+
+            for (int i = 0; i < components.length; i++)
+            {
+                RecordComponent component = components[i];
+                Param param = component.getAnnotation(Param.class);
+                Class<?> type = component.getType();
+
+                names[i] = param == null || param.name().isEmpty() ? component.getName() : param.name();
+                required[i] = param == null || param.required();
+                schemas[i] = schema(type, param);
+                converters.add(ArgumentConverter.of(type));
+                types[i] = type;
+            }
+
+            try
+            {
+                constructor = MethodHandles.privateLookupIn(recordType, MethodHandles.lookup())
+                                           .findConstructor(recordType, MethodType.methodType(void.class, types))
+                                           .asType(MethodType.methodType(Object.class, types))
+                                           .asSpreader(Object[].class, types.length);
+            }
+            catch (NoSuchMethodException | IllegalAccessException e)
+            {
+                throw new IllegalStateException("Can't access the canonical constructor of " + recordType, e);
+            }
+        }
+
+        private Object bind(Map<String, Object> args)
+        {
+            Object[] values = new Object[names.length];
+            for (int i = 0; i < names.length; i++)
+            {
+                Object value = args.get(names[i]);
+                if (value == null && required[i])
+                {
+                    throw new IllegalArgumentException("missing argument '" + names[i] + "'");
+                }
+
+                try
+                {
+                    values[i] = converters.get(i).apply(value);
+                }
+                catch (RuntimeException e)
+                {
+                    throw new IllegalArgumentException("argument '" + names[i] + "' has an invalid value '" + value + "'", e);
+                }
+            }
+
+            try
+            {
+                return (Object) constructor.invokeExact(values);
+            }
+            catch (RuntimeException | Error e)
+            {
+                throw e;
+            }
+            catch (Throwable t)
+            {
+                throw new IllegalStateException("Failed to create the arguments", t);
+            }
+        }
+
+        private static Schema schema(Class<?> type, Param param)
+        {
+            Schema.Builder schema = Schema.builder();
+            if (type == String.class)
+            {
+                schema.type(Type.Known.STRING);
+                if (param != null && param.values().length > 0)
+                {
+                    schema.enum_(List.of(param.values()));
+                }
+            }
+            else if (type.isEnum())
+            {
+                List<String> values = new ArrayList<>();
+                for (Object constant : type.getEnumConstants())
+                {
+                    values.add(((Enum<?>) constant).name().toLowerCase(Locale.ROOT));
+                }
+                schema.type(Type.Known.STRING).enum_(values);
+            }
+            else if (type == int.class || type == Integer.class || type == long.class || type == Long.class)
+            {
+                schema.type(Type.Known.INTEGER);
+            }
+            else if (type == double.class || type == Double.class)
+            {
+                schema.type(Type.Known.NUMBER);
+            }
+            else if (type == boolean.class || type == Boolean.class)
+            {
+                schema.type(Type.Known.BOOLEAN);
+            }
+            else if (type == List.class)
+            {
+                schema.type(Type.Known.ARRAY).items(Schema.builder().type(Type.Known.STRING).build());
+            }
+            else
+            {
+                schema.type(Type.Known.OBJECT);
+            }
+
+            if (param != null && !param.description().isEmpty())
+            {
+                schema.description(param.description());
+            }
+            return schema.build();
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.xceptance.neodymium.ai.tool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.genai.types.FunctionDeclaration;
+import com.google.genai.types.Schema;
+import com.google.genai.types.Type;
+
+public class ToolRegistryTest
+{
+    @Test
+    public void declaresAllToolsButThePredefinedOnesSortedByName()
+    {
+        List<String> names = ToolRegistry.of(Tools.class).declarations().stream().map(declaration -> declaration.name().get()).toList();
+
+        assertEquals(List.of("click_at", "scroll", "search"), names);
+        assertTrue(ToolRegistry.of(Tools.class).tool("open_web_browser").predefined());
+    }
+
+    @Test
+    public void registryIsScannedOncePerClass()
+    {
+        assertSame(ToolRegistry.of(Tools.class), ToolRegistry.of(Tools.class));
+    }
+
+    @Test
+    public void declarationCarriesNameAndDescription()
+    {
+        FunctionDeclaration declaration = ToolRegistry.of(Tools.class).tool("search").declaration();
+
+        assertEquals("search", declaration.name().get());
+        assertEquals("Searches the shop.", declaration.description().get());
+        assertEquals(Type.Known.OBJECT, declaration.parameters().get().type().get().knownEnum());
+    }
+
+    @Test
+    public void everyDeclaredToolRequiresADescription()
+    {
+        Schema schema = ToolRegistry.of(Tools.class).tool("click_at").schema();
+
+        assertEquals(List.of("x", "y", ToolRegistry.DESCRIPTION), schema.required().get());
+        assertEquals(Type.Known.STRING, property(schema, ToolRegistry.DESCRIPTION).type().get().knownEnum());
+    }
+
+    @Test
+    public void predefinedToolsHaveNoDescription()
+    {
+        Schema schema = ToolRegistry.of(Tools.class).tool("open_web_browser").schema();
+
+        assertTrue(schema.properties().get().isEmpty());
+        assertTrue(schema.required().get().isEmpty());
+    }
+
+    @Test
+    public void schemaFollowsTheRecordComponents()
+    {
+        Schema schema = ToolRegistry.of(Tools.class).tool("scroll").schema();
+
+        assertEquals(List.of("direction", "amount_px", "smooth", "factor", "keys", "extra", ToolRegistry.DESCRIPTION),
+                     List.copyOf(schema.properties().get().keySet()));
+        assertEquals(Type.Known.STRING, property(schema, "direction").type().get().knownEnum());
+        assertEquals(List.of("up", "down"), property(schema, "direction").enum_().get());
+        assertEquals(Type.Known.INTEGER, property(schema, "amount_px").type().get().knownEnum());
+        assertEquals("The distance in pixels.", property(schema, "amount_px").description().get());
+        assertEquals(Type.Known.BOOLEAN, property(schema, "smooth").type().get().knownEnum());
+        assertEquals(Type.Known.NUMBER, property(schema, "factor").type().get().knownEnum());
+        assertEquals(Type.Known.ARRAY, property(schema, "keys").type().get().knownEnum());
+        assertEquals(Type.Known.STRING, property(schema, "keys").items().get().type().get().knownEnum());
+        assertEquals(Type.Known.OBJECT, property(schema, "extra").type().get().knownEnum());
+    }
+
+    @Test
+    public void optionalArgumentsAreNotRequired()
+    {
+        Schema schema = ToolRegistry.of(Tools.class).tool("search").schema();
+
+        assertEquals(List.of("term", ToolRegistry.DESCRIPTION), schema.required().get());
+        assertEquals(List.of("asc", "desc"), property(schema, "order").enum_().get());
+    }
+
+    @Test
+    public void bindConvertsTheArguments()
+    {
+        ToolRegistry registry = ToolRegistry.of(Tools.class);
+
+        assertEquals(new Click(12, 40), registry.tool("click_at").bind(Map.of("x", "12", "y", 40.0)));
+        assertEquals(new Search("dress", null, null), registry.tool("search").bind(Map.of("term", "dress")));
+        assertEquals(new Scroll(Direction.DOWN, 0, true, 0.5, List.of("a"), null),
+                     registry.tool("scroll").bind(Map.of("direction", "down", "smooth", "true", "factor", "0.5", "keys", List.of("a"))));
+        assertNull(registry.tool("open_web_browser").bind(Map.of()));
+    }
+
+    @Test
+    public void bindRejectsMissingAndInvalidArguments()
+    {
+        ToolRegistry.Tool tool = ToolRegistry.of(Tools.class).tool("click_at");
+
+        IllegalArgumentException missing = assertThrows(IllegalArgumentException.class, () -> tool.bind(Map.of("x", 1)));
+        assertTrue(missing.getMessage().contains("'y'"));
+        IllegalArgumentException invalid = assertThrows(IllegalArgumentException.class, () -> tool.bind(Map.of("x", "left", "y", 1)));
+        assertTrue(invalid.getMessage().contains("'x'"));
+    }
+
+    @Test
+    public void invokeCallsTheToolMethod()
+    {
+        ToolResult result = new ToolResult(new HashMap<>());
+
+        ToolRegistry.of(Tools.class).tool("click_at").invoke(new Tools(), Map.of("x", 12, "y", 40, ToolRegistry.DESCRIPTION, "click"), result);
+
+        assertEquals(Map.of("status", "success", "x", 12, "y", 40), result.values());
+    }
+
+    @Test
+    public void invokeCallsStaticAndArgumentlessToolMethods()
+    {
+        ToolRegistry registry = ToolRegistry.of(Tools.class);
+
+        ToolResult search = new ToolResult(new HashMap<>());
+        registry.tool("search").invoke(new Tools(), Map.of("term", "dress", "limit", 5), search);
+        assertEquals(Map.of("status", "success", "term", "dress", "limit", 5), search.values());
+
+        ToolResult open = new ToolResult(new HashMap<>());
+        registry.tool("open_web_browser").invoke(new Tools(), Map.of(), open);
+        assertEquals(Map.of("status", "success"), open.values());
+    }
+
+    @Test
+    public void invokeReportsInvalidArgumentsAsError()
+    {
+        ToolResult result = new ToolResult(new HashMap<>());
+
+        ToolRegistry.of(Tools.class).tool("click_at").invoke(new Tools(), Map.of("x", 12), result);
+
+        assertEquals("error", result.values().get("status"));
+        assertTrue(result.values().get("message").toString().contains("click_at"));
+    }
+
+    @Test
+    public void invokePassesOnWhatTheToolThrows()
+    {
+        ToolRegistry.Tool tool = ToolRegistry.of(Tools.class).tool("scroll");
+
+        assertThrows(UnsupportedOperationException.class, () -> tool.invoke(new Tools(), Map.of("direction", "up"), new ToolResult(new HashMap<>())));
+    }
+
+    @Test
+    public void aliasesFindTheTool()
+    {
+        ToolRegistry registry = ToolRegistry.of(Tools.class);
+
+        assertSame(registry.tool("click_at"), registry.tool("click"));
+        assertNull(registry.tool("double_click"));
+    }
+
+    @Test
+    public void subclassesAddAndReplaceTools()
+    {
+        ToolRegistry registry = ToolRegistry.of(MoreTools.class);
+        List<String> names = registry.declarations().stream().map(declaration -> declaration.name().get()).toList();
+        assertEquals(List.of("click_at", "hover", "scroll", "search"), names);
+
+        ToolResult result = new ToolResult(new HashMap<>());
+        registry.tool("click_at").invoke(new MoreTools(), Map.of("x", 1, "y", 2), result);
+        assertEquals(Map.of("replaced", true), result.values());
+        assertEquals(AiTool.Replay.CLICK, registry.tool("click_at").replay());
+    }
+
+    @Test
+    public void rejectsToolsWithoutArgumentRecord()
+    {
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> ToolRegistry.of(BadTools.class));
+        assertTrue(e.getMessage().contains("argument record"));
+    }
+
+    private static Schema property(Schema schema, String name)
+    {
+        return schema.properties().get().get(name);
+    }
+
+    enum Direction
+    {
+        UP, DOWN
+    }
+
+    record Click(@Param(description = "The x coordinate.") int x, int y)
+    {
+    }
+
+    record Search(String term, @Param(required = false) Integer limit, @Param(required = false, values =
+    {
+      "asc", "desc"
+    }) String order)
+    {
+    }
+
+    record Scroll(Direction direction, @Param(name = "amount_px", description = "The distance in pixels.", required = false) long amount,
+                  @Param(required = false) boolean smooth, @Param(required = false) double factor, @Param(required = false) List<String> keys,
+                  @Param(required = false) Map<String, Object> extra)
+    {
+    }
+
+    static class Tools
+    {
+        @AiTool(name = "click_at", aliases = "click", description = "Clicks at a coordinate.")
+        void clickAt(Click args, ToolResult result)
+        {
+            result.success().put("x", args.x()).put("y", args.y());
+        }
+
+        @AiTool(name = "search", description = "Searches the shop.")
+        static void search(Search args, ToolResult result)
+        {
+            result.success().put("term", args.term()).put("limit", args.limit());
+        }
+
+        @AiTool(name = "scroll")
+        void scroll(Scroll args, ToolResult result)
+        {
+            throw new UnsupportedOperationException("can't scroll " + args.direction());
+        }
+
+        @AiTool(name = "open_web_browser", predefined = true)
+        void openWebBrowser(ToolResult result)
+        {
+            result.success();
+        }
+    }
+
+    static class MoreTools extends Tools
+    {
+        @AiTool(name = "click_at", replay = AiTool.Replay.CLICK)
+        void click(Click args, ToolResult result)
+        {
+            result.put("replaced", true);
+        }
+
+        @AiTool(name = "hover")
+        void hover(ToolResult result)
+        {
+            result.success();
+        }
+    }
+
+    static class BadTools
+    {
+        @AiTool(name = "type")
+        void type(String text, ToolResult result)
+        {
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.xceptance.neodymium.ai.tool;
+
+import java.util.Map;
+
+import com.xceptance.neodymium.ai.util.EncodedImage;
+
+/**
+ * What an {@link AiTool} hands back: the values of the function response plus what the agent loop has to know about
+ * the outcome.
+ */
+public class ToolResult
+{
+    private final Map<String, Object> values;
+
+    private EncodedImage image;
+
+    private boolean finished;
+
+    /**
+     * @param values
+     *            the function response the values are put into
+     */
+    public ToolResult(Map<String, Object> values)
+    {
+        this.values = values;
+    }
+
+    /**
+     * Adds a value to the function response.
+     *
+     * @param key
+     *            the key
+     * @param value
+     *            the value
+     * @return this result
+     */
+    public ToolResult put(String key, Object value)
+    {
+        values.put(key, value);
+        return this;
+    }
+
+    /**
+     * Adds all values to the function response.
+     *
+     * @param values
+     *            the values
+     * @return this result
+     */
+    public ToolResult putAll(Map<String, Object> values)
+    {
+        this.values.putAll(values);
+        return this;
+    }
+
+    /**
+     * Marks the call as successful.
+     *
+     * @return this result
+     */
+    public ToolResult success()
+    {
+        return put("status", "success");
+    }
+
+    /**
+     * Marks the call as failed.
+     *
+     * @param message
+     *            what went wrong
+     * @return this result
+     */
+    public ToolResult error(String message)
+    {
+        return put("status", "error").put("message", message);
+    }
+
+    /**
+     * Sends the given image instead of the screenshot that usually follows a function call.
+     *
+     * @param image
+     *            the image
+     */
+    public void image(EncodedImage image)
+    {
+        this.image = image;
+    }
+
+    /**
+     * Ends the test after this call.
+     */
+    public void finish()
+    {
+        this.finished = true;
+    }
+
+    /**
+     * @return the function response
+     */
+    public Map<String, Object> values()
+    {
+        return values;
+    }
+
+    /**
+     * @return the image to send instead of the screenshot or <code>null</code>
+     */
+    public EncodedImage image()
+    {
+        return image;
+    }
+
+    /**
+     * @return whether the test ends after this call
+     */
+    public boolean finished()
+    {
+        return finished;
+    }
+}
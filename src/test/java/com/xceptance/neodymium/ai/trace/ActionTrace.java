@@ -0,0 +1,99 @@
+package com.xceptance.neodymium.ai.trace;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.xceptance.neodymium.ai.log.AgentLog;
+import com.xceptance.neodymium.ai.util.AiConfiguration;
+
+/**
+ * The actions of a passing run, compiled by the {@link TraceCompiler}, so later runs of the same prompt can repeat them
+ * without asking the model.
+ * <p>
+ * A trace is stored as JSON file per test class and prompt in the trace directory (see
+ * {@link AiConfiguration#traceDirectory()}). It is meant to be checked in next to the test data and can be edited by
+ * hand.
+ * </p>
+ *
+ * @param prompt
+ *            the prompt of the run
+ * @param steps
+ *            the actions, in order
+ * @param finalUrl
+ *            the URL of the page the run ended on
+ */
+public record ActionTrace(String prompt, List<TraceStep> steps, String finalUrl)
+{
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT)
+                                                                 .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    /**
+     * @param name
+     *            the name of the trace
+     * @return the file of the trace with the given name in the configured trace directory
+     */
+    public static Path file(String name)
+    {
+        return Path.of(AiConfiguration.get().traceDirectory(), name + ".json");
+    }
+
+    /**
+     * Reads a trace. A trace that can't be read is reported and ignored, the run falls back to the model then.
+     *
+     * @param file
+     *            the trace file
+     * @return the trace or <code>null</code> if there is none
+     */
+    public static ActionTrace load(Path file)
+    {
+        if (!Files.isRegularFile(file))
+        {
+            return null;
+        }
+
+        try
+        {
+            return MAPPER.readValue(file.toFile(), ActionTrace.class);
+        }
+        catch (IOException e)
+        {
+            AgentLog.reportError("Ignoring unreadable trace " + file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the trace, a previous one is replaced.
+     *
+     * @param file
+     *            the trace file
+     */
+    public void save(Path file)
+    {
+        try
+        {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            MAPPER.writeValue(file.toFile(), this);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Failed to write trace " + file, e);
+        }
+    }
+
+    /**
+     * @param currentUrl
+     *            the URL of the current page
+     * @return <code>true</code> if the recorded run ended on the same page, the fragment is ignored
+     */
+    public boolean endsOn(String currentUrl)
+    {
+        return finalUrl == null || TraceStep.withoutFragment(finalUrl).equals(TraceStep.withoutFragment(currentUrl));
+    }
+}
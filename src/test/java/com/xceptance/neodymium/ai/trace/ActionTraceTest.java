@@ -0,0 +1,119 @@
+package com.xceptance.neodymium.ai.trace;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.xceptance.neodymium.ai.util.ElementFingerprint;
+
+public class ActionTraceTest
+{
+    private static final String HOME = "https://localhost:8443/posters/";
+
+    private static final String PRODUCT = "https://localhost:8443/posters/productDetail/Lion?productId=3";
+
+    private static final TraceStep OPEN = new TraceStep("navigate", Map.of("url", HOME), "Open the shop", "about:blank", null);
+
+    private static final TraceStep CLICK = new TraceStep("click_at", Map.of("x", 512, "y", 300), "Open the lion poster", HOME,
+                                                         new ElementFingerprint("#lion", "a", "Lion", "lion", null));
+
+    private static final TraceStep VERIFY = new TraceStep("verify", Map.of("expected", "The price is shown"), "Check the price", PRODUCT, null);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void compilesTheStepsInOrder()
+    {
+        TraceCompiler compiler = new TraceCompiler("Buy a lion poster");
+        assertFalse(compiler.passed());
+
+        compiler.add(OPEN);
+        compiler.add(CLICK);
+        compiler.finish(true);
+        ActionTrace trace = compiler.compile(PRODUCT);
+        compiler.add(VERIFY);
+
+        assertTrue(compiler.passed());
+        assertEquals(new ActionTrace("Buy a lion poster", List.of(OPEN, CLICK), PRODUCT), trace);
+    }
+
+    @Test
+    public void savesAndLoads()
+    {
+        ActionTrace trace = new ActionTrace("Buy a lion poster", List.of(OPEN, CLICK, VERIFY), PRODUCT);
+        Path file = directory.resolve("traces/BuyTest/buy.json");
+
+        trace.save(file);
+
+        assertTrue(Files.isRegularFile(file));
+        assertEquals(trace, ActionTrace.load(file));
+    }
+
+    @Test
+    public void saveReplacesThePreviousTrace()
+    {
+        Path file = directory.resolve("buy.json");
+        new ActionTrace("Buy a lion poster", List.of(OPEN, CLICK), PRODUCT).save(file);
+
+        ActionTrace replaced = new ActionTrace("Buy a lion poster", List.of(OPEN), HOME);
+        replaced.save(file);
+
+        assertEquals(replaced, ActionTrace.load(file));
+    }
+
+    @Test
+    public void loadIgnoresMissingAndUnreadableTraces() throws IOException
+    {
+        Path file = directory.resolve("buy.json");
+        assertNull(ActionTrace.load(file));
+
+        Files.writeString(file, "{ broken");
+        assertNull(ActionTrace.load(file));
+    }
+
+    @Test
+    public void loadIgnoresUnknownProperties() throws IOException
+    {
+        Path file = directory.resolve("buy.json");
+        Files.writeString(file, """
+            { "prompt": "Open the shop", "comment": "edited by hand", "steps": [], "finalUrl": "https://localhost:8443/posters/" }
+            """);
+
+        assertEquals(new ActionTrace("Open the shop", List.of(), HOME), ActionTrace.load(file));
+    }
+
+    @Test
+    public void stepStartsOnTheRecordedPage()
+    {
+        assertTrue(CLICK.startsOn(HOME));
+        assertTrue(CLICK.startsOn(HOME + "#top"));
+        assertFalse(CLICK.startsOn(PRODUCT));
+        assertFalse(CLICK.startsOn(null));
+
+        // pages not loaded via HTTP and unknown pages match any page
+        assertTrue(OPEN.startsOn(PRODUCT));
+        assertTrue(new TraceStep("navigate", Map.of(), "Open the shop", null, null).startsOn(PRODUCT));
+    }
+
+    @Test
+    public void traceEndsOnTheRecordedPage()
+    {
+        ActionTrace trace = new ActionTrace("Buy a lion poster", List.of(OPEN, CLICK), PRODUCT);
+
+        assertTrue(trace.endsOn(PRODUCT));
+        assertTrue(trace.endsOn(PRODUCT + "#reviews"));
+        assertFalse(trace.endsOn(HOME));
+        assertTrue(new ActionTrace("Buy a lion poster", List.of(), null).endsOn(HOME));
+    }
+}
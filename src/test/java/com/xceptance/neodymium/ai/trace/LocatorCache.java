@@ -0,0 +1,274 @@
+package com.xceptance.neodymium.ai.trace;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.xceptance.neodymium.ai.log.AgentLog;
+import com.xceptance.neodymium.ai.util.AiConfiguration;
+import com.xceptance.neodymium.ai.util.ElementFingerprint;
+
+/**
+ * Remembers which element an action with a certain description acted on, per kind of page, across runs and prompts.
+ * <p>
+ * The key is the kind of action, the normalized step description (lower case, without punctuation and filler words,
+ * but with quoted values since they usually name the target) and the URL pattern of the page (host and the first two
+ * path segments, segments with digits replaced by <code>*</code>). So "Click the mini cart icon" on any product page of
+ * a shop ends up with the same key, no matter which prompt asked for it, while "Click on 'Lion' poster" and "Click on
+ * 'Tiger' poster" don't. Before an element action is executed, the cached element is looked up with a single DOM probe
+ * and, if it is still there with the same tag and label, the action is executed on it instead of at the coordinates
+ * (or id) of the model. Known elements are found locally this way and a misplaced click of the model costs no
+ * correction round trip.
+ * </p>
+ * <p>
+ * Entries expire a while after they were last confirmed, the least recently used entries are evicted once the cache
+ * is full and an entry whose element can't be found anymore is dropped. The cache is shared by all sessions of the JVM
+ * and written to disk at the end of every run; with several surefire forks the last one wins.
+ * </p>
+ */
+public final class LocatorCache
+{
+    /**
+     * A cached element.
+     *
+     * @param element
+     *            the fingerprint of the element
+     * @param confirmed
+     *            when the element was last acted on, in milliseconds since the epoch
+     */
+    public record Entry(ElementFingerprint element, long confirmed)
+    {
+    }
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT)
+                                                                 .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static final Set<String> FILLER = Set.of("a", "an", "the", "on", "in", "into", "at", "of", "to", "for", "and", "it", "its", "this", "that",
+                                                     "button", "link", "element");
+
+    private static LocatorCache shared;
+
+    private final Path file;
+
+    private final int maxEntries;
+
+    private final long timeToLive;
+
+    /** Access ordered, the eldest entry is the least recently used one. */
+    private final LinkedHashMap<String, Entry> entries;
+
+    private boolean dirty;
+
+    /**
+     * @param file
+     *            the file the cache is read from and written to
+     * @param maxEntries
+     *            the maximum number of entries
+     * @param timeToLive
+     *            the time in milliseconds after which an entry that was not confirmed again expires
+     */
+    public LocatorCache(Path file, int maxEntries, long timeToLive)
+    {
+        this.file = file;
+        this.maxEntries = maxEntries;
+        this.timeToLive = timeToLive;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest)
+            {
+                return size() > LocatorCache.this.maxEntries;
+            }
+        };
+        load();
+    }
+
+    /**
+     * @return the cache shared by all sessions of this JVM, configured via {@link AiConfiguration}
+     */
+    public static synchronized LocatorCache shared()
+    {
+        if (shared == null)
+        {
+            AiConfiguration configuration = AiConfiguration.get();
+            shared = new LocatorCache(Path.of(configuration.locatorCacheFile()), configuration.locatorCacheMaxEntries(),
+                                      configuration.locatorCacheTimeToLive());
+        }
+        return shared;
+    }
+
+    /**
+     * Builds the key of an action.
+     *
+     * @param kind
+     *            the kind of action, e.g. click
+     * @param description
+     *            the step description
+     * @param url
+     *            the URL of the current page
+     * @return the key or <code>null</code> if the description says nothing
+     */
+    public static String key(String kind, String description, String url)
+    {
+        String normalized = normalize(description);
+        return normalized.isEmpty() ? null : kind.toLowerCase(Locale.ROOT) + ":" + normalized + "@" + urlPattern(url);
+    }
+
+    static String normalize(String description)
+    {
+        if (description == null)
+        {
+            return "";
+        }
+
+        List<String> words = new ArrayList<>();
+        for (String word : NON_WORD.split(description.toLowerCase(Locale.ROOT)))
+        {
+            if (!word.isEmpty() && !FILLER.contains(word))
+            {
+                words.add(word);
+            }
+        }
+        return String.join(" ", words);
+    }
+
+    static String urlPattern(String url)
+    {
+        try
+        {
+            URI uri = URI.create(url);
+            StringBuilder pattern = new StringBuilder(String.valueOf(uri.getAuthority()));
+            String[] segments = uri.getPath() == null ? new String[0] : uri.getPath().split("/");
+            int kept = 0;
+            for (String segment : segments)
+            {
+                if (segment.isEmpty())
+                {
+                    continue;
+                }
+                if (kept++ == 2)
+                {
+                    pattern.append("/*");
+                    break;
+                }
+                pattern.append('/').append(segment.chars().anyMatch(Character::isDigit) ? "*" : segment);
+            }
+            return pattern.toString();
+        }
+        catch (IllegalArgumentException e)
+        {
+            return String.valueOf(url);
+        }
+    }
+
+    /**
+     * @param key
+     *            the key, see {@link #key(String, String, String)}
+     * @return the fingerprint of the element or <code>null</code> if there is none or it expired
+     */
+    public synchronized ElementFingerprint get(String key)
+    {
+        Entry entry = entries.get(key);
+        if (entry == null)
+        {
+            return null;
+        }
+        if (System.currentTimeMillis() - entry.confirmed() > timeToLive)
+        {
+            invalidate(key);
+            return null;
+        }
+        return entry.element();
+    }
+
+    /**
+     * Adds or confirms an element.
+     *
+     * @param key
+     *            the key, see {@link #key(String, String, String)}
+     * @param element
+     *            the fingerprint of the element the action was executed on
+     */
+    public synchronized void put(String key, ElementFingerprint element)
+    {
+        entries.put(key, new Entry(element, System.currentTimeMillis()));
+        dirty = true;
+    }
+
+    /**
+     * Drops an entry whose element could not be found or acted on.
+     *
+     * @param key
+     *            the key
+     */
+    public synchronized void invalidate(String key)
+    {
+        if (entries.remove(key) != null)
+        {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Writes the cache to disk if it changed.
+     */
+    public synchronized void save()
+    {
+        if (!dirty)
+        {
+            return;
+        }
+
+        try
+        {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            MAPPER.writeValue(file.toFile(), entries);
+            dirty = false;
+        }
+        catch (IOException e)
+        {
+            AgentLog.reportError("Failed to write locator cache " + file, e);
+        }
+    }
+
+    private void load()
+    {
+        if (!Files.isRegularFile(file))
+        {
+            return;
+        }
+
+        try
+        {
+            Map<String, Entry> stored = MAPPER.readValue(file.toFile(), new TypeReference<Map<String, Entry>>()
+            {
+            });
+            long now = System.currentTimeMillis();
+            stored.entrySet().stream()
+                  .filter(entry -> now - entry.getValue().confirmed() <= timeToLive)
+                  .sorted(Comparator.comparingLong(entry -> entry.getValue().confirmed()))
+                  .forEach(entry -> entries.put(entry.getKey(), entry.getValue()));
+        }
+        catch (IOException e)
+        {
+            AgentLog.reportError("Ignoring unreadable locator cache " + file, e);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.xceptance.neodymium.ai.trace;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.xceptance.neodymium.ai.util.ElementFingerprint;
+
+public class LocatorCacheTest
+{
+    private static final String PRODUCT = "https://localhost:8443/posters/productDetail/Lion?productId=3";
+
+    private static final ElementFingerprint CART = new ElementFingerprint("#btn-add-to-cart", "button", "Add to cart", "btn-add-to-cart", null);
+
+    private static final ElementFingerprint SEARCH = new ElementFingerprint("#s", "input", "Search", "s", "searchText");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void normalizeKeepsTheQuotedValues()
+    {
+        assertEquals("click dinosaur poster", LocatorCache.normalize("Click on 'Dinosaur' poster"));
+        assertNotEquals(LocatorCache.key("click", "Click on 'Dinosaur' poster", PRODUCT), LocatorCache.key("click", "Click on 'Lion' poster", PRODUCT));
+    }
+
+    @Test
+    public void normalizeDropsCaseFillerWordsAndPunctuation()
+    {
+        assertEquals("click mini cart icon", LocatorCache.normalize("Click the mini-cart icon!"));
+        assertEquals("add size 32 x 24 cart", LocatorCache.normalize("Add the size \"32 x 24\" to the cart button."));
+        assertEquals("", LocatorCache.normalize("On the button"));
+        assertEquals("", LocatorCache.normalize(null));
+    }
+
+    @Test
+    public void urlPatternKeepsHostAndTwoSegments()
+    {
+        assertEquals("localhost:8443/posters/productDetail/*", LocatorCache.urlPattern(PRODUCT));
+        assertEquals("localhost:8443/posters/*/*", LocatorCache.urlPattern("https://localhost:8443/posters/2024/detail"));
+        assertEquals("shop.example.com/cart", LocatorCache.urlPattern("https://shop.example.com/cart/"));
+        assertEquals("shop.example.com", LocatorCache.urlPattern("https://shop.example.com"));
+        assertEquals("not a url", LocatorCache.urlPattern("not a url"));
+    }
+
+    @Test
+    public void keyIsSharedByPagesOfTheSameKind()
+    {
+        String lion = LocatorCache.key("CLICK", "Click the 'Add to cart' button", PRODUCT);
+        String tiger = LocatorCache.key("click", "click the 'add to cart' button.", "https://localhost:8443/posters/productDetail/Tiger?productId=7");
+
+        assertEquals("click:click add cart@localhost:8443/posters/productDetail/*", lion);
+        assertEquals(lion, tiger);
+        assertNotEquals(lion, LocatorCache.key("hover", "Click the 'Add to cart' button", PRODUCT));
+        assertNull(LocatorCache.key("click", "on it", PRODUCT));
+    }
+
+    @Test
+    public void putGetAndInvalidate()
+    {
+        LocatorCache cache = new LocatorCache(directory.resolve("cache.json"), 10, 60_000);
+
+        assertNull(cache.get("a"));
+        cache.put("a", CART);
+        assertEquals(CART, cache.get("a"));
+        cache.put("a", SEARCH);
+        assertEquals(SEARCH, cache.get("a"));
+
+        cache.invalidate("a");
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    public void entriesExpire()
+    {
+        LocatorCache cache = new LocatorCache(directory.resolve("cache.json"), 10, -1);
+
+        cache.put("a", CART);
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedEntry()
+    {
+        LocatorCache cache = new LocatorCache(directory.resolve("cache.json"), 2, 60_000);
+
+        cache.put("a", CART);
+        cache.put("b", SEARCH);
+        cache.get("a");
+        cache.put("c", SEARCH);
+
+        assertEquals(CART, cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(SEARCH, cache.get("c"));
+    }
+
+    @Test
+    public void savesAndLoads()
+    {
+        Path file = directory.resolve("ai/locator-cache.json");
+        LocatorCache cache = new LocatorCache(file, 10, 60_000);
+        cache.save();
+        assertFalse(Files.exists(file));
+
+        cache.put("a", CART);
+        cache.put("b", SEARCH);
+        cache.save();
+        assertTrue(Files.isRegularFile(file));
+
+        LocatorCache loaded = new LocatorCache(file, 10, 60_000);
+        assertEquals(CART, loaded.get("a"));
+        assertEquals(SEARCH, loaded.get("b"));
+
+        // expired entries are not loaded
+        assertNull(new LocatorCache(file, 10, -1).get("a"));
+    }
+
+    @Test
+    public void ignoresAnUnreadableFile() throws IOException
+    {
+        Path file = directory.resolve("cache.json");
+        Files.writeString(file, "{ broken");
+
+        LocatorCache cache = new LocatorCache(file, 10, 60_000);
+        assertNull(cache.get("a"));
+
+        cache.put("a", CART);
+        cache.save();
+        assertEquals(CART, new LocatorCache(file, 10, 60_000).get("a"));
+    }
+}
@@ -0,0 +1,73 @@
+package com.xceptance.neodymium.ai.trace;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.xceptance.neodymium.ai.tool.AiTool;
+
+/**
+ * Collects the actions of a run and compiles them into an {@link ActionTrace} once the run passed.
+ * <p>
+ * Only actions and verifications are added: calls of tools that merely observe the page ({@link AiTool.Replay#SKIP})
+ * and calls that failed are left out, the model repeated or corrected those anyway. Verifications are kept so a replay
+ * checks the page again instead of passing on the final URL alone. If a run started by replaying a trace, the
+ * replayed steps come first, followed by what the model did after it took over.
+ * </p>
+ */
+public class TraceCompiler
+{
+    private final String prompt;
+
+    private final List<TraceStep> steps = new ArrayList<>();
+
+    private boolean passed;
+
+    /**
+     * @param prompt
+     *            the prompt of the run
+     */
+    public TraceCompiler(String prompt)
+    {
+        this.prompt = prompt;
+    }
+
+    /**
+     * Adds a step once it was executed or replayed successfully.
+     *
+     * @param step
+     *            the step
+     */
+    public void add(TraceStep step)
+    {
+        steps.add(step);
+    }
+
+    /**
+     * Records how the model finished the run.
+     *
+     * @param passed
+     *            <code>true</code> if the model considers the test passed
+     */
+    public void finish(boolean passed)
+    {
+        this.passed = passed;
+    }
+
+    /**
+     * @return whether the run passed, only those are worth a trace
+     */
+    public boolean passed()
+    {
+        return passed;
+    }
+
+    /**
+     * @param finalUrl
+     *            the URL of the page the run ended on
+     * @return the trace of the run
+     */
+    public ActionTrace compile(String finalUrl)
+    {
+        return new ActionTrace(prompt, List.copyOf(steps), finalUrl);
+    }
+}
@@ -0,0 +1,41 @@
+package com.xceptance.neodymium.ai.trace;
+
+import java.util.Map;
+
+import com.xceptance.neodymium.ai.util.ElementFingerprint;
+
+/**
+ * A single action of a recorded trace.
+ *
+ * @param function
+ *            the function the model called
+ * @param args
+ *            the arguments of the call
+ * @param description
+ *            what the step is about, shown in the report
+ * @param url
+ *            the URL of the page the step started on
+ * @param element
+ *            the element the step acted on or <code>null</code> if it did not act on a single element
+ */
+public record TraceStep(String function, Map<String, Object> args, String description, String url, ElementFingerprint element)
+{
+    /**
+     * Checks whether the step can start on the given page. The fragment is ignored, so are pages that are not loaded
+     * via HTTP (e.g. the blank page of a new browser).
+     *
+     * @param currentUrl
+     *            the URL of the current page
+     * @return <code>true</code> if the step started on the same page when it was recorded
+     */
+    public boolean startsOn(String currentUrl)
+    {
+        return url == null || !url.startsWith("http") || withoutFragment(url).equals(withoutFragment(currentUrl));
+    }
+
+    static String withoutFragment(String url)
+    {
+        int fragment = url == null ? -1 : url.indexOf('#');
+        return fragment < 0 ? String.valueOf(url) : url.substring(0, fragment);
+    }
+}
@@ -0,0 +1,227 @@
+package com.xceptance.neodymium.ai.util;
+
+import org.aeonbits.owner.Config.LoadPolicy;
+import org.aeonbits.owner.Config.LoadType;
+import org.aeonbits.owner.Config.Sources;
+import org.aeonbits.owner.ConfigCache;
+import org.aeonbits.owner.Mutable;
+
+/**
+ * Configuration of the AI agent loop. Values are read from <code>config/ai.properties</code> and can be overwritten
+ * via <code>config/dev-ai.properties</code>, environment variables or system properties.
+ */
+@LoadPolicy(LoadType.MERGE)
+@Sources(
+{
+  "file:config/dev-ai.properties", "system:env", "system:properties", "file:config/ai.properties"
+})
+public interface AiConfiguration extends Mutable
+{
+    /**
+     * The available model backends.
+     */
+    public enum ModelBackendType
+    {
+        LIVE, RECORD, REPLAY, REPLAY_HTTP
+    }
+
+    /**
+     * The available policies to shrink the history.
+     */
+    public enum HistoryEvictionType
+    {
+        IMAGE_FIRST, OLDEST_TURN
+    }
+
+    /**
+     * The available ways to execute coordinate based actions.
+     */
+    public enum ActionMode
+    {
+        SCRIPT, WEBDRIVER
+    }
+
+    /**
+     * The ways to use the traces of passing runs.
+     */
+    public enum TraceMode
+    {
+        OFF, RECORD, REPLAY
+    }
+
+    /**
+     * How much of the AI log is printed to the console.
+     */
+    public enum ConsoleOutput
+    {
+        OFF, ACTIONS, FULL
+    }
+
+    /**
+     * @return the shared configuration instance
+     */
+    public static AiConfiguration get()
+    {
+        return ConfigCache.getOrCreate(AiConfiguration.class);
+    }
+
+    @Key("neodymium.ai.model.backend")
+    @DefaultValue("LIVE")
+    public ModelBackendType modelBackend();
+
+    @Key("neodymium.ai.model.recordingDirectory")
+    @DefaultValue("src/test/resources/ai-recordings")
+    public String recordingDirectory();
+
+    @Key("neodymium.ai.model.streaming")
+    @DefaultValue("true")
+    public boolean streaming();
+
+    @Key("neodymium.ai.trace.mode")
+    @DefaultValue("OFF")
+    public TraceMode traceMode();
+
+    @Key("neodymium.ai.trace.directory")
+    @DefaultValue("src/test/resources/ai-traces")
+    public String traceDirectory();
+
+    @Key("neodymium.ai.locatorCache.enabled")
+    @DefaultValue("false")
+    public boolean locatorCacheEnabled();
+
+    @Key("neodymium.ai.locatorCache.file")
+    @DefaultValue("src/test/resources/ai-locator-cache.json")
+    public String locatorCacheFile();
+
+    @Key("neodymium.ai.locatorCache.maxEntries")
+    @DefaultValue("500")
+    public int locatorCacheMaxEntries();
+
+    @Key("neodymium.ai.locatorCache.timeToLive")
+    @DefaultValue("604800000")
+    public long locatorCacheTimeToLive();
+
+    @Key("neodymium.ai.pipeline.enabled")
+    @DefaultValue("true")
+    public boolean pipelineEnabled();
+
+    @Key("neodymium.ai.sessions.parallel")
+    @DefaultValue("1")
+    public int parallelSessions();
+
+    @Key("neodymium.ai.rate.maxConcurrentRequests")
+    @DefaultValue("0")
+    public int maxConcurrentRequests();
+
+    @Key("neodymium.ai.rate.requestsPerMinute")
+    @DefaultValue("0")
+    public int requestsPerMinute();
+
+    @Key("neodymium.ai.rate.tokensPerMinute")
+    @DefaultValue("0")
+    public long tokensPerMinute();
+
+    @Key("neodymium.ai.tokens.limit")
+    @DefaultValue("120000")
+    public int tokenLimit();
+
+    @Key("neodymium.ai.tokens.remoteCountThreshold")
+    @DefaultValue("0.85")
+    public double remoteTokenCountThreshold();
+
+    @Key("neodymium.ai.history.evictionPolicy")
+    @DefaultValue("IMAGE_FIRST")
+    public HistoryEvictionType historyEvictionPolicy();
+
+    @Key("neodymium.ai.history.keepRecentImages")
+    @DefaultValue("3")
+    public int keepRecentImages();
+
+    @Key("neodymium.ai.history.downsampleImages")
+    @DefaultValue("true")
+    public boolean downsampleImages();
+
+    @Key("neodymium.ai.perception.format")
+    @DefaultValue("JPEG")
+    public PerceptionEncoder.Format perceptionFormat();
+
+    @Key("neodymium.ai.perception.maxWidth")
+    @DefaultValue("1024")
+    public int perceptionMaxWidth();
+
+    @Key("neodymium.ai.perception.maxHeight")
+    @DefaultValue("1024")
+    public int perceptionMaxHeight();
+
+    @Key("neodymium.ai.perception.jpegQuality")
+    @DefaultValue("0.8")
+    public float perceptionJpegQuality();
+
+    @Key("neodymium.ai.perception.elementMap")
+    @DefaultValue("false")
+    public boolean perceptionElementMap();
+
+    @Key("neodymium.ai.metrics.export")
+    @DefaultValue("true")
+    public boolean metricsExport();
+
+    @Key("neodymium.ai.metrics.directory")
+    @DefaultValue("target/ai-metrics")
+    public String metricsDirectory();
+
+    @Key("neodymium.ai.log.directory")
+    @DefaultValue("target/ai-logs")
+    public String logDirectory();
+
+    @Key("neodymium.ai.log.console")
+    @DefaultValue("ACTIONS")
+    public ConsoleOutput logConsole();
+
+    @Key("neodymium.ai.log.maxInlineLength")
+    @DefaultValue("4000")
+    public int logMaxInlineLength();
+
+    @Key("neodymium.ai.artifacts.queueSize")
+    @DefaultValue("32")
+    public int artifactQueueSize();
+
+    @Key("neodymium.ai.visualDelta.enabled")
+    @DefaultValue("true")
+    public boolean visualDeltaEnabled();
+
+    @Key("neodymium.ai.visualDelta.maxRegionShare")
+    @DefaultValue("0.5")
+    public double visualDeltaMaxRegionShare();
+
+    @Key("neodymium.ai.stability.quietPeriod")
+    @DefaultValue("150")
+    public long stabilityQuietPeriod();
+
+    @Key("neodymium.ai.stability.timeout")
+    @DefaultValue("5000")
+    public long stabilityTimeout();
+
+    @Key("neodymium.ai.wait.maxTimeout")
+    @DefaultValue("20000")
+    public long waitMaxTimeout();
+
+    @Key("neodymium.ai.actions.mode")
+    @DefaultValue("WEBDRIVER")
+    public ActionMode actionMode();
+
+    @Key("neodymium.ai.dom.cleaning")
+    @DefaultValue("BROWSER")
+    public DomCleaner.Mode domCleaning();
+
+    @Key("neodymium.ai.dom.maxTokens")
+    @DefaultValue("20000")
+    public int domMaxTokens();
+
+    @Key("neodymium.ai.dom.removeHidden")
+    @DefaultValue("true")
+    public boolean domRemoveHidden();
+
+    @Key("neodymium.ai.dom.incremental")
+    @DefaultValue("true")
+    public boolean domIncremental();
+}
@@ -0,0 +1,228 @@
+package com.xceptance.neodymium.ai.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import com.xceptance.neodymium.ai.log.AgentLog;
+import com.xceptance.neodymium.ai.metrics.Phase;
+import com.xceptance.neodymium.ai.metrics.RunMetrics;
+
+import io.qameta.allure.Allure;
+import io.qameta.allure.AllureLifecycle;
+
+/**
+ * Writes report artifacts (screenshots, DOM snapshots, the AI log) in the background, so the agent loop does not wait
+ * for disk I/O.
+ * <p>
+ * Allure attachments are registered with the current step right away on the calling thread, since Allure tracks the
+ * current step per thread. Only writing the content is deferred. The queue is bounded, a caller blocks if the writer
+ * falls behind. Call {@link #flush()} at the end of a test to make sure everything is written.
+ * </p>
+ * <p>
+ * There is a writer thread per parallel session (see {@link AiConfiguration#parallelSessions()}), each with a queue of
+ * its own. The threads of the sessions are assigned to the writers round robin and a thread always uses the same
+ * writer, so the artifacts of a session are written in the order they were submitted (e.g. the appends to its AI
+ * log before the log is rendered).
+ * </p>
+ */
+public final class ArtifactWriter
+{
+    private static final ThreadPoolExecutor[] WRITERS = createWriters(Math.max(1, AiConfiguration.get().parallelSessions()),
+                                                                      AiConfiguration.get().artifactQueueSize());
+
+    private static final AtomicInteger NEXT_WRITER = new AtomicInteger();
+
+    /** The writer of the calling thread. */
+    private static final ThreadLocal<ThreadPoolExecutor> WRITER = ThreadLocal.withInitial(() -> WRITERS[Math.floorMod(NEXT_WRITER.getAndIncrement(),
+                                                                                                                       WRITERS.length)]);
+
+    private ArtifactWriter()
+    {
+    }
+
+    private static ThreadPoolExecutor[] createWriters(int count, int queueSize)
+    {
+        ThreadPoolExecutor[] writers = new ThreadPoolExecutor[count];
+        for (int i = 0; i < count; i++)
+        {
+            writers[i] = createExecutor("ai-artifact-writer-" + i, queueSize);
+        }
+        return writers;
+    }
+
+    private static ThreadPoolExecutor createExecutor(String name, int queueSize)
+    {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize), r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        }, (r, e) -> {
+            // backpressure: wait for a free slot instead of dropping the artifact
+            try
+            {
+                e.getQueue().put(r);
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for the artifact writer", ie);
+            }
+        });
+        return executor;
+    }
+
+    /**
+     * Attaches the given content to the current Allure step.
+     *
+     * @param name
+     *            the name of the attachment
+     * @param type
+     *            the mime type
+     * @param fileExtension
+     *            the file extension including the dot
+     * @param content
+     *            the content, must not be modified afterwards
+     */
+    public static void attach(String name, String type, String fileExtension, byte[] content)
+    {
+        attach(name, type, fileExtension, () -> content);
+    }
+
+    /**
+     * Attaches content to the current Allure step that is produced in the background, e.g. a screenshot that still has
+     * to be encoded. The producer runs on the writer thread and must not touch the browser.
+     *
+     * @param name
+     *            the name of the attachment
+     * @param type
+     *            the mime type
+     * @param fileExtension
+     *            the file extension including the dot
+     * @param content
+     *            produces the content
+     */
+    public static void attach(String name, String type, String fileExtension, Supplier<byte[]> content)
+    {
+        AllureLifecycle lifecycle = Allure.getLifecycle();
+        String source = lifecycle.prepareAttachment(name, type, fileExtension);
+        RunMetrics metrics = RunMetrics.current();
+        WRITER.get().execute(() -> {
+            try (RunMetrics.Timer timer = RunMetrics.timer(metrics, Phase.ARTIFACT_IO); InputStream in = new ByteArrayInputStream(content.get()))
+            {
+                lifecycle.writeAttachment(source, in);
+            }
+            catch (IOException | RuntimeException e)
+            {
+                AgentLog.reportError("Failed to write attachment '" + name + "'", e);
+            }
+        });
+    }
+
+    /**
+     * Writes the given content to a file.
+     *
+     * @param file
+     *            the file to write
+     * @param content
+     *            the content, must not be modified afterwards
+     */
+    public static void write(Path file, byte[] content)
+    {
+        RunMetrics metrics = RunMetrics.current();
+        WRITER.get().execute(() -> {
+            try (RunMetrics.Timer timer = RunMetrics.timer(metrics, Phase.ARTIFACT_IO))
+            {
+                writeNow(file, content);
+            }
+        });
+    }
+
+    /**
+     * Appends the given content to a file, creating it if needed.
+     *
+     * @param file
+     *            the file to append to
+     * @param content
+     *            the content, must not be modified afterwards
+     */
+    public static void append(Path file, byte[] content)
+    {
+        RunMetrics metrics = RunMetrics.current();
+        WRITER.get().execute(() -> {
+            try (RunMetrics.Timer timer = RunMetrics.timer(metrics, Phase.ARTIFACT_IO))
+            {
+                Files.createDirectories(file.getParent());
+                Files.write(file, content, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            catch (IOException e)
+            {
+                AgentLog.reportError("Failed to append to " + file, e);
+            }
+        });
+    }
+
+    /**
+     * Writes the given content to a file on the current thread. Meant for producers that already run on the writer
+     * thread.
+     *
+     * @param file
+     *            the file to write
+     * @param content
+     *            the content
+     */
+    static void writeNow(Path file, byte[] content)
+    {
+        try
+        {
+            Files.createDirectories(file.getParent());
+            Files.write(file, content);
+        }
+        catch (IOException e)
+        {
+            AgentLog.reportError("Failed to write " + file, e);
+        }
+    }
+
+    /**
+     * Blocks until all artifacts submitted so far are written, by all sessions.
+     */
+    public static void flush()
+    {
+        try
+        {
+            // each writer has a single thread, so once the no-op ran, everything submitted to it before is done
+            List<Future<?>> done = new ArrayList<>(WRITERS.length);
+            for (ThreadPoolExecutor writer : WRITERS)
+            {
+                done.add(writer.submit(() -> {
+                }));
+            }
+            for (Future<?> future : done)
+            {
+                future.get();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e)
+        {
+            throw new RuntimeException("Failed to flush artifacts", e);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.xceptance.neodymium.ai.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.codeborne.selenide.Selenide;
+
+/**
+ * Executes coordinate based actions (click, type) with a single script call each.
+ * <p>
+ * Hit testing, the checks whether an element is editable, focusing, clearing and the event dispatch all happen inside
+ * the browser, instead of resolving the element via WebDriver and interacting with it in many round trips. The result
+ * is returned as a map with <code>status</code> ("success" or "error"), the <code>element</code> that was hit and a
+ * <code>message</code> in case of an error, ready to be put into the function response.
+ * </p>
+ * <p>
+ * The events are synthetic, so this is opt-in via <code>neodymium.ai.actions.mode = SCRIPT</code>. Key handlers don't see
+ * real key strokes and CSS <code>:hover</code> is not triggered, which is why hovering always goes through WebDriver.
+ * </p>
+ */
+public final class CoordinateActions
+{
+    private static final String ACTION_SCRIPT = ElementMap.STATE_SCRIPT + """
+        var action = arguments[0], x = arguments[1], y = arguments[2], text = arguments[3], clear = arguments[4], enter = arguments[5], id = arguments[6];
+        function describe(e) {
+            var className = typeof e.className === 'string' ? e.className.trim() : '';
+            return e.tagName.toLowerCase() + (e.id ? '#' + e.id : '') + (className ? '.' + className.split(/\\s+/).join('.') : '');
+        }
+        function mouse(type, target, init) {
+            target.dispatchEvent(new MouseEvent(type, Object.assign({ bubbles: true, cancelable: true, view: window, clientX: x, clientY: y }, init || {})));
+        }
+        function pointer(type, target, init) {
+            if (window.PointerEvent) {
+                target.dispatchEvent(new PointerEvent(type, Object.assign({ bubbles: true, cancelable: true, clientX: x, clientY: y, pointerType: 'mouse', isPrimary: true }, init || {})));
+            }
+        }
+        function key(type, target, name) {
+            return target.dispatchEvent(new KeyboardEvent(type, { bubbles: true, cancelable: true, key: name, code: name, keyCode: 13, which: 13 }));
+        }
+
+        var el;
+        if (id > 0) {
+            el = elementOf(id);
+            if (!el) {
+                return { status: 'error', message: 'Unknown or outdated element id ' + id + ', list the elements again' };
+            }
+            var r = el.getBoundingClientRect();
+            if (r.top < 0 || r.left < 0 || r.bottom > window.innerHeight || r.right > window.innerWidth) {
+                el.scrollIntoView({ block: 'center', inline: 'center' });
+                r = el.getBoundingClientRect();
+            }
+            x = r.left + r.width / 2;
+            y = r.top + r.height / 2;
+        } else {
+            el = document.elementFromPoint(x, y);
+            if (!el) {
+                return { status: 'error', message: 'No element at ' + x + ',' + y };
+            }
+        }
+        var result = { status: 'success', element: describe(el) };
+
+        pointer('pointerover', el); mouse('mouseover', el);
+        pointer('pointerenter', el, { bubbles: false }); mouse('mouseenter', el, { bubbles: false });
+        pointer('pointermove', el); mouse('mousemove', el);
+        if (action === 'hover') {
+            return result;
+        }
+
+        pointer('pointerdown', el); mouse('mousedown', el, { buttons: 1 });
+        if (typeof el.focus === 'function') el.focus();
+        pointer('pointerup', el); mouse('mouseup', el);
+        // the native click triggers the default actions as well (links, checkboxes, submit buttons)
+        if (typeof el.click === 'function') el.click(); else mouse('click', el);
+        if (action === 'click') {
+            return result;
+        }
+
+        var target = document.activeElement && document.activeElement !== document.body ? document.activeElement : el;
+        result.element = describe(target);
+        var tag = target.tagName.toLowerCase(), type = (target.getAttribute('type') || '').toLowerCase();
+        var textEntry = tag === 'textarea'
+                        || (tag === 'input' && ['checkbox', 'radio', 'button', 'submit', 'file', 'hidden', 'image', 'reset', 'color'].indexOf(type) < 0);
+        if (textEntry) {
+            if (target.disabled || target.readOnly) {
+                return { status: 'error', element: result.element, message: 'Element is disabled or read only' };
+            }
+            // use the native setter, so frameworks tracking the value (e.g. React) see the change
+            var proto = tag === 'textarea' ? HTMLTextAreaElement.prototype : HTMLInputElement.prototype;
+            Object.getOwnPropertyDescriptor(proto, 'value').set.call(target, (clear ? '' : target.value) + text);
+            target.dispatchEvent(new Event('input', { bubbles: true }));
+            target.dispatchEvent(new Event('change', { bubbles: true }));
+        } else if (target.isContentEditable) {
+            if (clear) document.execCommand('selectAll', false, null);
+            document.execCommand('insertText', false, text);
+        } else {
+            return { status: 'error', element: result.element, message: 'Element is not editable' };
+        }
+
+        if (enter) {
+            var proceed = key('keydown', target, 'Enter');
+            key('keypress', target, 'Enter');
+            key('keyup', target, 'Enter');
+            if (proceed && target.form) {
+                if (target.form.requestSubmit) target.form.requestSubmit(); else target.form.submit();
+            }
+        }
+        return result;
+        """;
+
+    private CoordinateActions()
+    {
+    }
+
+    /**
+     * Clicks at the given viewport coordinates.
+     *
+     * @param x
+     *            the X coordinate in the viewport
+     * @param y
+     *            the Y coordinate in the viewport
+     * @return the result for the function response
+     */
+    public static Map<String, Object> click(int x, int y)
+    {
+        return execute("click", x, y, null, false, false, -1);
+    }
+
+    /**
+     * Clicks at the given viewport coordinates and types into the element that has the focus afterwards.
+     *
+     * @param x
+     *            the X coordinate in the viewport
+     * @param y
+     *            the Y coordinate in the viewport
+     * @param text
+     *            the text to type
+     * @param clear
+     *            <code>true</code> to replace the current value
+     * @param pressEnter
+     *            <code>true</code> to press enter after typing
+     * @return the result for the function response
+     */
+    public static Map<String, Object> type(int x, int y, String text, boolean clear, boolean pressEnter)
+    {
+        return execute("type", x, y, text, clear, pressEnter, -1);
+    }
+
+    /**
+     * Executes an action at the given coordinates or on the element with the given id of the {@link ElementMap}.
+     */
+    static Map<String, Object> execute(String action, int x, int y, String text, boolean clear, boolean pressEnter, int id)
+    {
+        Map<String, Object> result = Selenide.executeJavaScript(ACTION_SCRIPT, action, x, y, text == null ? "" : text, clear, pressEnter, id);
+        return result == null ? new HashMap<>(Map.of("status", "error", "message", "No result")) : new HashMap<>(result);
+    }
+}
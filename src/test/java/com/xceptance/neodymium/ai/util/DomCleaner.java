@@ -0,0 +1,264 @@
+package com.xceptance.neodymium.ai.util;
+
+import java.util.ArrayList;
+import java.util.Map;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Comment;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+
+import com.codeborne.selenide.Selenide;
+
+/**
+ * Reduces the DOM of the current page to what helps the model to find elements and write selectors.
+ * <p>
+ * By default the cleaning happens inside the browser: a TreeWalker skips heavy elements (script, style, svg, ...) and
+ * elements hidden by their computed style, serializes only a small set of useful attributes and stops once the size
+ * budget is used up, closing all open elements so the structure stays intact. Only the reduced tree is transferred.
+ * The Jsoup based cleaning of the full page source is kept as fallback.
+ * </p>
+ * <p>
+ * In incremental mode repeated snapshots of the same document only contain what changed since the previous one, see
+ * {@link #snapshot(boolean)}.
+ * </p>
+ */
+public final class DomCleaner
+{
+    /**
+     * Where the DOM is cleaned.
+     */
+    public enum Mode
+    {
+        BROWSER, JSOUP
+    }
+
+    /** Rough number of characters per token, see the TokenEstimator. */
+    private static final int CHARS_PER_TOKEN = 4;
+
+    /**
+     * Serializes the cleaned DOM. In incremental mode every serialized element gets a stable ai-id (shared with the
+     * {@link ElementMap}) and a MutationObserver installed once per document collects the elements that
+     * changed. The next call then only serializes the topmost changed elements. A new document (navigation) has no
+     * state yet and gets a full snapshot.
+     */
+    private static final String CLEAN_SCRIPT = ElementMap.STATE_SCRIPT + """
+        var maxChars = arguments[0], removeHidden = arguments[1], incremental = arguments[2], forceFull = arguments[3], maxText = 200;
+        var SKIP = { SCRIPT: 1, STYLE: 1, SVG: 1, NOSCRIPT: 1, META: 1, LINK: 1, TEMPLATE: 1, IFRAME: 1 };
+        var VOID = { area: 1, base: 1, br: 1, col: 1, embed: 1, hr: 1, img: 1, input: 1, source: 1, track: 1, wbr: 1 };
+        var ATTRIBUTES = /^(id|class|name|type|href|src|alt|title|placeholder|value|role|for|action|method|disabled|checked|selected|aria-.*|data-testid|data-test)$/;
+        function hidden(el) {
+            if (!removeHidden) return el.style && el.style.display === 'none';
+            if (el.checkVisibility) return !el.checkVisibility({ visibilityProperty: true, checkVisibilityCSS: true });
+            var style = getComputedStyle(el);
+            return style.display === 'none' || style.visibility === 'hidden';
+        }
+        function escape(s) { return s.replace(/&/g, '&amp;').replace(/</g, '&lt;').replace(/>/g, '&gt;').replace(/"/g, '&quot;'); }
+        function attributes(el) {
+            var s = incremental ? ' ai-id="' + idOf(el) + '"' : '';
+            for (var i = 0; i < el.attributes.length; i++) {
+                var a = el.attributes[i];
+                if (ATTRIBUTES.test(a.name)) s += ' ' + a.name + '="' + escape(a.value.substring(0, maxText)) + '"';
+            }
+            return s;
+        }
+        function serialize(root, budget) {
+            var out = [], length = 0;
+            function emit(s) { out.push(s); length += s.length; }
+            var walker = document.createTreeWalker(root, NodeFilter.SHOW_ELEMENT | NodeFilter.SHOW_TEXT, {
+                acceptNode: function(node) {
+                    if (node.nodeType === Node.TEXT_NODE) return NodeFilter.FILTER_ACCEPT;
+                    // rejecting an element skips its whole subtree
+                    return SKIP[node.tagName.toUpperCase()] || hidden(node) ? NodeFilter.FILTER_REJECT : NodeFilter.FILTER_ACCEPT;
+                }
+            });
+            function visit(node) {
+                if (node.nodeType === Node.TEXT_NODE) {
+                    var text = node.nodeValue.replace(/\\s+/g, ' ').trim();
+                    if (text) emit(escape(text.length > maxText ? text.substring(0, maxText) + '...' : text));
+                    return;
+                }
+                var tag = node.tagName.toLowerCase();
+                emit('<' + tag + attributes(node) + '>');
+                if (VOID[tag]) return;
+                if (walker.firstChild()) {
+                    var skipped = 0;
+                    do {
+                        if (length >= budget) skipped++; else visit(walker.currentNode);
+                    } while (walker.nextSibling());
+                    walker.parentNode();
+                    if (skipped > 0) emit('<!-- ' + skipped + ' more nodes truncated -->');
+                }
+                emit('</' + tag + '>');
+            }
+            visit(root);
+            return out.join('');
+        }
+
+        if (incremental && !state.observer) {
+            state.observer = new MutationObserver(function(records) {
+                records.forEach(function(record) {
+                    // attribute to the closest element the model knows
+                    var el = record.target.nodeType === Node.ELEMENT_NODE ? record.target : record.target.parentElement;
+                    while (el && !state.ids.has(el)) el = el.parentElement;
+                    if (el) state.dirty.add(el);
+                });
+            });
+            state.observer.observe(document.documentElement, {
+                subtree: true, childList: true, characterData: true,
+                attributes: true, attributeFilter: ['class', 'style', 'hidden', 'disabled', 'checked', 'selected', 'value', 'href', 'src', 'aria-expanded', 'aria-hidden']
+            });
+        }
+
+        if (incremental && state.snapshotTaken && !forceFull) {
+            var roots = [];
+            state.dirty.forEach(function(el) {
+                var parent = el.parentElement;
+                while (parent && !state.dirty.has(parent)) parent = parent.parentElement;
+                if (!parent) roots.push(el);
+            });
+            state.dirty.clear();
+
+            var parts = [], size = 0, tooLarge = false;
+            for (var i = 0; i < roots.length && !tooLarge; i++) {
+                var el = roots[i], id = state.ids.get(el), part;
+                if (!el.isConnected) part = '[removed ai-id=' + id + ']';
+                else if (hidden(el)) part = '[hidden ai-id=' + id + ']';
+                else part = '[changed ai-id=' + id + ']\\n' + serialize(el, maxChars - size);
+                parts.push(part);
+                size += part.length;
+                // a diff that large is not worth it, send the full page instead
+                tooLarge = size > maxChars / 2;
+            }
+            if (!tooLarge) return { full: false, content: parts.join('\\n') };
+        }
+
+        state.dirty.clear();
+        state.snapshotTaken = incremental;
+        return { full: true, content: serialize(document.documentElement, maxChars) };
+        """;
+
+    private DomCleaner()
+    {
+    }
+
+    /**
+     * A cleaned DOM.
+     *
+     * @param full
+     *            <code>true</code> if the content is the full page, <code>false</code> if it only contains the elements
+     *            that changed since the previous snapshot
+     * @param content
+     *            the cleaned HTML or the changes
+     */
+    public record Snapshot(boolean full, String content)
+    {
+        /**
+         * @return the snapshot as the model gets it, with a note what the content is
+         */
+        public String describe()
+        {
+            if (full)
+            {
+                return "Current Page DOM:\n" + content;
+            }
+            if (content.isEmpty())
+            {
+                return "The page DOM did not change since your last get_page_content call.";
+            }
+            return "Changes of the page DOM since your last get_page_content call. Each block replaces the element with the given ai-id, "
+                   + "everything else is unchanged:\n" + content;
+        }
+    }
+
+    /**
+     * Cleans the full DOM of the current page as configured.
+     *
+     * @return the cleaned HTML
+     */
+    public static String cleanedDom()
+    {
+        return snapshot(true).content();
+    }
+
+    /**
+     * Takes a snapshot of the DOM of the current page. With <code>neodymium.ai.dom.incremental</code> enabled and a
+     * previous snapshot of the same document, only the elements that changed since then are returned.
+     *
+     * @param forceFull
+     *            <code>true</code> to always get the full page
+     * @return the snapshot
+     */
+    public static Snapshot snapshot(boolean forceFull)
+    {
+        AiConfiguration config = AiConfiguration.get();
+        int maxChars = config.domMaxTokens() * CHARS_PER_TOKEN;
+        if (config.domCleaning() == Mode.BROWSER)
+        {
+            Map<String, Object> result = Selenide.executeJavaScript(CLEAN_SCRIPT, maxChars, config.domRemoveHidden(), config.domIncremental(), forceFull);
+            return new Snapshot(Boolean.TRUE.equals(result.get("full")), (String) result.get("content"));
+        }
+        return new Snapshot(true, clean(Selenide.executeJavaScript("return document.documentElement.outerHTML;"), maxChars));
+    }
+
+    /**
+     * Cleans the given page source with Jsoup. Hidden elements can only be detected by their inline style here.
+     *
+     * @param rawHtml
+     *            the page source
+     * @param maxChars
+     *            the size budget of the result
+     * @return the cleaned HTML
+     */
+    public static String clean(String rawHtml, int maxChars)
+    {
+        Document doc = Jsoup.parse(rawHtml);
+
+        // Remove heavy elements that don't aid selector logic
+        doc.select("script, style, svg, noscript, meta, link, template, iframe").remove();
+
+        // Optional: remove hidden elements if you only want visible interaction
+        doc.select("[style*='display: none'], [style*='display:none']").remove();
+
+        truncate(doc, maxChars);
+        return doc.html();
+    }
+
+    /**
+     * Keeps the nodes in document order until the budget is used up and removes the rest, leaving a comment in every
+     * element that lost children.
+     *
+     * @return the remaining budget
+     */
+    private static int truncate(Node node, int budget)
+    {
+        if (!(node instanceof Element element))
+        {
+            return budget - node.outerHtml().length();
+        }
+
+        // opening and closing tag
+        budget -= 2 * element.tagName().length() + element.attributes().html().length() + 5;
+
+        int removed = 0;
+        for (Node child : new ArrayList<>(element.childNodes()))
+        {
+            if (budget <= 0)
+            {
+                child.remove();
+                removed++;
+            }
+            else
+            {
+                budget = truncate(child, budget);
+            }
+        }
+
+        if (removed > 0)
+        {
+            element.appendChild(new Comment(" " + removed + " more nodes truncated "));
+        }
+        return budget;
+    }
+}
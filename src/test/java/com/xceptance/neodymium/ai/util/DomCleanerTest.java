@@ -0,0 +1,100 @@
+package com.xceptance.neodymium.ai.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class DomCleanerTest
+{
+    @Test
+    public void removesHeavyElements()
+    {
+        String cleaned = DomCleaner.clean("""
+            <html><head><meta charset="utf-8"><link rel="stylesheet" href="shop.css"><style>.cart { color: red; }</style></head>
+            <body><script>track();</script><noscript>Enable JavaScript</noscript><svg><path d="M0 0"/></svg>
+            <iframe src="ads.html"></iframe><template><p>row</p></template><button id="buy">Buy</button></body></html>
+            """, 10_000);
+
+        assertTrue(cleaned.contains("<button id=\"buy\">Buy</button>"));
+        for (String removed : new String[]
+        {
+          "<meta", "<link", "<style", "<script", "<noscript", "<svg", "<iframe", "<template", "track()", "Enable JavaScript"
+        })
+        {
+            assertFalse(cleaned.contains(removed), removed);
+        }
+    }
+
+    @Test
+    public void removesElementsHiddenByTheirInlineStyle()
+    {
+        String cleaned = DomCleaner.clean("""
+            <div style="display: none">first secret</div><div style="color: red;display:none">second secret</div>
+            <div style="display: block">visible</div>
+            """, 10_000);
+
+        assertFalse(cleaned.contains("secret"));
+        assertTrue(cleaned.contains("visible"));
+    }
+
+    @Test
+    public void keepsPagesWithinTheBudgetComplete()
+    {
+        String cleaned = DomCleaner.clean(list(20), 10_000);
+
+        assertTrue(cleaned.contains("item 19"));
+        assertTrue(cleaned.contains("<footer>"));
+        assertFalse(cleaned.contains("truncated"));
+    }
+
+    @Test
+    public void capsLargePagesAndKeepsTheStructure()
+    {
+        String cleaned = DomCleaner.clean(list(200), 1_000);
+
+        assertTrue(cleaned.contains("item 0"));
+        assertFalse(cleaned.contains("item 199"));
+        assertFalse(cleaned.contains("<footer>"));
+        assertTrue(cleaned.contains("more nodes truncated"));
+        assertTrue(cleaned.contains("</ul>"));
+        assertTrue(cleaned.trim().endsWith("</html>"));
+        // only the indentation of the output comes on top of the budget
+        assertTrue(cleaned.length() < 1_500, "length " + cleaned.length());
+    }
+
+    @Test
+    public void describesFullSnapshots()
+    {
+        assertEquals("Current Page DOM:\n<html></html>", new DomCleaner.Snapshot(true, "<html></html>").describe());
+        assertEquals("Current Page DOM:\n", new DomCleaner.Snapshot(true, "").describe());
+    }
+
+    @Test
+    public void describesChanges()
+    {
+        String changes = "[changed ai-id=12]\n<span ai-id=\"12\">2 items</span>\n[removed ai-id=7]";
+
+        String described = new DomCleaner.Snapshot(false, changes).describe();
+
+        assertTrue(described.startsWith("Changes of the page DOM since your last get_page_content call."));
+        assertTrue(described.endsWith(":\n" + changes));
+    }
+
+    @Test
+    public void describesAnUnchangedPage()
+    {
+        assertEquals("The page DOM did not change since your last get_page_content call.", new DomCleaner.Snapshot(false, "").describe());
+    }
+
+    private static String list(int items)
+    {
+        StringBuilder html = new StringBuilder("<html><head><title>Shop</title></head><body><ul id=\"list\">");
+        for (int i = 0; i < items; i++)
+        {
+            html.append("<li class=\"item\">item ").append(i).append("</li>");
+        }
+        return html.append("</ul><footer>end</footer></body></html>").toString();
+    }
+}
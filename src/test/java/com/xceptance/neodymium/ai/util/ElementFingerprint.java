@@ -0,0 +1,151 @@
+package com.xceptance.neodymium.ai.util;
+
+import java.util.Map;
+
+import org.openqa.selenium.WebElement;
+
+import com.codeborne.selenide.Selenide;
+
+/**
+ * Identifies the element an action was executed on, so it can be found again in a later run without coordinates.
+ * <p>
+ * The fingerprint consists of a CSS path (anchored at the closest unique id), the tag, a short label (aria-label,
+ * placeholder or visible text), the id and the name of the element. Locating checks the CSS path first and accepts the
+ * hit only if tag and label still match. If the structure of the page changed, the element is looked up by its id, its
+ * name and finally by tag and label, as long as that is unambiguous.
+ * </p>
+ *
+ * @param selector
+ *            the CSS path of the element
+ * @param tag
+ *            the tag name in lower case
+ * @param text
+ *            the label of the element, may be empty
+ * @param id
+ *            the id attribute, may be empty
+ * @param name
+ *            the name attribute, may be empty
+ */
+public record ElementFingerprint(String selector, String tag, String text, String id, String name)
+{
+    private static final String LABEL_SCRIPT = """
+        function labelOf(e) {
+            var tag = e.tagName.toLowerCase(), field = tag === 'input' || tag === 'textarea' || tag === 'select';
+            var label = e.getAttribute('aria-label') || (field ? e.placeholder || '' : e.innerText) || e.title || '';
+            return label.replace(/\\s+/g, ' ').trim().substring(0, 80);
+        }
+        """;
+
+    private static final String CAPTURE_SCRIPT = ElementMap.STATE_SCRIPT + LABEL_SCRIPT + """
+        var mode = arguments[0], el = null;
+        if (mode === 'point') {
+            el = document.elementFromPoint(arguments[1], arguments[2]);
+        } else if (mode === 'id') {
+            el = elementOf(arguments[1]);
+        } else {
+            try { el = document.querySelector(arguments[1]); } catch (e) { el = null; }
+        }
+        if (!el) return null;
+        if (el.tagName === 'LABEL' && el.control) el = el.control;
+        // the hit test usually ends on a span or image inside the link or button that handles the action
+        el = el.closest('a[href], button, input, select, textarea, summary, [role=button], [role=link], [onclick], [contenteditable=""], [contenteditable=true]')
+             || el;
+
+        function unique(e) {
+            return e.id && document.querySelectorAll('#' + CSS.escape(e.id)).length === 1;
+        }
+        var parts = [];
+        for (var e = el; e && e.nodeType === 1 && e !== document.documentElement; e = e.parentElement) {
+            if (unique(e)) {
+                parts.unshift('#' + CSS.escape(e.id));
+                break;
+            }
+            var index = 1, sibling = e;
+            while ((sibling = sibling.previousElementSibling)) {
+                if (sibling.tagName === e.tagName) index++;
+            }
+            parts.unshift(e.tagName.toLowerCase() + ':nth-of-type(' + index + ')');
+        }
+        return { selector: parts.join(' > '), tag: el.tagName.toLowerCase(), text: labelOf(el), id: el.id || '', name: el.getAttribute('name') || '' };
+        """;
+
+    private static final String LOCATE_SCRIPT = LABEL_SCRIPT + """
+        var selector = arguments[0], tag = arguments[1], text = arguments[2], id = arguments[3], name = arguments[4];
+        function matches(e) {
+            return !!e && e.tagName.toLowerCase() === tag && labelOf(e) === text;
+        }
+        function single(list) {
+            var hits = Array.prototype.filter.call(list, matches);
+            return hits.length === 1 ? hits[0] : null;
+        }
+
+        var el = null;
+        try { el = document.querySelector(selector); } catch (e) { el = null; }
+        if (matches(el)) return el;
+        // the structure changed, look for the same element by its identity
+        if (id && matches(document.getElementById(id))) return document.getElementById(id);
+        if (name) {
+            el = single(document.getElementsByName(name));
+            if (el) return el;
+        }
+        return text ? single(document.getElementsByTagName(tag)) : null;
+        """;
+
+    /**
+     * Fingerprints the element at the given viewport coordinates.
+     *
+     * @param x
+     *            the X coordinate in the viewport
+     * @param y
+     *            the Y coordinate in the viewport
+     * @return the fingerprint or <code>null</code> if there is no element
+     */
+    public static ElementFingerprint at(int x, int y)
+    {
+        return of(Selenide.executeJavaScript(CAPTURE_SCRIPT, "point", x, y));
+    }
+
+    /**
+     * Fingerprints the element with the given id of the {@link ElementMap}.
+     *
+     * @param id
+     *            the element id
+     * @return the fingerprint or <code>null</code> if the id is unknown
+     */
+    public static ElementFingerprint ofId(int id)
+    {
+        return of(Selenide.executeJavaScript(CAPTURE_SCRIPT, "id", id, 0));
+    }
+
+    /**
+     * Fingerprints the first element matching the given CSS selector.
+     *
+     * @param selector
+     *            the CSS selector
+     * @return the fingerprint or <code>null</code> if nothing matches
+     */
+    public static ElementFingerprint ofSelector(String selector)
+    {
+        return of(Selenide.executeJavaScript(CAPTURE_SCRIPT, "selector", selector, 0));
+    }
+
+    private static ElementFingerprint of(Map<String, Object> values)
+    {
+        if (values == null)
+        {
+            return null;
+        }
+        return new ElementFingerprint((String) values.get("selector"), (String) values.get("tag"), (String) values.get("text"), (String) values.get("id"),
+                                      (String) values.get("name"));
+    }
+
+    /**
+     * Finds the element in the current page.
+     *
+     * @return the element or <code>null</code> if it is not there or not unambiguous anymore
+     */
+    public WebElement locate()
+    {
+        return Selenide.executeJavaScript(LOCATE_SCRIPT, selector, tag, text, id, name);
+    }
+}
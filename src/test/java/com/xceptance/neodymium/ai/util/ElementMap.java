@@ -0,0 +1,212 @@
+package com.xceptance.neodymium.ai.util;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.openqa.selenium.Keys;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.interactions.Actions;
+
+import com.codeborne.selenide.Selenide;
+import com.codeborne.selenide.SelenideElement;
+import com.codeborne.selenide.WebDriverRunner;
+
+/**
+ * Compact, numbered list of the visible interactive elements of the current viewport, so the model can act on an
+ * element by its id instead of guessing coordinates or writing selectors after reading the whole DOM.
+ * <p>
+ * The ids are kept per document in the page itself and are the same ai-ids the incremental DOM snapshots of the
+ * {@link DomCleaner} use, so an element keeps its id across lists and snapshots until the page navigates.
+ * </p>
+ */
+public final class ElementMap
+{
+    /**
+     * Per document state shared by all page scripts: stable element ids kept in a WeakMap (the DOM is not touched) and
+     * the reverse lookup from id to element.
+     */
+    static final String STATE_SCRIPT = """
+        var state = window.__aiDom || (window.__aiDom = { ids: new WeakMap(), elements: new Map(), nextId: 1, dirty: new Set(), observer: null, snapshotTaken: false });
+        function idOf(el) {
+            var id = state.ids.get(el);
+            if (!id) {
+                id = state.nextId++;
+                state.ids.set(el, id);
+                state.elements.set(id, new WeakRef(el));
+            }
+            return id;
+        }
+        function elementOf(id) {
+            var ref = state.elements.get(id), el = ref && ref.deref();
+            return el && el.isConnected ? el : null;
+        }
+        """;
+
+    private static final String LIST_SCRIPT = STATE_SCRIPT + """
+        var SELECTOR = 'a[href], button, input:not([type=hidden]), select, textarea, summary, [onclick], [contenteditable=""], [contenteditable=true], '
+                       + '[role=button], [role=link], [role=checkbox], [role=radio], [role=tab], [role=menuitem], [role=option], [role=switch], '
+                       + '[tabindex]:not([tabindex="-1"])';
+        var width = window.innerWidth, height = window.innerHeight, lines = [];
+        function grid(value, size) { return Math.round(value / size * 1000); }
+        document.querySelectorAll(SELECTOR).forEach(function(el) {
+            var r = el.getBoundingClientRect();
+            if (r.width === 0 || r.height === 0 || r.bottom < 0 || r.right < 0 || r.top > height || r.left > width) return;
+            if (el.checkVisibility && !el.checkVisibility({ visibilityProperty: true, checkVisibilityCSS: true })) return;
+            // skip elements covered by something else, e.g. by an overlay
+            var cx = Math.min(Math.max(r.left + r.width / 2, 0), width - 1), cy = Math.min(Math.max(r.top + r.height / 2, 0), height - 1);
+            var hit = document.elementFromPoint(cx, cy);
+            if (hit && hit !== el && !el.contains(hit) && !hit.contains(el)) return;
+
+            var tag = el.tagName.toLowerCase();
+            var role = el.getAttribute('role') || (tag === 'input' ? 'input[' + (el.type || 'text') + ']' : tag);
+            var label = el.getAttribute('aria-label') || (el.labels && el.labels.length ? el.labels[0].innerText : '')
+                        || el.innerText || el.placeholder || el.title || (tag === 'input' ? el.value : '') || '';
+            if (!label.trim()) {
+                var img = el.querySelector('img[alt]');
+                if (img) label = img.alt;
+            }
+            label = label.replace(/\\s+/g, ' ').trim().substring(0, 80);
+            lines.push('[' + idOf(el) + '] ' + role + ' "' + label.replace(/"/g, "'") + '" at ' + grid(r.left, width) + ',' + grid(r.top, height)
+                       + ' size ' + grid(r.width, width) + 'x' + grid(r.height, height));
+        });
+        return lines.join('\\n');
+        """;
+
+    /** Input types that hold no text to clear. */
+    private static final Set<String> NOT_CLEARABLE = Set.of("checkbox", "radio", "button", "submit", "reset", "file", "hidden", "image");
+
+    private ElementMap()
+    {
+    }
+
+    /**
+     * Lists the visible, not covered interactive elements of the current viewport, one per line:
+     * <code>[id] role "label" at x,y size width x height</code>, position and size in the 1000x1000 grid of the model.
+     *
+     * @return the element list
+     */
+    public static String list()
+    {
+        return Selenide.executeJavaScript(LIST_SCRIPT);
+    }
+
+    /**
+     * Clicks the element with the given id, scrolling it into view if needed. The click goes through WebDriver unless
+     * <code>neodymium.ai.actions.mode = SCRIPT</code>, see {@link CoordinateActions}.
+     *
+     * @param id
+     *            the id from the element list
+     * @return the result for the function response
+     */
+    public static Map<String, Object> click(int id)
+    {
+        if (AiConfiguration.get().actionMode() == AiConfiguration.ActionMode.SCRIPT)
+        {
+            return CoordinateActions.execute("click", -1, -1, null, false, false, id);
+        }
+
+        WebElement element = elementOf(id);
+        if (element == null)
+        {
+            return unknown(id);
+        }
+        Selenide.$(element).click();
+        return success(element);
+    }
+
+    /**
+     * Hovers over the element with the given id, scrolling it into view if needed. The mouse is always moved via
+     * WebDriver, synthetic events would not trigger CSS <code>:hover</code>.
+     *
+     * @param id
+     *            the id from the element list
+     * @return the result for the function response
+     */
+    public static Map<String, Object> hover(int id)
+    {
+        WebElement element = elementOf(id);
+        if (element == null)
+        {
+            return unknown(id);
+        }
+        Selenide.$(element).hover();
+        return success(element);
+    }
+
+    /**
+     * Clicks the element with the given id and types into the element that has the focus afterwards. Clicking and
+     * typing go through WebDriver unless <code>neodymium.ai.actions.mode = SCRIPT</code>, see
+     * {@link CoordinateActions}.
+     *
+     * @param id
+     *            the id from the element list
+     * @param text
+     *            the text to type
+     * @param clear
+     *            <code>true</code> to replace the current value
+     * @param pressEnter
+     *            <code>true</code> to press enter after typing
+     * @return the result for the function response
+     */
+    public static Map<String, Object> type(int id, String text, boolean clear, boolean pressEnter)
+    {
+        if (AiConfiguration.get().actionMode() == AiConfiguration.ActionMode.SCRIPT)
+        {
+            return CoordinateActions.execute("type", -1, -1, text, clear, pressEnter, id);
+        }
+
+        WebElement element = elementOf(id);
+        if (element == null)
+        {
+            return unknown(id);
+        }
+        SelenideElement selenideElement = Selenide.$(element);
+        if (clear && clearable(element))
+        {
+            selenideElement.clear();
+        }
+        selenideElement.click();
+
+        Actions actions = new Actions(WebDriverRunner.getWebDriver()).sendKeys(text);
+        if (pressEnter)
+        {
+            actions.sendKeys(Keys.ENTER);
+        }
+        actions.perform();
+        return success(element);
+    }
+
+    private static WebElement elementOf(int id)
+    {
+        return Selenide.executeJavaScript(STATE_SCRIPT + "return elementOf(arguments[0]);", id);
+    }
+
+    /**
+     * @return whether the element is an enabled, writable text field
+     */
+    private static boolean clearable(WebElement element)
+    {
+        String tag = element.getTagName().toLowerCase(Locale.ROOT);
+        String type = String.valueOf(element.getAttribute("type")).toLowerCase(Locale.ROOT);
+        return (tag.equals("textarea") || tag.equals("input") && !NOT_CLEARABLE.contains(type)) && element.isEnabled()
+               && element.getAttribute("readonly") == null;
+    }
+
+    private static Map<String, Object> unknown(int id)
+    {
+        Map<String, Object> result = new HashMap<>();
+        result.put("status", "error");
+        result.put("message", "Unknown or outdated element id " + id + ", list the elements again");
+        return result;
+    }
+
+    private static Map<String, Object> success(WebElement element)
+    {
+        Map<String, Object> result = new HashMap<>();
+        result.put("status", "success");
+        result.put("element", element.getTagName());
+        return result;
+    }
+}
@@ -0,0 +1,8 @@
+package com.xceptance.neodymium.ai.util;
+
+/**
+ * An encoded image together with its mime type, ready to be sent to the model.
+ */
+public record EncodedImage(byte[] data, String mimeType)
+{
+}
@@ -0,0 +1,150 @@
+package com.xceptance.neodymium.ai.util;
+
+import java.util.Map;
+
+import org.openqa.selenium.ScriptTimeoutException;
+import org.openqa.selenium.WebDriverException;
+
+import com.codeborne.selenide.Selenide;
+import com.xceptance.neodymium.ai.log.AgentLog;
+import com.xceptance.neodymium.ai.metrics.Phase;
+import com.xceptance.neodymium.ai.metrics.RunMetrics;
+import com.xceptance.neodymium.util.Neodymium;
+
+/**
+ * Waits until the page has settled after an action, instead of sleeping for a fixed time.
+ * <p>
+ * The page counts as settled once the document is loaded, no fetch/XHR request is pending, no finite animation is
+ * running and the DOM has not been mutated for the configured quiet period. The viewport size is reported along the
+ * way and refreshes the {@link ViewportGeometry} cache. The wait is bounded by a timeout, so a page
+ * that never settles (e.g. a ticker) costs at most that long.
+ * </p>
+ */
+public final class PageStability
+{
+    /**
+     * Installs the request counter once per page and polls the stability criteria. Requests started before the counter
+     * is installed can't be seen, but those are covered by the DOM quiet period in practice.
+     */
+    private static final String WAIT_SCRIPT = """
+        var quietPeriod = arguments[0], timeout = arguments[1], done = arguments[arguments.length - 1];
+        if (!window.__aiPendingRequests) {
+            var pending = window.__aiPendingRequests = { count: 0 };
+            if (window.fetch) {
+                var originalFetch = window.fetch;
+                window.fetch = function() {
+                    pending.count++;
+                    return originalFetch.apply(this, arguments).finally(function() { pending.count--; });
+                };
+            }
+            var originalSend = XMLHttpRequest.prototype.send;
+            XMLHttpRequest.prototype.send = function() {
+                pending.count++;
+                this.addEventListener('loadend', function() { pending.count--; }, { once: true });
+                return originalSend.apply(this, arguments);
+            };
+        }
+        var start = performance.now(), lastMutation = start;
+        var observer = new MutationObserver(function() { lastMutation = performance.now(); });
+        observer.observe(document, { subtree: true, childList: true, attributes: true, characterData: true });
+        function animating() {
+            if (!document.getAnimations) return false;
+            return document.getAnimations().some(function(a) {
+                if (a.playState !== 'running') return false;
+                // infinite animations (spinners, carousels) would never end
+                var timing = a.effect && a.effect.getComputedTiming ? a.effect.getComputedTiming() : null;
+                return timing !== null && timing.iterations !== Infinity;
+            });
+        }
+        function check() {
+            var now = performance.now();
+            var settled = document.readyState === 'complete' && window.__aiPendingRequests.count <= 0
+                          && now - lastMutation >= quietPeriod && !animating();
+            if (settled || now - start >= timeout) {
+                observer.disconnect();
+                done({ settled: settled, waited: Math.round(now - start), width: window.innerWidth, height: window.innerHeight });
+                return;
+            }
+            setTimeout(check, 25);
+        }
+        check();
+        """;
+
+    /**
+     * The outcome of a wait.
+     *
+     * @param settled
+     *            <code>true</code> if the page settled, <code>false</code> if the timeout was reached first
+     * @param waited
+     *            the time waited in milliseconds
+     */
+    public record Result(boolean settled, long waited)
+    {
+    }
+
+    private PageStability()
+    {
+    }
+
+    /**
+     * Waits with the configured quiet period and timeout.
+     *
+     * @return whether the page settled and how long that took
+     */
+    public static Result waitForStablePage()
+    {
+        return waitForStablePage(AiConfiguration.get().stabilityQuietPeriod(), AiConfiguration.get().stabilityTimeout());
+    }
+
+    /**
+     * Waits until the page has settled or the timeout is reached.
+     *
+     * @param quietPeriod
+     *            the time the DOM must not change
+     * @param timeout
+     *            the maximum time to wait
+     * @return whether the page settled and how long that took
+     */
+    public static Result waitForStablePage(long quietPeriod, long timeout)
+    {
+        long start = System.currentTimeMillis();
+        long remaining = timeout;
+        boolean settled = false;
+        try (RunMetrics.Timer timer = RunMetrics.timer(Phase.WAIT))
+        {
+            while (remaining > 0)
+            {
+                try
+                {
+                    Map<String, Object> result = Selenide.executeAsyncJavaScript(WAIT_SCRIPT, quietPeriod, remaining);
+                    settled = result != null && Boolean.TRUE.equals(result.get("settled"));
+                    if (result != null && result.get("width") instanceof Number width && result.get("height") instanceof Number height)
+                    {
+                        // free refresh of the viewport cache, a resize since the last step is picked up here
+                        ViewportGeometry.of(Neodymium.getDriver()).update(width.longValue(), height.longValue());
+                    }
+                    break;
+                }
+                catch (ScriptTimeoutException e)
+                {
+                    // the WebDriver script timeout is shorter than the requested wait, not settled
+                    break;
+                }
+                catch (WebDriverException e)
+                {
+                    // the page navigated away while we were waiting, start over on the new document
+                    Selenide.sleep(50);
+                }
+                remaining = timeout - (System.currentTimeMillis() - start);
+            }
+        }
+
+        long waited = System.currentTimeMillis() - start;
+        AgentLog log = AgentLog.current();
+        if (!settled && log != null)
+        {
+            log.debug("Page did not settle within " + timeout + " ms");
+        }
+        return new Result(settled, waited);
+    }
+}
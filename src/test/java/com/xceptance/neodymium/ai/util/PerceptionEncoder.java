@@ -0,0 +1,149 @@
+package com.xceptance.neodymium.ai.util;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Encodes screenshots for the model. Full resolution lossless PNGs are expensive to upload and cost more image tokens
+ * than the model needs to understand a page, so by default images are downscaled and sent as JPEG. Details can be
+ * requested by the model on demand via the zoom_region tool, see {@link #encodeZoom(BufferedImage)}.
+ */
+public final class PerceptionEncoder
+{
+    /**
+     * The available output formats.
+     */
+    public enum Format
+    {
+        JPEG("jpeg", "image/jpeg"), PNG("png", "image/png");
+
+        private final String imageIoName;
+
+        private final String mimeType;
+
+        Format(String imageIoName, String mimeType)
+        {
+            this.imageIoName = imageIoName;
+            this.mimeType = mimeType;
+        }
+    }
+
+    private PerceptionEncoder()
+    {
+    }
+
+    /**
+     * Encodes a screenshot with the configured format and size limits.
+     *
+     * @param image
+     *            the full resolution screenshot
+     * @return the image to send to the model
+     */
+    public static EncodedImage encode(BufferedImage image)
+    {
+        AiConfiguration config = AiConfiguration.get();
+
+        double scale = Math.min(1.0, Math.min((double) config.perceptionMaxWidth() / image.getWidth(),
+                                              (double) config.perceptionMaxHeight() / image.getHeight()));
+
+        return encode(scale(image, scale), config.perceptionFormat(), config.perceptionJpegQuality());
+    }
+
+    /**
+     * Encodes a PNG screenshot with the configured format and size limits. If the screenshot already satisfies them, it
+     * is passed through without being decoded.
+     *
+     * @param png
+     *            the full resolution screenshot as PNG
+     * @param decoded
+     *            the decoded screenshot if the caller has it at hand anyway, <code>null</code> otherwise
+     * @return the image to send to the model
+     * @throws IOException
+     *             if the screenshot has to be decoded but can't be
+     */
+    public static EncodedImage encode(byte[] png, BufferedImage decoded) throws IOException
+    {
+        AiConfiguration config = AiConfiguration.get();
+        if (config.perceptionFormat() == Format.PNG && png.length > 24)
+        {
+            // width and height are the first fields of the IHDR chunk, right after the 8 byte signature and chunk header
+            ByteBuffer header = ByteBuffer.wrap(png, 16, 8);
+            if (header.getInt() <= config.perceptionMaxWidth() && header.getInt() <= config.perceptionMaxHeight())
+            {
+                return new EncodedImage(png, Format.PNG.mimeType);
+            }
+        }
+
+        return encode(decoded != null ? decoded : ScreenshotMarker.decode(png));
+    }
+
+    /**
+     * Encodes a zoomed region lossless and at full resolution, since the model explicitly asked for the details.
+     *
+     * @param region
+     *            the cropped region of a screenshot
+     * @return the image to send to the model
+     */
+    public static EncodedImage encodeZoom(BufferedImage region)
+    {
+        return encode(region, Format.PNG, 1f);
+    }
+
+    private static BufferedImage scale(BufferedImage image, double scale)
+    {
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+
+        if (scale >= 1.0 && image.getType() == BufferedImage.TYPE_INT_RGB)
+        {
+            return image;
+        }
+
+        // JPEG has no alpha channel, so always draw into a plain RGB image
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = scaled.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.drawImage(image, 0, 0, width, height, null);
+        g2d.dispose();
+        return scaled;
+    }
+
+    private static EncodedImage encode(BufferedImage image, Format format, float jpegQuality)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(format.imageIoName).next();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out))
+        {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (format == Format.JPEG)
+            {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(jpegQuality);
+            }
+
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(image, null, null), param);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Failed to encode screenshot as " + format, e);
+        }
+        finally
+        {
+            writer.dispose();
+        }
+
+        return new EncodedImage(out.toByteArray(), format.mimeType);
+    }
+}
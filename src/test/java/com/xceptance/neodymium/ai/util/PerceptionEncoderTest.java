@@ -0,0 +1,142 @@
+package com.xceptance.neodymium.ai.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class PerceptionEncoderTest
+{
+    private static final String FORMAT = "neodymium.ai.perception.format";
+
+    private boolean formatChanged;
+
+    private String previousFormat;
+
+    @AfterEach
+    public void restoreConfiguration()
+    {
+        if (!formatChanged)
+        {
+            return;
+        }
+        if (previousFormat != null)
+        {
+            AiConfiguration.get().setProperty(FORMAT, previousFormat);
+        }
+        else
+        {
+            AiConfiguration.get().removeProperty(FORMAT);
+        }
+    }
+
+    @Test
+    public void downscalesToTheMaximumSizeAsJpeg() throws IOException
+    {
+        EncodedImage encoded = PerceptionEncoder.encode(image(1600, 800, BufferedImage.TYPE_INT_RGB));
+
+        assertEquals("image/jpeg", encoded.mimeType());
+        assertSize(1024, 512, encoded);
+    }
+
+    @Test
+    public void doesNotUpscaleSmallImages() throws IOException
+    {
+        EncodedImage encoded = PerceptionEncoder.encode(image(800, 400, BufferedImage.TYPE_INT_RGB));
+
+        assertSize(800, 400, encoded);
+    }
+
+    @Test
+    public void dropsTheAlphaChannelForJpeg() throws IOException
+    {
+        EncodedImage encoded = PerceptionEncoder.encode(image(300, 200, BufferedImage.TYPE_INT_ARGB));
+
+        assertEquals("image/jpeg", encoded.mimeType());
+        assertSize(300, 200, encoded);
+    }
+
+    @Test
+    public void passesSmallPngsThrough() throws IOException
+    {
+        format("PNG");
+        byte[] png = png(image(800, 400, BufferedImage.TYPE_INT_RGB));
+
+        EncodedImage encoded = PerceptionEncoder.encode(png, null);
+
+        assertSame(png, encoded.data());
+        assertEquals("image/png", encoded.mimeType());
+    }
+
+    @Test
+    public void downscalesLargePngs() throws IOException
+    {
+        format("PNG");
+        BufferedImage image = image(1600, 800, BufferedImage.TYPE_INT_RGB);
+
+        EncodedImage encoded = PerceptionEncoder.encode(png(image), image);
+
+        assertEquals("image/png", encoded.mimeType());
+        assertSize(1024, 512, encoded);
+    }
+
+    @Test
+    public void decodesPngsForJpeg() throws IOException
+    {
+        EncodedImage encoded = PerceptionEncoder.encode(png(image(800, 400, BufferedImage.TYPE_INT_RGB)), null);
+
+        assertEquals("image/jpeg", encoded.mimeType());
+        assertSize(800, 400, encoded);
+    }
+
+    @Test
+    public void zoomKeepsTheFullResolution() throws IOException
+    {
+        EncodedImage encoded = PerceptionEncoder.encodeZoom(image(1600, 800, BufferedImage.TYPE_INT_RGB));
+
+        assertEquals("image/png", encoded.mimeType());
+        assertSize(1600, 800, encoded);
+    }
+
+    private void format(String format)
+    {
+        previousFormat = AiConfiguration.get().setProperty(FORMAT, format);
+        formatChanged = true;
+    }
+
+    private static void assertSize(int width, int height, EncodedImage encoded) throws IOException
+    {
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(encoded.data()));
+        assertEquals(width, decoded.getWidth());
+        assertEquals(height, decoded.getHeight());
+    }
+
+    static BufferedImage image(int width, int height, int type)
+    {
+        BufferedImage image = new BufferedImage(width, height, type);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setColor(Color.WHITE);
+        g2d.fillRect(0, 0, width, height);
+        g2d.setColor(Color.BLUE);
+        g2d.fillRect(width / 4, height / 4, width / 2, height / 2);
+        g2d.dispose();
+        return image;
+    }
+
+    static byte[] png(BufferedImage image) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
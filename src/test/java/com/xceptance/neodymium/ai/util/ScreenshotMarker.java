@@ -2,21 +2,28 @@ package com.xceptance.neodymium.ai.util;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
 
 import org.openqa.selenium.OutputType;
 import org.openqa.selenium.TakesScreenshot;
 
-import com.xceptance.neodymium.util.AllureAddons;
+import com.xceptance.neodymium.ai.log.AgentLog;
+import com.xceptance.neodymium.ai.metrics.Phase;
+import com.xceptance.neodymium.ai.metrics.RunMetrics;
 import com.xceptance.neodymium.util.Neodymium;
 
 public class ScreenshotMarker
@@ -30,7 +37,23 @@ public class ScreenshotMarker
     private static final Color MARKER_COLOR = Color.PINK;
 
     /**
-     * Takes a screenshot of the current viewport and draws a 5x5 pink square centered at the given coordinates.
+     * Per thread image buffer, so marking a screenshot does not allocate a new multi-megabyte image every time.
+     */
+    private static final ThreadLocal<BufferedImage> IMAGE_BUFFER = new ThreadLocal<>();
+
+    private static final long PROCESS_ID = ProcessHandle.current().pid();
+
+    private static final AtomicLong SCREENSHOT_COUNTER = new AtomicLong();
+
+    /**
+     * Takes a screenshot of the current viewport and draws a 5x5 pink square centered at the given coordinates. Only
+     * the part of the screenshot that changed since the previous call with the same {@link VisualDelta} is prepared for
+     * the model.
+     * <p>
+     * The screenshot is only decoded if a marker has to be drawn (or the model needs a different encoding) and it is
+     * PNG encoded at most once. The same bytes are written to disk and attached to the Allure report by the
+     * {@link ArtifactWriter}.
+     * </p>
      *
      * @param x
      *            The X coordinate relative to the viewport bounds.
@@ -38,76 +61,298 @@ public class ScreenshotMarker
      *            The Y coordinate relative to the viewport bounds.
      * @param baseFileName
      *            The desired start of the filename (e.g., "click-failure").
-     * @return The final saved File object.
+     * @param visualDelta
+     *            The change detection of the current session or <code>null</code> to always prepare the full
+     *            screenshot.
+     * @return The frame for the model.
      */
-    public static byte[] takeScreenshotWithMarker(int x, int y, String baseFileName)
+    public static VisualDelta.Frame takeScreenshotWithMarker(int x, int y, String baseFileName, VisualDelta visualDelta)
     {
-        try
+        // 1. Capture the raw screenshot using underlying Selenium driver, the browser already delivers a PNG
+        byte[] png = capture();
+
+        try (RunMetrics.Timer timer = RunMetrics.timer(Phase.ENCODING))
         {
-            // 1. Capture the raw screenshot using underlying Selenium driver
-            // We use this method to ensure we get the current viewport dimensions accurately
-            File rawScreenshot = ((TakesScreenshot) Neodymium.getDriver())
-                                                                          .getScreenshotAs(OutputType.FILE);
+            BufferedImage image = null;
+            VisualDelta.Change change = null;
+            if (visualDelta != null)
+            {
+                // compare before the marker is drawn, the marker alone is no change of the page
+                image = decode(png);
+                change = visualDelta.compare(image);
+            }
+
+            if (x > 0 && y > 0)
+            {
+                // 2. Read image into a reused buffer for editing
+                if (image == null)
+                {
+                    image = decode(png);
+                }
+
+                // 3. Draw the marker
+                Rectangle marker = drawMarker(image, x, y);
+
+                if (change != null)
+                {
+                    // the model has to see the marker to verify its coordinates
+                    change = visualDelta.include(change, marker, image.getWidth(), image.getHeight());
+                }
 
-            // 2. Read image into memory for editing
-            BufferedImage image = ImageIO.read(rawScreenshot);
+                // 4. Encode the marked image once, the bytes are shared by disk and report
+                png = encode(image, png.length);
+            }
+
+            // 5. Write the image to disk and attach the same bytes to the report, both in the background
+            ArtifactWriter.write(reportFile(baseFileName), png);
 
+            ArtifactWriter.attach("Screenshot" + baseFileName, "image/png", ".png", png);
+
+            // 6. Encode the image for the model (downscaled, see PerceptionEncoder), reusing the decoded image if any
+            if (change == null || change.full())
+            {
+                return new VisualDelta.Frame(PerceptionEncoder.encode(png, image), null);
+            }
+            if (change.unchanged())
+            {
+                return new VisualDelta.Frame(null, null);
+            }
+
+            Rectangle region = change.region();
+            Rectangle gridRegion = new Rectangle(region.x * 1000 / image.getWidth(), region.y * 1000 / image.getHeight(),
+                                                 region.width * 1000 / image.getWidth(), region.height * 1000 / image.getHeight());
+            return new VisualDelta.Frame(PerceptionEncoder.encode(image.getSubimage(region.x, region.y, region.width, region.height)), gridRegion);
+
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Failed to mark coordinate on screenshot", e);
+        }
+    }
+
+    /**
+     * Captures the current viewport as PNG, exactly as the browser delivers it.
+     *
+     * @return the encoded screenshot
+     */
+    public static byte[] capture()
+    {
+        try (RunMetrics.Timer timer = RunMetrics.timer(Phase.SCREENSHOT))
+        {
+            return ((TakesScreenshot) Neodymium.getDriver()).getScreenshotAs(OutputType.BYTES);
+        }
+    }
+
+    /**
+     * Attaches an already captured screenshot with a 5x5 pink square centered at the given coordinates to the report.
+     * Decoding, marking and encoding happen in the background on the {@link ArtifactWriter}, only the attachment is
+     * registered with the current step right away. Meant for debug screenshots nobody waits for.
+     *
+     * @param png
+     *            The screenshot as captured by {@link #capture()}, must not be modified afterwards.
+     * @param x
+     *            The X coordinate relative to the viewport bounds, not positive for no marker.
+     * @param y
+     *            The Y coordinate relative to the viewport bounds, not positive for no marker.
+     * @param baseFileName
+     *            The desired start of the filename (e.g., "click-failure").
+     */
+    public static void attachScreenshotWithMarker(byte[] png, int x, int y, String baseFileName)
+    {
+        Path file = reportFile(baseFileName);
+        ArtifactWriter.attach("Screenshot" + baseFileName, "image/png", ".png", () -> {
+            byte[] marked = png;
             if (x > 0 && y > 0)
             {
-                // 3. Create a Graphics2D context to draw on the image
-                Graphics2D g2d = image.createGraphics();
-
-                // ---- Drawing Logic ----
-                g2d.setColor(MARKER_COLOR);
-
-                // To center a 5x5 square on (x,y), we must offset the top-left corner by 2 pixels
-                // e.g., if target is (100,100), we draw from (98, 98) to (103, 103).
-                int offset = MARKER_SIZE / 2; // Results in 2 for integer division of 5
-                int drawX = x - offset;
-                int drawY = y - offset;
-
-                // Draw a filled square
-                g2d.fillRect(drawX, drawY, MARKER_SIZE, MARKER_SIZE);
-                // Optional: Draw a border around the square for better visibility on pink backgrounds
-                // g2d.setColor(Color.BLACK);
-                // g2d.drawRect(drawX, drawY, MARKER_SIZE, MARKER_SIZE);
-                // -----------------------
-
-                // Dispose context to free resources
-                g2d.dispose();
+                try
+                {
+                    marked = mark(png, x, y);
+                }
+                catch (IOException e)
+                {
+                    AgentLog.reportError("Failed to mark coordinate on screenshot " + file, e);
+                }
             }
-            // 4. Prepare output directory and filename
-            String timestamp = System.currentTimeMillis() + "";
-            String finalFileName = timestamp + "_" + baseFileName + "_marked.png";
-            // Default Selenide reports folder, change if necessary
-            String reportsPath = "build/reports/tests";
-            Path outputDir = Paths.get(reportsPath);
-
-            if (!Files.exists(outputDir))
+            ArtifactWriter.writeNow(file, marked);
+            return marked;
+        });
+    }
+
+    /**
+     * Draws a 5x5 pink square centered at the given coordinates onto a PNG screenshot.
+     *
+     * @param png
+     *            The screenshot as PNG.
+     * @param x
+     *            The X coordinate of the center.
+     * @param y
+     *            The Y coordinate of the center.
+     * @return The marked screenshot as PNG.
+     * @throws IOException
+     *             if the screenshot can't be decoded or encoded
+     */
+    public static byte[] mark(byte[] png, int x, int y) throws IOException
+    {
+        BufferedImage image = decode(png);
+        drawMarker(image, x, y);
+        return encode(image, png.length);
+    }
+
+    /**
+     * Draws the marker centered at the given coordinates.
+     *
+     * @param image
+     *            the image to draw on
+     * @param x
+     *            the X coordinate of the center
+     * @param y
+     *            the Y coordinate of the center
+     * @return the area covered by the marker
+     */
+    private static Rectangle drawMarker(BufferedImage image, int x, int y)
+    {
+        // Create a Graphics2D context to draw on the image
+        Graphics2D g2d = image.createGraphics();
+
+        // ---- Drawing Logic ----
+        g2d.setColor(MARKER_COLOR);
+
+        // To center a 5x5 square on (x,y), we must offset the top-left corner by 2 pixels
+        // e.g., if target is (100,100), we draw from (98, 98) to (103, 103).
+        int offset = MARKER_SIZE / 2; // Results in 2 for integer division of 5
+        int drawX = x - offset;
+        int drawY = y - offset;
+
+        // Draw a filled square
+        g2d.fillRect(drawX, drawY, MARKER_SIZE, MARKER_SIZE);
+        // Optional: Draw a border around the square for better visibility on pink backgrounds
+        // g2d.setColor(Color.BLACK);
+        // g2d.drawRect(drawX, drawY, MARKER_SIZE, MARKER_SIZE);
+        // -----------------------
+
+        // Dispose context to free resources
+        g2d.dispose();
+
+        return new Rectangle(drawX, drawY, MARKER_SIZE, MARKER_SIZE);
+    }
+
+    /**
+     * @param baseFileName
+     *            the start of the filename
+     * @return the file in the reports folder a screenshot is written to
+     */
+    private static Path reportFile(String baseFileName)
+    {
+        // parallel sessions and forks take screenshots in the same millisecond, process and counter keep them apart
+        String timestamp = System.currentTimeMillis() + "_" + PROCESS_ID + "-" + SCREENSHOT_COUNTER.incrementAndGet();
+        String finalFileName = timestamp + "_" + baseFileName + "_marked.png";
+        // Default Selenide reports folder, change if necessary
+        String reportsPath = "build/reports/tests";
+        return Paths.get(reportsPath).resolve(finalFileName);
+    }
+
+    /**
+     * Decodes a PNG into the image buffer of the current thread if it matches size and type of the screenshot, into a
+     * new image (which then becomes the buffer) otherwise.
+     *
+     * @param png
+     *            the encoded screenshot
+     * @return the decoded image, only valid until the next call on this thread
+     * @throws IOException
+     *             if the image can't be decoded
+     */
+    public static BufferedImage decode(byte[] png) throws IOException
+    {
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(png)))
+        {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext())
             {
-                Files.createDirectories(outputDir);
+                throw new IOException("Unsupported screenshot format");
             }
 
-            File outputFile = outputDir.resolve(finalFileName).toFile();
+            ImageReader reader = readers.next();
+            try
+            {
+                reader.setInput(in, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
 
-            // 5. Write the modified image to disk
-            ImageIO.write(image, "png", outputFile);
+                BufferedImage buffer = IMAGE_BUFFER.get();
+                // the raw type of a PNG is always custom, the default destination is what the reader decodes into
+                Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+                int type = types.hasNext() ? types.next().getBufferedImageType() : BufferedImage.TYPE_CUSTOM;
+                if (buffer != null && type != BufferedImage.TYPE_CUSTOM && buffer.getType() == type
+                    && buffer.getWidth() == reader.getWidth(0) && buffer.getHeight() == reader.getHeight(0))
+                {
+                    param.setDestination(buffer);
+                }
 
-            // 6. Convert BufferedImage to byte[]
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            // Choose your format here ("png", "jpg", "gif")
-            ImageIO.write(image, "png", baos);
-            
-            AllureAddons.addAttachmentToStep("Screenshot" + baseFileName, "image/png", ".png", new FileInputStream(outputFile));
+                BufferedImage image = reader.read(0, param);
+                IMAGE_BUFFER.set(image);
+                return image;
+            }
+            finally
+            {
+                reader.dispose();
+            }
+        }
+    }
 
-            byte[] imageBytes = baos.toByteArray();
+    /**
+     * Encodes an image as PNG.
+     *
+     * @param image
+     *            the image
+     * @param sizeHint
+     *            the expected size of the result in bytes, e.g. the size of the unmarked screenshot
+     * @return the encoded image
+     * @throws IOException
+     *             if the image can't be encoded
+     */
+    public static byte[] encode(BufferedImage image, int sizeHint) throws IOException
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(sizeHint + 1024);
+        ImageIO.write(image, "png", baos);
+        return baos.toByteArray();
+    }
 
-            return imageBytes;
+    /**
+     * Takes a screenshot of the current viewport and crops the given region at full resolution. The region is given in
+     * the 1000x1000 grid the model uses for coordinates.
+     *
+     * @param x
+     *            The left edge of the region.
+     * @param y
+     *            The top edge of the region.
+     * @param width
+     *            The width of the region.
+     * @param height
+     *            The height of the region.
+     * @return The cropped region encoded for the model, see {@link PerceptionEncoder#encodeZoom(BufferedImage)}.
+     */
+    public static EncodedImage takeRegionScreenshot(int x, int y, int width, int height)
+    {
+        byte[] png = capture();
+        try (RunMetrics.Timer timer = RunMetrics.timer(Phase.ENCODING))
+        {
+            BufferedImage image = decode(png);
+
+            // map the 1000x1000 grid to image pixels, the screenshot might be scaled by the device pixel ratio
+            int left = clamp(Math.round(x / 1000f * image.getWidth()), 0, image.getWidth() - 1);
+            int top = clamp(Math.round(y / 1000f * image.getHeight()), 0, image.getHeight() - 1);
+            int right = clamp(Math.round((x + width) / 1000f * image.getWidth()), left + 1, image.getWidth());
+            int bottom = clamp(Math.round((y + height) / 1000f * image.getHeight()), top + 1, image.getHeight());
 
+            return PerceptionEncoder.encodeZoom(image.getSubimage(left, top, right - left, bottom - top));
         }
         catch (IOException e)
         {
-            throw new RuntimeException("Failed to mark coordinate on screenshot", e);
+            throw new RuntimeException("Failed to take region screenshot", e);
         }
     }
-}
\ No newline at end of file
+
+    private static int clamp(int value, int min, int max)
+    {
+        return Math.max(min, Math.min(max, value));
+    }
+}
@@ -0,0 +1,87 @@
+package com.xceptance.neodymium.ai.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+public class ScreenshotMarkerTest
+{
+    private static final int WHITE = Color.WHITE.getRGB() & 0xFFFFFF;
+
+    private static final int PINK = Color.PINK.getRGB() & 0xFFFFFF;
+
+    @Test
+    public void marksTheClickPosition() throws IOException
+    {
+        BufferedImage marked = ScreenshotMarker.decode(ScreenshotMarker.mark(png(200, 100, Color.WHITE), 50, 40));
+
+        assertEquals(200, marked.getWidth());
+        assertEquals(100, marked.getHeight());
+        assertEquals(PINK, rgb(marked, 50, 40));
+        assertEquals(PINK, rgb(marked, 48, 38));
+        assertEquals(PINK, rgb(marked, 52, 42));
+        assertEquals(WHITE, rgb(marked, 47, 40));
+        assertEquals(WHITE, rgb(marked, 53, 40));
+        assertEquals(WHITE, rgb(marked, 50, 43));
+    }
+
+    @Test
+    public void clipsMarkersAtTheEdge() throws IOException
+    {
+        byte[] png = png(200, 100, Color.WHITE);
+
+        assertEquals(PINK, rgb(ScreenshotMarker.decode(ScreenshotMarker.mark(png, 0, 0)), 0, 0));
+        assertEquals(PINK, rgb(ScreenshotMarker.decode(ScreenshotMarker.mark(png, 199, 99)), 199, 99));
+        assertEquals(WHITE, rgb(ScreenshotMarker.decode(ScreenshotMarker.mark(png, 500, 500)), 199, 99));
+    }
+
+    @Test
+    public void decodeReusesTheBufferForScreenshotsOfTheSameSize() throws IOException
+    {
+        BufferedImage first = ScreenshotMarker.decode(png(200, 100, Color.WHITE));
+        BufferedImage second = ScreenshotMarker.decode(png(200, 100, Color.BLUE));
+
+        assertSame(first, second);
+        assertEquals(Color.BLUE.getRGB() & 0xFFFFFF, rgb(second, 10, 10));
+
+        BufferedImage resized = ScreenshotMarker.decode(png(100, 200, Color.WHITE));
+        assertNotSame(second, resized);
+        assertEquals(100, resized.getWidth());
+        assertEquals(WHITE, rgb(resized, 10, 10));
+    }
+
+    @Test
+    public void encodeAndDecodeRoundTrip() throws IOException
+    {
+        BufferedImage image = PerceptionEncoderTest.image(120, 80, BufferedImage.TYPE_INT_RGB);
+
+        BufferedImage decoded = ScreenshotMarker.decode(ScreenshotMarker.encode(image, 0));
+
+        assertEquals(image.getWidth(), decoded.getWidth());
+        assertEquals(image.getHeight(), decoded.getHeight());
+        assertEquals(rgb(image, 0, 0), rgb(decoded, 0, 0));
+        assertEquals(rgb(image, 60, 40), rgb(decoded, 60, 40));
+    }
+
+    private static byte[] png(int width, int height, Color color) throws IOException
+    {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setColor(color);
+        g2d.fillRect(0, 0, width, height);
+        g2d.dispose();
+        return ScreenshotMarker.encode(image, 0);
+    }
+
+    private static int rgb(BufferedImage image, int x, int y)
+    {
+        return image.getRGB(x, y) & 0xFFFFFF;
+    }
+}
@@ -0,0 +1,65 @@
+package com.xceptance.neodymium.ai.util;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+
+import org.junit.platform.engine.ConfigurationParameters;
+import org.junit.platform.engine.support.hierarchical.ParallelExecutionConfiguration;
+import org.junit.platform.engine.support.hierarchical.ParallelExecutionConfigurationStrategy;
+
+/**
+ * Lets JUnit run as many agent sessions at the same time as configured via {@link AiConfiguration#parallelSessions()}.
+ * Every session runs on its own thread and therefore gets its own browser. The pool is capped, so blocking sessions
+ * don't make JUnit start additional ones.
+ * <p>
+ * Registered in <code>junit-platform.properties</code>.
+ * </p>
+ */
+public class SessionParallelism implements ParallelExecutionConfigurationStrategy
+{
+    @Override
+    public ParallelExecutionConfiguration createConfiguration(ConfigurationParameters configurationParameters)
+    {
+        int sessions = Math.max(1, AiConfiguration.get().parallelSessions());
+
+        return new ParallelExecutionConfiguration()
+        {
+            @Override
+            public int getParallelism()
+            {
+                return sessions;
+            }
+
+            @Override
+            public int getMinimumRunnable()
+            {
+                return sessions;
+            }
+
+            @Override
+            public int getMaxPoolSize()
+            {
+                return sessions;
+            }
+
+            @Override
+            public int getCorePoolSize()
+            {
+                return sessions;
+            }
+
+            @Override
+            public int getKeepAliveSeconds()
+            {
+                return 30;
+            }
+
+            @Override
+            public Predicate<? super ForkJoinPool> getSaturatePredicate()
+            {
+                // never add threads beyond the maximum, the session just waits for a free one
+                return pool -> true;
+            }
+        };
+    }
+}
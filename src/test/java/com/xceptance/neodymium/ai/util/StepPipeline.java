@@ -0,0 +1,121 @@
+package com.xceptance.neodymium.ai.util;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Overlaps the browser work of a step with the latency of the model call.
+ * <p>
+ * The model call runs on a background thread while the calling thread, which owns the browser, does speculative work
+ * such as capturing the screenshot of the next step. Streamed chunks are handed back to the calling thread and
+ * processed there in order, so browser actions are never executed concurrently or out of order. With
+ * {@link AiConfiguration#pipelineEnabled()} turned off everything runs on the calling thread, one after the other.
+ * </p>
+ */
+public final class StepPipeline
+{
+    /** Marks the end of the chunks in the queue. */
+    private static final Object END = new Object();
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    /** Model calls mostly wait for the network, so one thread per running call is fine. */
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "ai-pipeline-" + THREAD_COUNTER.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private StepPipeline()
+    {
+    }
+
+    /**
+     * Runs the call in the background and the given work on the calling thread meanwhile.
+     *
+     * @param call
+     *            the call to run in the background, must not touch the browser
+     * @param whileWaiting
+     *            the work to do on the calling thread while the call is running
+     * @return the result of the call
+     */
+    public static <R> R call(Supplier<R> call, Runnable whileWaiting)
+    {
+        return stream(onChunk -> call.get(), whileWaiting, chunk -> {
+        });
+    }
+
+    /**
+     * Runs a streaming call in the background and the given work on the calling thread meanwhile. Afterwards every
+     * chunk the call produces is processed on the calling thread, in order, as soon as it arrives.
+     *
+     * @param call
+     *            the call to run in the background, gets the consumer to hand its chunks to, must not touch the browser
+     * @param whileWaiting
+     *            the work to do on the calling thread while the call is running
+     * @param onChunk
+     *            processes the chunks on the calling thread
+     * @return the result of the call
+     */
+    @SuppressWarnings("unchecked")
+    public static <C, R> R stream(Function<Consumer<C>, R> call, Runnable whileWaiting, Consumer<C> onChunk)
+    {
+        if (!AiConfiguration.get().pipelineEnabled())
+        {
+            whileWaiting.run();
+            return call.apply(onChunk);
+        }
+
+        LinkedBlockingQueue<Object> chunks = new LinkedBlockingQueue<>();
+        Future<R> result = EXECUTOR.submit(() -> {
+            try
+            {
+                return call.apply(chunks::add);
+            }
+            finally
+            {
+                chunks.add(END);
+            }
+        });
+
+        try
+        {
+            whileWaiting.run();
+
+            for (Object chunk = chunks.take(); chunk != END; chunk = chunks.take())
+            {
+                onChunk.accept((C) chunk);
+            }
+            return result.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the model", e);
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof RuntimeException cause)
+            {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause)
+            {
+                throw cause;
+            }
+            throw new IllegalStateException("Model call failed", e.getCause());
+        }
+        finally
+        {
+            // no-op if the call completed, stops a stream nobody is interested in anymore otherwise
+            result.cancel(true);
+        }
+    }
+}
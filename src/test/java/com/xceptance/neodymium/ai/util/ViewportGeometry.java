@@ -0,0 +1,96 @@
+package com.xceptance.neodymium.ai.util;
+
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.openqa.selenium.WebDriver;
+
+import com.codeborne.selenide.Selenide;
+
+/**
+ * Per session cache of the viewport size, so mapping model coordinates to the viewport is pure arithmetic instead of
+ * two WebDriver round trips per call.
+ * <p>
+ * The cache is filled lazily with a single script call, refreshed for free whenever a script that runs anyway reports
+ * the current size (see {@link PageStability}) and invalidated explicitly when the window is resized. The cache is
+ * weakly keyed by the driver and holds no reference to it, so it is dropped together with the session; the lazy load
+ * runs on the driver of the current thread, the one the cache is used with.
+ * </p>
+ */
+public final class ViewportGeometry
+{
+    private static final Map<WebDriver, ViewportGeometry> SESSIONS = new WeakHashMap<>();
+
+    private volatile long width = -1;
+
+    private volatile long height = -1;
+
+    private ViewportGeometry()
+    {
+    }
+
+    /**
+     * @param driver
+     *            the driver of the session
+     * @return the geometry cache of the session
+     */
+    public static ViewportGeometry of(WebDriver driver)
+    {
+        synchronized (SESSIONS)
+        {
+            return SESSIONS.computeIfAbsent(driver, session -> new ViewportGeometry());
+        }
+    }
+
+    /**
+     * Sets the current size, e.g. reported by a script that ran anyway.
+     *
+     * @param width
+     *            the inner width of the window
+     * @param height
+     *            the inner height of the window
+     */
+    public void update(long width, long height)
+    {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Forgets the cached size, must be called after the window was resized.
+     */
+    public void invalidate()
+    {
+        this.width = -1;
+        this.height = -1;
+    }
+
+    /**
+     * @return the inner width of the window
+     */
+    public long width()
+    {
+        ensureLoaded();
+        return width;
+    }
+
+    /**
+     * @return the inner height of the window
+     */
+    public long height()
+    {
+        ensureLoaded();
+        return height;
+    }
+
+    private void ensureLoaded()
+    {
+        if (width < 0 || height < 0)
+        {
+            @SuppressWarnings("unchecked")
+            List<Long> size = (List<Long>) Selenide.executeJavaScript("return [window.innerWidth, window.innerHeight];");
+            update(size.get(0), size.get(1));
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.xceptance.neodymium.ai.util;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * Detects what changed between two consecutive screenshots sent to the model, so unchanged frames don't have to be
+ * uploaded again and partially changed frames can be reduced to the changed region.
+ * <p>
+ * The image is split into tiles and every tile gets a hash over a sample of its pixels. Comparing the hashes with the
+ * ones of the previous frame gives the changed tiles. Sampling every second pixel of every second row is enough to
+ * catch visible changes and keeps the comparison in the range of a millisecond for a full viewport.
+ * </p>
+ * <p>
+ * A full frame is sent before it would be evicted from the history, counted in images added to the history since the
+ * last full frame: partial frames as well as other images, e.g. zoomed regions (see {@link #imageAdded()}). Unchanged
+ * frames add no image and don't count.
+ * </p>
+ */
+public class VisualDelta
+{
+    private static final int TILE_SIZE = 32;
+
+    private static final int SAMPLE_STRIDE = 2;
+
+    /**
+     * The result of a comparison.
+     *
+     * @param region
+     *            the changed region in image pixels, <code>null</code> if nothing changed
+     * @param full
+     *            <code>true</code> if the whole frame has to be sent
+     */
+    public record Change(Rectangle region, boolean full)
+    {
+        public boolean unchanged()
+        {
+            return !full && region == null;
+        }
+    }
+
+    /**
+     * A screenshot prepared for the model.
+     *
+     * @param image
+     *            the image to send, <code>null</code> if nothing changed since the previous frame
+     * @param region
+     *            the region of the viewport the image shows in the 1000x1000 grid of the model, <code>null</code> if it
+     *            shows the full viewport
+     */
+    public record Frame(EncodedImage image, Rectangle region)
+    {
+    }
+
+    private final double maxRegionShare;
+
+    private final int fullFrameInterval;
+
+    private int imagesSinceFull = 0;
+
+    private long[] previousHashes;
+
+    private int previousWidth = -1;
+
+    private int previousHeight = -1;
+
+    /**
+     * @param maxRegionShare
+     *            if the changed region covers more than this share of the frame, the full frame is sent
+     * @param fullFrameInterval
+     *            the number of images in the history after which a full frame is sent, so the model always has a full
+     *            frame to apply the changes to
+     */
+    public VisualDelta(double maxRegionShare, int fullFrameInterval)
+    {
+        this.maxRegionShare = maxRegionShare;
+        this.fullFrameInterval = fullFrameInterval;
+    }
+
+    /**
+     * Compares the frame with the previous one and remembers it for the next comparison.
+     *
+     * @param image
+     *            the new frame, without any markers
+     * @return the change
+     */
+    public Change compare(BufferedImage image)
+    {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+        int tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+
+        long[] hashes = hashTiles(image, tilesX, tilesY);
+
+        long[] previous = previousHashes;
+        boolean sameSize = width == previousWidth && height == previousHeight;
+        previousHashes = hashes;
+        previousWidth = width;
+        previousHeight = height;
+
+        // the frame is an image of its own, it must not push the full frame out of the history
+        if (previous == null || !sameSize || imagesSinceFull + 1 >= fullFrameInterval)
+        {
+            imagesSinceFull = 0;
+            return new Change(new Rectangle(0, 0, width, height), true);
+        }
+
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = -1, maxY = -1;
+        for (int ty = 0; ty < tilesY; ty++)
+        {
+            for (int tx = 0; tx < tilesX; tx++)
+            {
+                int i = ty * tilesX + tx;
+                if (hashes[i] != previous[i])
+                {
+                    minX = Math.min(minX, tx);
+                    minY = Math.min(minY, ty);
+                    maxX = Math.max(maxX, tx);
+                    maxY = Math.max(maxY, ty);
+                }
+            }
+        }
+
+        if (maxX < 0)
+        {
+            return new Change(null, false);
+        }
+
+        Change change = region(new Rectangle(minX * TILE_SIZE, minY * TILE_SIZE, (maxX - minX + 1) * TILE_SIZE, (maxY - minY + 1) * TILE_SIZE), width, height);
+        if (!change.full())
+        {
+            imagesSinceFull++;
+        }
+        return change;
+    }
+
+    /**
+     * Counts an image added to the history besides the frames, e.g. a zoomed region. It moves the full frame towards
+     * eviction as well.
+     */
+    public void imageAdded()
+    {
+        imagesSinceFull++;
+    }
+
+    /**
+     * Extends a change by an additional area, e.g. a marker drawn onto the frame after the comparison.
+     *
+     * @param change
+     *            the change to extend
+     * @param area
+     *            the area that has to be visible as well
+     * @param width
+     *            the width of the frame
+     * @param height
+     *            the height of the frame
+     * @return the extended change
+     */
+    public Change include(Change change, Rectangle area, int width, int height)
+    {
+        if (change.full())
+        {
+            return change;
+        }
+        // the region already has its context, only the area gets context of its own
+        Rectangle areaWithContext = withContext(area, width, height);
+        Change extended = share(change.region() == null ? areaWithContext : change.region().union(areaWithContext), width, height);
+        if (change.region() == null && !extended.full())
+        {
+            // an unchanged frame became an image
+            imagesSinceFull++;
+        }
+        return extended;
+    }
+
+    private Change region(Rectangle region, int width, int height)
+    {
+        return share(withContext(region, width, height), width, height);
+    }
+
+    private Change share(Rectangle region, int width, int height)
+    {
+        if ((double) region.width * region.height > maxRegionShare * width * height)
+        {
+            imagesSinceFull = 0;
+            return new Change(new Rectangle(0, 0, width, height), true);
+        }
+        return new Change(region, false);
+    }
+
+    private static Rectangle withContext(Rectangle region, int width, int height)
+    {
+        // add a tile of context around the change, so the model can place it on the page
+        Rectangle withContext = new Rectangle(region.x - TILE_SIZE, region.y - TILE_SIZE, region.width + 2 * TILE_SIZE, region.height + 2 * TILE_SIZE);
+        return withContext.intersection(new Rectangle(0, 0, width, height));
+    }
+
+    private static long[] hashTiles(BufferedImage image, int tilesX, int tilesY)
+    {
+        int width = image.getWidth();
+        long[] hashes = new long[tilesX * tilesY];
+        int[] row = new int[width];
+
+        for (int y = 0; y < image.getHeight(); y += SAMPLE_STRIDE)
+        {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            int tileRow = (y / TILE_SIZE) * tilesX;
+            for (int x = 0; x < width; x += SAMPLE_STRIDE)
+            {
+                int i = tileRow + x / TILE_SIZE;
+                hashes[i] = hashes[i] * 31 + row[x];
+            }
+        }
+        return hashes;
+    }
+}
@@ -0,0 +1,184 @@
+package com.xceptance.neodymium.ai.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+import org.junit.jupiter.api.Test;
+
+public class VisualDeltaTest
+{
+    private static final Rectangle FULL = new Rectangle(0, 0, 320, 320);
+
+    @Test
+    public void firstFrameIsFull()
+    {
+        VisualDelta.Change change = new VisualDelta(0.5, 10).compare(image());
+
+        assertTrue(change.full());
+        assertEquals(FULL, change.region());
+    }
+
+    @Test
+    public void identicalFrameIsUnchanged()
+    {
+        VisualDelta delta = new VisualDelta(0.5, 10);
+        delta.compare(image());
+
+        VisualDelta.Change change = delta.compare(image());
+
+        assertTrue(change.unchanged());
+        assertNull(change.region());
+    }
+
+    @Test
+    public void smallChangeGivesTheChangedTilesWithContext()
+    {
+        VisualDelta delta = new VisualDelta(0.5, 10);
+        BufferedImage image = image();
+        delta.compare(image);
+
+        paint(image, Color.RED, 100, 100, 10, 10);
+        VisualDelta.Change change = delta.compare(image);
+
+        assertFalse(change.full());
+        assertEquals(new Rectangle(64, 64, 96, 96), change.region());
+    }
+
+    @Test
+    public void contextIsClippedAtTheEdge()
+    {
+        VisualDelta delta = new VisualDelta(0.5, 10);
+        BufferedImage image = image();
+        delta.compare(image);
+
+        paint(image, Color.RED, 0, 300, 10, 10);
+
+        assertEquals(new Rectangle(0, 256, 64, 64), delta.compare(image).region());
+    }
+
+    @Test
+    public void largeChangeGivesTheFullFrame()
+    {
+        VisualDelta delta = new VisualDelta(0.5, 10);
+        BufferedImage image = image();
+        delta.compare(image);
+
+        paint(image, Color.RED, 0, 0, 320, 200);
+        VisualDelta.Change change = delta.compare(image);
+
+        assertTrue(change.full());
+        assertEquals(FULL, change.region());
+    }
+
+    @Test
+    public void resizedFrameIsFull()
+    {
+        VisualDelta delta = new VisualDelta(0.5, 10);
+        delta.compare(image());
+
+        assertTrue(delta.compare(new BufferedImage(320, 160, BufferedImage.TYPE_INT_RGB)).full());
+    }
+
+    @Test
+    public void sendsAFullFrameBeforeItLeavesTheHistory()
+    {
+        VisualDelta delta = new VisualDelta(0.5, 3);
+        BufferedImage image = image();
+        assertTrue(delta.compare(image).full());
+
+        paint(image, Color.RED, 100, 100, 10, 10);
+        assertFalse(delta.compare(image).full());
+        paint(image, Color.BLUE, 100, 100, 10, 10);
+        assertFalse(delta.compare(image).full());
+        paint(image, Color.RED, 100, 100, 10, 10);
+        assertTrue(delta.compare(image).full());
+        paint(image, Color.BLUE, 100, 100, 10, 10);
+        assertFalse(delta.compare(image).full());
+    }
+
+    @Test
+    public void unchangedFramesDoNotCount()
+    {
+        VisualDelta delta = new VisualDelta(0.5, 3);
+        BufferedImage image = image();
+        delta.compare(image);
+
+        for (int i = 0; i < 5; i++)
+        {
+            assertTrue(delta.compare(image).unchanged());
+        }
+        paint(image, Color.RED, 100, 100, 10, 10);
+        assertFalse(delta.compare(image).full());
+    }
+
+    @Test
+    public void otherImagesCount()
+    {
+        VisualDelta delta = new VisualDelta(0.5, 3);
+        BufferedImage image = image();
+        delta.compare(image);
+
+        delta.imageAdded();
+        delta.imageAdded();
+        paint(image, Color.RED, 100, 100, 10, 10);
+
+        assertTrue(delta.compare(image).full());
+    }
+
+    @Test
+    public void includeAddsTheMarkerToTheChange()
+    {
+        VisualDelta delta = new VisualDelta(0.5, 10);
+        BufferedImage image = image();
+        delta.compare(image);
+        VisualDelta.Change unchanged = delta.compare(image);
+
+        VisualDelta.Change marked = delta.include(unchanged, new Rectangle(10, 10, 5, 5), 320, 320);
+        assertFalse(marked.full());
+        assertEquals(new Rectangle(0, 0, 47, 47), marked.region());
+
+        paint(image, Color.RED, 100, 100, 10, 10);
+        VisualDelta.Change changed = delta.compare(image);
+        assertEquals(new Rectangle(64, 64, 96, 96), delta.include(changed, new Rectangle(110, 110, 5, 5), 320, 320).region());
+        assertTrue(delta.include(changed, new Rectangle(300, 300, 5, 5), 320, 320).full());
+
+        VisualDelta.Change full = new VisualDelta(0.5, 10).compare(image);
+        assertSame(full, delta.include(full, new Rectangle(10, 10, 5, 5), 320, 320));
+    }
+
+    @Test
+    public void includedMarkerCountsAsImage()
+    {
+        VisualDelta delta = new VisualDelta(0.5, 2);
+        BufferedImage image = image();
+        delta.compare(image);
+
+        delta.include(delta.compare(image), new Rectangle(10, 10, 5, 5), 320, 320);
+        paint(image, Color.RED, 100, 100, 10, 10);
+
+        assertTrue(delta.compare(image).full());
+    }
+
+    private static BufferedImage image()
+    {
+        BufferedImage image = new BufferedImage(320, 320, BufferedImage.TYPE_INT_RGB);
+        paint(image, Color.WHITE, 0, 0, 320, 320);
+        return image;
+    }
+
+    private static void paint(BufferedImage image, Color color, int x, int y, int width, int height)
+    {
+        Graphics2D g2d = image.createGraphics();
+        g2d.setColor(color);
+        g2d.fillRect(x, y, width, height);
+        g2d.dispose();
+    }
+}